@@ -0,0 +1,301 @@
+-- Procedures stockees des transactions de pret et de reservation
+-- (voir ca.qc.collegeahuntsic.bibliotheque.dao.ProceduresDAO)
+--
+-- A installer apres MySQL.sql ; utilisees si la configuration contient
+-- procedures=true. Chaque procedure fait les verifications et les mises a
+-- jour d'une transaction, sans la valider (commit fait par l'appelant), et
+-- retourne dans p_code 0 ou la raison du refus :
+--   1 livre inexistant             2 livre deja prete
+--   3 livre non prete              4 livre deja prete a ce membre
+--   5 livre reserve                6 membre inexistant
+--   7 limite de pret atteinte      8 date inferieure
+--   9 reservation inexistante     10 reservation existante
+--  11 reservation pas la premiere
+--  12 livre deja reserve par ce membre
+-- p_info1 et p_info2 donnent les identifiants cites par le message ; en cas
+-- de succes, biblio_retourner y retourne l'emprunteur, biblio_prendreRes
+-- le livre et le membre et biblio_annulerRes le livre.
+
+DELIMITER //
+
+DROP PROCEDURE IF EXISTS biblio_preter //
+CREATE PROCEDURE biblio_preter(IN p_idLivre INTEGER,
+							   IN p_idMembre INTEGER,
+							   IN p_datePret DATE,
+							   OUT p_code INTEGER,
+							   OUT p_info1 INTEGER,
+							   OUT p_info2 INTEGER)
+corps: BEGIN
+	DECLARE v_trouve INTEGER;
+	DECLARE v_emprunteur INTEGER;
+	DECLARE v_nbPret INTEGER;
+	DECLARE v_limitePret INTEGER;
+	DECLARE v_idReservation INTEGER;
+	DECLARE v_idMembreRes INTEGER;
+	DECLARE CONTINUE HANDLER FOR NOT FOUND SET v_trouve = 0;
+
+	SET p_code = 0, p_info1 = NULL, p_info2 = NULL;
+
+	SET v_trouve = 1;
+	SELECT idMembre INTO v_emprunteur FROM livre WHERE idLivre = p_idLivre FOR UPDATE;
+	IF v_trouve = 0 THEN
+		SET p_code = 1, p_info1 = p_idLivre;
+		LEAVE corps;
+	END IF;
+	IF v_emprunteur IS NOT NULL THEN
+		SET p_code = 2, p_info1 = p_idLivre, p_info2 = v_emprunteur;
+		LEAVE corps;
+	END IF;
+
+	SET v_trouve = 1;
+	SELECT nbpret, limitePret INTO v_nbPret, v_limitePret FROM membre WHERE idMembre = p_idMembre FOR UPDATE;
+	IF v_trouve = 0 THEN
+		SET p_code = 6, p_info1 = p_idMembre;
+		LEAVE corps;
+	END IF;
+	IF v_nbPret >= v_limitePret THEN
+		SET p_code = 7, p_info1 = p_idMembre;
+		LEAVE corps;
+	END IF;
+
+	SET v_trouve = 1;
+	SELECT idReservation, idMembre INTO v_idReservation, v_idMembreRes FROM reservation
+		WHERE idLivre = p_idLivre ORDER BY dateReservation, idReservation LIMIT 1;
+	IF v_trouve = 1 THEN
+		SET p_code = 5, p_info1 = v_idMembreRes, p_info2 = v_idReservation;
+		LEAVE corps;
+	END IF;
+
+	UPDATE livre SET idMembre = p_idMembre, datePret = p_datePret WHERE idLivre = p_idLivre;
+	UPDATE membre SET nbpret = nbpret + 1 WHERE idMembre = p_idMembre;
+END corps //
+
+DROP PROCEDURE IF EXISTS biblio_renouveler //
+CREATE PROCEDURE biblio_renouveler(IN p_idLivre INTEGER,
+								   IN p_datePret DATE,
+								   OUT p_code INTEGER,
+								   OUT p_info1 INTEGER,
+								   OUT p_info2 INTEGER)
+corps: BEGIN
+	DECLARE v_trouve INTEGER;
+	DECLARE v_emprunteur INTEGER;
+	DECLARE v_datePret DATE;
+	DECLARE v_idReservation INTEGER;
+	DECLARE v_idMembreRes INTEGER;
+	DECLARE CONTINUE HANDLER FOR NOT FOUND SET v_trouve = 0;
+
+	SET p_code = 0, p_info1 = NULL, p_info2 = NULL;
+
+	SET v_trouve = 1;
+	SELECT idMembre, datePret INTO v_emprunteur, v_datePret FROM livre WHERE idLivre = p_idLivre FOR UPDATE;
+	IF v_trouve = 0 THEN
+		SET p_code = 1, p_info1 = p_idLivre;
+		LEAVE corps;
+	END IF;
+	IF v_emprunteur IS NULL THEN
+		SET p_code = 3, p_info1 = p_idLivre;
+		LEAVE corps;
+	END IF;
+	IF p_datePret < v_datePret THEN
+		SET p_code = 8;
+		LEAVE corps;
+	END IF;
+
+	SET v_trouve = 1;
+	SELECT idReservation, idMembre INTO v_idReservation, v_idMembreRes FROM reservation
+		WHERE idLivre = p_idLivre ORDER BY dateReservation, idReservation LIMIT 1;
+	IF v_trouve = 1 THEN
+		SET p_code = 5, p_info1 = v_idMembreRes, p_info2 = v_idReservation;
+		LEAVE corps;
+	END IF;
+
+	UPDATE livre SET datePret = p_datePret WHERE idLivre = p_idLivre;
+END corps //
+
+DROP PROCEDURE IF EXISTS biblio_retourner //
+CREATE PROCEDURE biblio_retourner(IN p_idLivre INTEGER,
+								  IN p_dateRetour DATE,
+								  OUT p_code INTEGER,
+								  OUT p_info1 INTEGER,
+								  OUT p_info2 INTEGER)
+corps: BEGIN
+	DECLARE v_trouve INTEGER;
+	DECLARE v_emprunteur INTEGER;
+	DECLARE v_datePret DATE;
+	DECLARE CONTINUE HANDLER FOR NOT FOUND SET v_trouve = 0;
+
+	SET p_code = 0, p_info1 = NULL, p_info2 = NULL;
+
+	SET v_trouve = 1;
+	SELECT idMembre, datePret INTO v_emprunteur, v_datePret FROM livre WHERE idLivre = p_idLivre FOR UPDATE;
+	IF v_trouve = 0 THEN
+		SET p_code = 1, p_info1 = p_idLivre;
+		LEAVE corps;
+	END IF;
+	IF v_emprunteur IS NULL THEN
+		SET p_code = 3, p_info1 = p_idLivre;
+		LEAVE corps;
+	END IF;
+	IF p_dateRetour < v_datePret THEN
+		SET p_code = 8;
+		LEAVE corps;
+	END IF;
+
+	UPDATE livre SET idMembre = NULL, datePret = NULL WHERE idLivre = p_idLivre;
+	UPDATE membre SET nbpret = nbpret - 1 WHERE idMembre = v_emprunteur;
+	SET p_info1 = v_emprunteur;
+END corps //
+
+DROP PROCEDURE IF EXISTS biblio_reserver //
+CREATE PROCEDURE biblio_reserver(IN p_idReservation INTEGER,
+								 IN p_idLivre INTEGER,
+								 IN p_idMembre INTEGER,
+								 IN p_dateReservation DATE,
+								 OUT p_code INTEGER,
+								 OUT p_info1 INTEGER,
+								 OUT p_info2 INTEGER)
+corps: BEGIN
+	DECLARE v_trouve INTEGER;
+	DECLARE v_emprunteur INTEGER;
+	DECLARE v_datePret DATE;
+	DECLARE v_idMembre INTEGER;
+	DECLARE v_idReservation INTEGER;
+	DECLARE CONTINUE HANDLER FOR NOT FOUND SET v_trouve = 0;
+
+	SET p_code = 0, p_info1 = NULL, p_info2 = NULL;
+
+	SET v_trouve = 1;
+	SELECT idMembre, datePret INTO v_emprunteur, v_datePret FROM livre WHERE idLivre = p_idLivre FOR UPDATE;
+	IF v_trouve = 0 THEN
+		SET p_code = 1, p_info1 = p_idLivre;
+		LEAVE corps;
+	END IF;
+	IF v_emprunteur IS NULL THEN
+		SET p_code = 3, p_info1 = p_idLivre;
+		LEAVE corps;
+	END IF;
+	IF v_emprunteur = p_idMembre THEN
+		SET p_code = 4, p_info1 = p_idLivre;
+		LEAVE corps;
+	END IF;
+
+	SET v_trouve = 1;
+	SELECT idMembre INTO v_idMembre FROM membre WHERE idMembre = p_idMembre;
+	IF v_trouve = 0 THEN
+		SET p_code = 6, p_info1 = p_idMembre;
+		LEAVE corps;
+	END IF;
+
+	IF p_dateReservation < v_datePret THEN
+		SET p_code = 8;
+		LEAVE corps;
+	END IF;
+
+	SET v_trouve = 1;
+	SELECT idReservation INTO v_idReservation FROM reservation WHERE idReservation = p_idReservation;
+	IF v_trouve = 1 THEN
+		SET p_code = 10, p_info1 = p_idReservation;
+		LEAVE corps;
+	END IF;
+
+	SET v_trouve = 1;
+	SELECT idReservation INTO v_idReservation FROM reservation
+		WHERE idMembre = p_idMembre AND idLivre = p_idLivre;
+	IF v_trouve = 1 THEN
+		SET p_code = 12, p_info1 = p_idLivre, p_info2 = p_idMembre;
+		LEAVE corps;
+	END IF;
+
+	INSERT INTO reservation (idReservation, idLivre, idMembre, dateReservation)
+		VALUES (p_idReservation, p_idLivre, p_idMembre, p_dateReservation);
+END corps //
+
+DROP PROCEDURE IF EXISTS biblio_prendreRes //
+CREATE PROCEDURE biblio_prendreRes(IN p_idReservation INTEGER,
+								   IN p_datePret DATE,
+								   OUT p_code INTEGER,
+								   OUT p_info1 INTEGER,
+								   OUT p_info2 INTEGER)
+corps: BEGIN
+	DECLARE v_trouve INTEGER;
+	DECLARE v_idLivre INTEGER;
+	DECLARE v_idMembre INTEGER;
+	DECLARE v_dateReservation DATE;
+	DECLARE v_existeLivre INTEGER;
+	DECLARE v_emprunteur INTEGER;
+	DECLARE v_idPremiere INTEGER;
+	DECLARE v_nbPret INTEGER;
+	DECLARE v_limitePret INTEGER;
+	DECLARE CONTINUE HANDLER FOR NOT FOUND SET v_trouve = 0;
+
+	SET p_code = 0, p_info1 = NULL, p_info2 = NULL;
+
+	SET v_trouve = 1;
+	SELECT idLivre, idMembre, dateReservation INTO v_idLivre, v_idMembre, v_dateReservation
+		FROM reservation WHERE idReservation = p_idReservation;
+	IF v_trouve = 0 THEN
+		SET p_code = 9, p_info1 = p_idReservation;
+		LEAVE corps;
+	END IF;
+
+	-- le verrou du livre ordonne les reservations et prets concurrents
+	SET v_trouve = 1;
+	SELECT 1, idMembre INTO v_existeLivre, v_emprunteur FROM livre WHERE idLivre = v_idLivre FOR UPDATE;
+
+	SELECT idReservation INTO v_idPremiere FROM reservation
+		WHERE idLivre = v_idLivre ORDER BY dateReservation, idReservation LIMIT 1;
+	IF v_idPremiere <> p_idReservation THEN
+		SET p_code = 11, p_info1 = v_idPremiere;
+		LEAVE corps;
+	END IF;
+
+	IF v_existeLivre IS NULL THEN
+		SET p_code = 1, p_info1 = v_idLivre;
+		LEAVE corps;
+	END IF;
+	IF v_emprunteur IS NOT NULL THEN
+		SET p_code = 2, p_info1 = v_idLivre, p_info2 = v_emprunteur;
+		LEAVE corps;
+	END IF;
+
+	SET v_trouve = 1;
+	SELECT nbpret, limitePret INTO v_nbPret, v_limitePret FROM membre WHERE idMembre = v_idMembre FOR UPDATE;
+	IF v_trouve = 0 THEN
+		SET p_code = 6, p_info1 = v_idMembre;
+		LEAVE corps;
+	END IF;
+	IF v_nbPret >= v_limitePret THEN
+		SET p_code = 7, p_info1 = v_idMembre;
+		LEAVE corps;
+	END IF;
+
+	IF p_datePret < v_dateReservation THEN
+		SET p_code = 8;
+		LEAVE corps;
+	END IF;
+
+	UPDATE livre SET idMembre = v_idMembre, datePret = p_datePret WHERE idLivre = v_idLivre;
+	UPDATE membre SET nbpret = nbpret + 1 WHERE idMembre = v_idMembre;
+	DELETE FROM reservation WHERE idReservation = p_idReservation;
+	SET p_info1 = v_idLivre, p_info2 = v_idMembre;
+END corps //
+
+DROP PROCEDURE IF EXISTS biblio_annulerRes //
+CREATE PROCEDURE biblio_annulerRes(IN p_idReservation INTEGER,
+								   OUT p_code INTEGER,
+								   OUT p_info1 INTEGER,
+								   OUT p_info2 INTEGER)
+BEGIN
+	DECLARE v_idLivre INTEGER;
+	SET p_code = 0, p_info1 = NULL, p_info2 = NULL;
+
+	SET v_idLivre = (SELECT idLivre FROM reservation WHERE idReservation = p_idReservation);
+	DELETE FROM reservation WHERE idReservation = p_idReservation;
+	IF ROW_COUNT() = 0 THEN
+		SET p_code = 9, p_info1 = p_idReservation;
+	ELSE
+		SET p_info1 = v_idLivre;
+	END IF;
+END //
+
+DELIMITER ;
@@ -0,0 +1,339 @@
+-- Procedures stockees des transactions de pret et de reservation
+-- (voir ca.qc.collegeahuntsic.bibliotheque.dao.ProceduresDAO)
+--
+-- Version Oracle de MySQL-procedures.sql, memes parametres et memes codes
+-- de retour dans p_code :
+--   1 livre inexistant             2 livre deja prete
+--   3 livre non prete              4 livre deja prete a ce membre
+--   5 livre reserve                6 membre inexistant
+--   7 limite de pret atteinte      8 date inferieure
+--   9 reservation inexistante     10 reservation existante
+--  11 reservation pas la premiere
+--  12 livre deja reserve par ce membre
+-- p_info1 et p_info2 donnent les identifiants cites par le message ; en cas
+-- de succes, biblio_retourner y retourne l'emprunteur, biblio_prendreRes
+-- le livre et le membre et biblio_annulerRes le livre.
+-- Les procedures ne valident pas la transaction (commit fait par l'appelant).
+
+CREATE OR REPLACE PROCEDURE biblio_preter(p_idLivre IN INTEGER,
+										  p_idMembre IN INTEGER,
+										  p_datePret IN DATE,
+										  p_code OUT INTEGER,
+										  p_info1 OUT INTEGER,
+										  p_info2 OUT INTEGER) AS
+	v_emprunteur livre.idMembre%TYPE;
+	v_nbPret membre.nbpret%TYPE;
+	v_limitePret membre.limitePret%TYPE;
+	CURSOR c_reservations IS
+		SELECT idReservation, idMembre FROM reservation
+		WHERE idLivre = p_idLivre ORDER BY dateReservation, idReservation;
+	v_premiere c_reservations%ROWTYPE;
+BEGIN
+	p_code := 0;
+	p_info1 := NULL;
+	p_info2 := NULL;
+
+	BEGIN
+		SELECT idMembre INTO v_emprunteur FROM livre WHERE idLivre = p_idLivre FOR UPDATE;
+	EXCEPTION
+		WHEN NO_DATA_FOUND THEN
+			p_code := 1;
+			p_info1 := p_idLivre;
+			RETURN;
+	END;
+	IF v_emprunteur IS NOT NULL THEN
+		p_code := 2;
+		p_info1 := p_idLivre;
+		p_info2 := v_emprunteur;
+		RETURN;
+	END IF;
+
+	BEGIN
+		SELECT nbpret, limitePret INTO v_nbPret, v_limitePret FROM membre WHERE idMembre = p_idMembre FOR UPDATE;
+	EXCEPTION
+		WHEN NO_DATA_FOUND THEN
+			p_code := 6;
+			p_info1 := p_idMembre;
+			RETURN;
+	END;
+	IF v_nbPret >= v_limitePret THEN
+		p_code := 7;
+		p_info1 := p_idMembre;
+		RETURN;
+	END IF;
+
+	OPEN c_reservations;
+	FETCH c_reservations INTO v_premiere;
+	IF c_reservations%FOUND THEN
+		CLOSE c_reservations;
+		p_code := 5;
+		p_info1 := v_premiere.idMembre;
+		p_info2 := v_premiere.idReservation;
+		RETURN;
+	END IF;
+	CLOSE c_reservations;
+
+	UPDATE livre SET idMembre = p_idMembre, datePret = p_datePret WHERE idLivre = p_idLivre;
+	UPDATE membre SET nbpret = nbpret + 1 WHERE idMembre = p_idMembre;
+END;
+/
+
+CREATE OR REPLACE PROCEDURE biblio_renouveler(p_idLivre IN INTEGER,
+											  p_datePret IN DATE,
+											  p_code OUT INTEGER,
+											  p_info1 OUT INTEGER,
+											  p_info2 OUT INTEGER) AS
+	v_emprunteur livre.idMembre%TYPE;
+	v_datePret livre.datePret%TYPE;
+	CURSOR c_reservations IS
+		SELECT idReservation, idMembre FROM reservation
+		WHERE idLivre = p_idLivre ORDER BY dateReservation, idReservation;
+	v_premiere c_reservations%ROWTYPE;
+BEGIN
+	p_code := 0;
+	p_info1 := NULL;
+	p_info2 := NULL;
+
+	BEGIN
+		SELECT idMembre, datePret INTO v_emprunteur, v_datePret FROM livre WHERE idLivre = p_idLivre FOR UPDATE;
+	EXCEPTION
+		WHEN NO_DATA_FOUND THEN
+			p_code := 1;
+			p_info1 := p_idLivre;
+			RETURN;
+	END;
+	IF v_emprunteur IS NULL THEN
+		p_code := 3;
+		p_info1 := p_idLivre;
+		RETURN;
+	END IF;
+	IF p_datePret < v_datePret THEN
+		p_code := 8;
+		RETURN;
+	END IF;
+
+	OPEN c_reservations;
+	FETCH c_reservations INTO v_premiere;
+	IF c_reservations%FOUND THEN
+		CLOSE c_reservations;
+		p_code := 5;
+		p_info1 := v_premiere.idMembre;
+		p_info2 := v_premiere.idReservation;
+		RETURN;
+	END IF;
+	CLOSE c_reservations;
+
+	UPDATE livre SET datePret = p_datePret WHERE idLivre = p_idLivre;
+END;
+/
+
+CREATE OR REPLACE PROCEDURE biblio_retourner(p_idLivre IN INTEGER,
+											 p_dateRetour IN DATE,
+											 p_code OUT INTEGER,
+											 p_info1 OUT INTEGER,
+											 p_info2 OUT INTEGER) AS
+	v_emprunteur livre.idMembre%TYPE;
+	v_datePret livre.datePret%TYPE;
+BEGIN
+	p_code := 0;
+	p_info1 := NULL;
+	p_info2 := NULL;
+
+	BEGIN
+		SELECT idMembre, datePret INTO v_emprunteur, v_datePret FROM livre WHERE idLivre = p_idLivre FOR UPDATE;
+	EXCEPTION
+		WHEN NO_DATA_FOUND THEN
+			p_code := 1;
+			p_info1 := p_idLivre;
+			RETURN;
+	END;
+	IF v_emprunteur IS NULL THEN
+		p_code := 3;
+		p_info1 := p_idLivre;
+		RETURN;
+	END IF;
+	IF p_dateRetour < v_datePret THEN
+		p_code := 8;
+		RETURN;
+	END IF;
+
+	UPDATE livre SET idMembre = NULL, datePret = NULL WHERE idLivre = p_idLivre;
+	UPDATE membre SET nbpret = nbpret - 1 WHERE idMembre = v_emprunteur;
+	p_info1 := v_emprunteur;
+END;
+/
+
+CREATE OR REPLACE PROCEDURE biblio_reserver(p_idReservation IN INTEGER,
+											p_idLivre IN INTEGER,
+											p_idMembre IN INTEGER,
+											p_dateReservation IN DATE,
+											p_code OUT INTEGER,
+											p_info1 OUT INTEGER,
+											p_info2 OUT INTEGER) AS
+	v_emprunteur livre.idMembre%TYPE;
+	v_datePret livre.datePret%TYPE;
+	v_nb INTEGER;
+BEGIN
+	p_code := 0;
+	p_info1 := NULL;
+	p_info2 := NULL;
+
+	BEGIN
+		SELECT idMembre, datePret INTO v_emprunteur, v_datePret FROM livre WHERE idLivre = p_idLivre FOR UPDATE;
+	EXCEPTION
+		WHEN NO_DATA_FOUND THEN
+			p_code := 1;
+			p_info1 := p_idLivre;
+			RETURN;
+	END;
+	IF v_emprunteur IS NULL THEN
+		p_code := 3;
+		p_info1 := p_idLivre;
+		RETURN;
+	END IF;
+	IF v_emprunteur = p_idMembre THEN
+		p_code := 4;
+		p_info1 := p_idLivre;
+		RETURN;
+	END IF;
+
+	SELECT count(*) INTO v_nb FROM membre WHERE idMembre = p_idMembre;
+	IF v_nb = 0 THEN
+		p_code := 6;
+		p_info1 := p_idMembre;
+		RETURN;
+	END IF;
+
+	IF p_dateReservation < v_datePret THEN
+		p_code := 8;
+		RETURN;
+	END IF;
+
+	SELECT count(*) INTO v_nb FROM reservation WHERE idReservation = p_idReservation;
+	IF v_nb > 0 THEN
+		p_code := 10;
+		p_info1 := p_idReservation;
+		RETURN;
+	END IF;
+
+	SELECT count(*) INTO v_nb FROM reservation
+		WHERE idMembre = p_idMembre AND idLivre = p_idLivre;
+	IF v_nb > 0 THEN
+		p_code := 12;
+		p_info1 := p_idLivre;
+		p_info2 := p_idMembre;
+		RETURN;
+	END IF;
+
+	INSERT INTO reservation (idReservation, idLivre, idMembre, dateReservation)
+		VALUES (p_idReservation, p_idLivre, p_idMembre, p_dateReservation);
+END;
+/
+
+CREATE OR REPLACE PROCEDURE biblio_prendreRes(p_idReservation IN INTEGER,
+											  p_datePret IN DATE,
+											  p_code OUT INTEGER,
+											  p_info1 OUT INTEGER,
+											  p_info2 OUT INTEGER) AS
+	v_idLivre reservation.idLivre%TYPE;
+	v_idMembre reservation.idMembre%TYPE;
+	v_dateReservation reservation.dateReservation%TYPE;
+	v_existeLivre INTEGER;
+	v_emprunteur livre.idMembre%TYPE;
+	v_idPremiere reservation.idReservation%TYPE;
+	v_nbPret membre.nbpret%TYPE;
+	v_limitePret membre.limitePret%TYPE;
+	CURSOR c_reservations(p_livre INTEGER) IS
+		SELECT idReservation FROM reservation
+		WHERE idLivre = p_livre ORDER BY dateReservation, idReservation;
+BEGIN
+	p_code := 0;
+	p_info1 := NULL;
+	p_info2 := NULL;
+
+	BEGIN
+		SELECT idLivre, idMembre, dateReservation INTO v_idLivre, v_idMembre, v_dateReservation
+			FROM reservation WHERE idReservation = p_idReservation;
+	EXCEPTION
+		WHEN NO_DATA_FOUND THEN
+			p_code := 9;
+			p_info1 := p_idReservation;
+			RETURN;
+	END;
+
+	-- le verrou du livre ordonne les reservations et prets concurrents
+	BEGIN
+		SELECT 1, idMembre INTO v_existeLivre, v_emprunteur FROM livre WHERE idLivre = v_idLivre FOR UPDATE;
+	EXCEPTION
+		WHEN NO_DATA_FOUND THEN
+			v_existeLivre := NULL;
+	END;
+
+	OPEN c_reservations(v_idLivre);
+	FETCH c_reservations INTO v_idPremiere;
+	CLOSE c_reservations;
+	IF v_idPremiere <> p_idReservation THEN
+		p_code := 11;
+		p_info1 := v_idPremiere;
+		RETURN;
+	END IF;
+
+	IF v_existeLivre IS NULL THEN
+		p_code := 1;
+		p_info1 := v_idLivre;
+		RETURN;
+	END IF;
+	IF v_emprunteur IS NOT NULL THEN
+		p_code := 2;
+		p_info1 := v_idLivre;
+		p_info2 := v_emprunteur;
+		RETURN;
+	END IF;
+
+	BEGIN
+		SELECT nbpret, limitePret INTO v_nbPret, v_limitePret FROM membre WHERE idMembre = v_idMembre FOR UPDATE;
+	EXCEPTION
+		WHEN NO_DATA_FOUND THEN
+			p_code := 6;
+			p_info1 := v_idMembre;
+			RETURN;
+	END;
+	IF v_nbPret >= v_limitePret THEN
+		p_code := 7;
+		p_info1 := v_idMembre;
+		RETURN;
+	END IF;
+
+	IF p_datePret < v_dateReservation THEN
+		p_code := 8;
+		RETURN;
+	END IF;
+
+	UPDATE livre SET idMembre = v_idMembre, datePret = p_datePret WHERE idLivre = v_idLivre;
+	UPDATE membre SET nbpret = nbpret + 1 WHERE idMembre = v_idMembre;
+	DELETE FROM reservation WHERE idReservation = p_idReservation;
+	p_info1 := v_idLivre;
+	p_info2 := v_idMembre;
+END;
+/
+
+CREATE OR REPLACE PROCEDURE biblio_annulerRes(p_idReservation IN INTEGER,
+											  p_code OUT INTEGER,
+											  p_info1 OUT INTEGER,
+											  p_info2 OUT INTEGER) AS
+	v_idLivre reservation.idLivre%TYPE;
+BEGIN
+	p_code := 0;
+	p_info1 := NULL;
+	p_info2 := NULL;
+
+	DELETE FROM reservation WHERE idReservation = p_idReservation
+		RETURNING idLivre INTO v_idLivre;
+	IF SQL%ROWCOUNT = 0 THEN
+		p_code := 9;
+		p_info1 := p_idReservation;
+	ELSE
+		p_info1 := v_idLivre;
+	END IF;
+END;
+/
@@ -0,0 +1,511 @@
+
+package ca.qc.collegeahuntsic.bibliotheque;
+
+import java.text.ParseException;
+import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
+import ca.qc.collegeahuntsic.bibliotheque.util.FormatteurDate;
+
+/**
+ * Découpage d'une ligne de transaction en une seule passe.
+ *
+ * <pre>
+ * Les mots sont séparés par des espaces, comme avec un StringTokenizer(" ").
+ * La ligne est gardée dans un tampon char[] réutilisé d'une ligne à l'autre ;
+ * les nombres sont décodés directement du tampon, sans créer de String ni
+ * d'Integer, et seuls les arguments chaînes et dates deviennent des String.
+ *
+ * La commande peut être abrégée : un mot désigne la première commande de
+ * Commande (dans l'ordre de déclaration) dont il est un préfixe. Les noms
+ * des commandes sont rangés dans un arbre de préfixes construit une fois ;
+ * chaque noeud y connaît les commandes dont il est un préfixe.
+ *
+ * Chaque commande connaît la suite de ses arguments (Commande.getArguments()),
+ * ce qui permet de valider une ligne sans l'exécuter (voir LigneValidee).
+ *
+ * Un analyseur n'est pas synchronisé.
+ * </pre>
+ */
+public class AnalyseurTransaction implements LigneTransaction {
+
+    /**
+     * Commandes reconnues, par ordre de priorité des abréviations.
+     */
+    public enum Commande {
+        AIDE("aide",
+            ""),
+        ACQUERIR("acquerir",
+            "issd"),
+        VENDRE("vendre",
+            "i"),
+        PRETER("preter",
+            "iid"),
+        RENOUVELER("renouveler",
+            "id"),
+        RETOURNER("retourner",
+            "id"),
+        INSCRIRE("inscrire",
+            "isli"),
+        DESINSCRIRE("desinscrire",
+            "i"),
+        RESERVER("reserver",
+            "iiid"),
+        PRENDRE_RES("prendreRes",
+            "id"),
+        ANNULER_RES("annulerRes",
+            "i"),
+        LISTER_LIVRES("listerLivres",
+            ""),
+        LISTER_LIVRES_TITRE("listerLivresTitre",
+            "s"),
+        COMMENTAIRE("--",
+            "");
+
+        private final String nom;
+
+        private final String arguments;
+
+        private Commande(String nom,
+            String arguments) {
+            this.nom = nom;
+            this.arguments = arguments;
+        }
+
+        /**
+         * Nom complet de la commande.
+         */
+        public String getNom() {
+            return this.nom;
+        }
+
+        /**
+         * Types des arguments, dans l'ordre de lecture : i (int), l (long),
+         * s (chaîne), d (date).
+         */
+        public String getArguments() {
+            return this.arguments;
+        }
+    }
+
+    private static final Commande[] COMMANDES = Commande.values();
+
+    /*
+     * Arbre de préfixes des noms de commandes (noeud 0 : racine) : caractère
+     * menant à chaque noeud, son premier enfant, son frère suivant et les
+     * commandes dont il est un préfixe (un bit par ordinal).
+     */
+    private static final char[] CARACTERES;
+
+    private static final int[] PREMIERS_ENFANTS;
+
+    private static final int[] FRERES;
+
+    private static final int[] MASQUES;
+
+    static {
+        int nbNoeuds = 1;
+        for(Commande commande : COMMANDES) {
+            nbNoeuds += commande.nom.length();
+        }
+        CARACTERES = new char[nbNoeuds];
+        PREMIERS_ENFANTS = new int[nbNoeuds];
+        FRERES = new int[nbNoeuds];
+        MASQUES = new int[nbNoeuds];
+        nbNoeuds = 1;
+        for(Commande commande : COMMANDES) {
+            int noeud = 0;
+            for(int i = 0; i < commande.nom.length(); i++) {
+                char c = commande.nom.charAt(i);
+                int enfant = enfant(noeud,
+                    c);
+                if(enfant == 0) {
+                    enfant = nbNoeuds++;
+                    CARACTERES[enfant] = c;
+                    FRERES[enfant] = PREMIERS_ENFANTS[noeud];
+                    PREMIERS_ENFANTS[noeud] = enfant;
+                }
+                noeud = enfant;
+                MASQUES[noeud] |= 1 << commande.ordinal();
+            }
+        }
+    }
+
+    /**
+     * Tampon propre à l'analyseur, pour les lignes reçues en String.
+     */
+    private char[] copie = new char[256];
+
+    private char[] tampon;
+
+    private int debut;
+
+    private int fin;
+
+    private int position;
+
+    private int debutCommande;
+
+    private int finCommande;
+
+    private int masque;
+
+    /**
+     * Analyse de la ligne, qui est recopiée dans le tampon de l'analyseur.
+     */
+    public void analyser(String ligne) {
+        if(ligne.length() > this.copie.length) {
+            this.copie = new char[Math.max(ligne.length(),
+                2 * this.copie.length)];
+        }
+        ligne.getChars(0,
+            ligne.length(),
+            this.copie,
+            0);
+        analyser(this.copie,
+            0,
+            ligne.length());
+    }
+
+    /**
+     * Analyse de la ligne formée des caractères debut à fin - 1 de tampon,
+     * sans recopie. tampon ne doit pas être modifié tant que la ligne est
+     * lue.
+     */
+    public void analyser(char[] tampon,
+        int debut,
+        int fin) {
+        this.tampon = tampon;
+        this.debut = debut;
+        this.fin = fin;
+        this.masque = 0;
+        int i = debut;
+        while(i < fin
+            && tampon[i] == ' ') {
+            i++;
+        }
+        this.debutCommande = i;
+        int noeud = 0;
+        while(i < fin
+            && tampon[i] != ' ') {
+            if(noeud >= 0) {
+                noeud = enfant(noeud,
+                    tampon[i]);
+                if(noeud == 0) {
+                    noeud = -1;
+                }
+            }
+            i++;
+        }
+        this.finCommande = i;
+        this.position = i;
+        if(noeud > 0) {
+            this.masque = MASQUES[noeud];
+        }
+    }
+
+    /**
+     * Texte de la ligne analysée.
+     */
+    @Override
+    public String getLigne() {
+        return new String(this.tampon,
+            this.debut,
+            this.fin
+                - this.debut);
+    }
+
+    /**
+     * Vérifie si la ligne ne contient que des espaces.
+     */
+    @Override
+    public boolean estVide() {
+        return this.debutCommande == this.finCommande;
+    }
+
+    /**
+     * Vérifie si la ligne est la commande exit (en toutes lettres).
+     */
+    @Override
+    public boolean estFin() {
+        return motEgal(this.debutCommande,
+            this.finCommande,
+            "exit");
+    }
+
+    /**
+     * Vérifie si la ligne, une fois ses blancs de tête retirés, commence par
+     * "--" (équivalent de ligne.trim().startsWith("--")).
+     */
+    @Override
+    public boolean estCommentaire() {
+        int i = this.debut;
+        while(i < this.fin
+            && this.tampon[i] <= ' ') {
+            i++;
+        }
+        return i
+            + 1 < this.fin
+            && this.tampon[i] == '-'
+            && this.tampon[i
+                + 1] == '-';
+    }
+
+    /**
+     * Commande désignée par le premier mot, ou null si le mot n'abrège
+     * aucune commande.
+     */
+    @Override
+    public Commande getCommande() {
+        return this.masque == 0
+            ? null
+            : COMMANDES[Integer.numberOfTrailingZeros(this.masque)];
+    }
+
+    /**
+     * Vérifie si le premier mot est une abréviation de commande (équivalent
+     * de commande.getNom().startsWith(mot)).
+     */
+    @Override
+    public boolean estAbreviation(Commande commande) {
+        return (this.masque & (1 << commande.ordinal())) != 0;
+    }
+
+    /**
+     * Lecture d'un argument chaîne.
+     */
+    @Override
+    public String lireString() throws BiblioException {
+        int debut = mot();
+        return new String(this.tampon,
+            debut,
+            this.position
+                - debut);
+    }
+
+    /**
+     * Lecture d'un argument int (mêmes formats que Integer.parseInt).
+     */
+    @Override
+    public int lireInt() throws BiblioException {
+        return (int) lireEntier(Integer.MIN_VALUE,
+            Integer.MAX_VALUE);
+    }
+
+    /**
+     * Lecture d'un argument long (mêmes formats que Long.parseLong).
+     */
+    @Override
+    public long lireLong() throws BiblioException {
+        return lireEntier(Long.MIN_VALUE,
+            Long.MAX_VALUE);
+    }
+
+    /**
+     * Lecture d'un argument date en format YYYY-MM-DD. Une date de la forme
+     * AAAA-MM-JJ (année après 1582) est validée directement sur le tampon ;
+     * les autres formes sont soumises à FormatteurDate.
+     */
+    @Override
+    public String lireDate() throws BiblioException {
+        int debut = mot();
+        String date = new String(this.tampon,
+            debut,
+            this.position
+                - debut);
+        if(!estDateSimple(debut,
+            this.position)) {
+            try {
+                FormatteurDate.convertirDate(date);
+            } catch(ParseException e) {
+                throw new BiblioException("Date en format YYYY-MM-DD attendue à la place  de \""
+                    + date
+                    + "\"");
+            }
+        }
+        return date;
+    }
+
+    /**
+     * Commandes dont le premier mot est une abréviation (un bit par ordinal).
+     */
+    int getMasque() {
+        return this.masque;
+    }
+
+    /**
+     * Avance sur le mot suivant et retourne son début ; position est placée
+     * à sa fin.
+     */
+    private int mot() throws BiblioException {
+        int i = this.position;
+        while(i < this.fin
+            && this.tampon[i] == ' ') {
+            i++;
+        }
+        if(i == this.fin) {
+            this.position = i;
+            throw new BiblioException("autre paramètre attendu");
+        }
+        int debut = i;
+        while(i < this.fin
+            && this.tampon[i] != ' ') {
+            i++;
+        }
+        this.position = i;
+        return debut;
+    }
+
+    /**
+     * Décodage d'un entier entre min et max, avec le même algorithme que
+     * Long.parseLong (cumul en négatif pour atteindre min).
+     */
+    private long lireEntier(long min,
+        long max) throws BiblioException {
+        int debut = mot();
+        int i = debut;
+        boolean negatif = false;
+        long limite = -max;
+        char premier = this.tampon[i];
+        if(premier < '0') {
+            if(premier == '-') {
+                negatif = true;
+                limite = min;
+            } else if(premier != '+') {
+                throw nombreAttendu(debut);
+            }
+            if(this.position
+                - debut == 1) {
+                throw nombreAttendu(debut);
+            }
+            i++;
+        }
+        long multiplicandeMin = limite
+            / 10;
+        long resultat = 0;
+        while(i < this.position) {
+            int chiffre = Character.digit(this.tampon[i++],
+                10);
+            if(chiffre < 0
+                || resultat < multiplicandeMin) {
+                throw nombreAttendu(debut);
+            }
+            resultat *= 10;
+            if(resultat < limite
+                + chiffre) {
+                throw nombreAttendu(debut);
+            }
+            resultat -= chiffre;
+        }
+        return negatif
+            ? resultat
+            : -resultat;
+    }
+
+    private BiblioException nombreAttendu(int debut) {
+        return new BiblioException("Nombre attendu à la place de \""
+            + new String(this.tampon,
+                debut,
+                this.position
+                    - debut)
+            + "\"");
+    }
+
+    /**
+     * Vérifie si les caractères debut à fin - 1 forment une date valide
+     * AAAA-MM-JJ d'une année après 1582 (calendrier grégorien).
+     */
+    private boolean estDateSimple(int debut,
+        int fin) {
+        if(fin
+            - debut != 10
+            || this.tampon[debut
+                + 4] != '-'
+            || this.tampon[debut
+                + 7] != '-') {
+            return false;
+        }
+        int annee = chiffres(debut,
+            4);
+        int mois = chiffres(debut
+            + 5,
+            2);
+        int jour = chiffres(debut
+            + 8,
+            2);
+        return annee > 1582
+            && mois >= 1
+            && mois <= 12
+            && jour >= 1
+            && jour <= joursDuMois(annee,
+                mois);
+    }
+
+    /**
+     * Valeur des nb chiffres ASCII à partir de debut, ou -1.
+     */
+    private int chiffres(int debut,
+        int nb) {
+        int valeur = 0;
+        for(int i = debut; i < debut
+            + nb; i++) {
+            char c = this.tampon[i];
+            if(c < '0'
+                || c > '9') {
+                return -1;
+            }
+            valeur = valeur
+                * 10
+                + (c - '0');
+        }
+        return valeur;
+    }
+
+    private static int joursDuMois(int annee,
+        int mois) {
+        if(mois == 2) {
+            boolean bissextile = annee
+                % 4 == 0
+                && (annee
+                    % 100 != 0
+                    || annee
+                        % 400 == 0);
+            return bissextile
+                ? 29
+                : 28;
+        }
+        return mois == 4
+            || mois == 6
+            || mois == 9
+            || mois == 11
+                ? 30
+                : 31;
+    }
+
+    private boolean motEgal(int debut,
+        int fin,
+        String mot) {
+        if(fin
+            - debut != mot.length()) {
+            return false;
+        }
+        for(int i = 0; i < mot.length(); i++) {
+            if(this.tampon[debut
+                + i] != mot.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Enfant de noeud par le caractère c, ou 0.
+     */
+    private static int enfant(int noeud,
+        char c) {
+        for(int enfant = PREMIERS_ENFANTS[noeud]; enfant != 0; enfant = FRERES[enfant]) {
+            if(CARACTERES[enfant] == c) {
+                return enfant;
+            }
+        }
+        return 0;
+    }
+}
@@ -1,16 +1,25 @@
 
 package ca.qc.collegeahuntsic.bibliotheque;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.text.ParseException;
-import java.util.StringTokenizer;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import ca.qc.collegeahuntsic.bibliotheque.AnalyseurTransaction.Commande;
+import ca.qc.collegeahuntsic.bibliotheque.db.ConfigurationConnexion;
 import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
+import ca.qc.collegeahuntsic.bibliotheque.db.ExecuteurTransaction.UniteTravail;
+import ca.qc.collegeahuntsic.bibliotheque.dto.LivreDTO;
+import ca.qc.collegeahuntsic.bibliotheque.dto.MembreDTO;
 import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
+import ca.qc.collegeahuntsic.bibliotheque.sortie.Sortie;
+import ca.qc.collegeahuntsic.bibliotheque.sortie.SortieTampon;
 import ca.qc.collegeahuntsic.bibliotheque.util.BibliothequeCreateur;
-import ca.qc.collegeahuntsic.bibliotheque.util.FormatteurDate;
+import ca.qc.collegeahuntsic.bibliotheque.util.ConfigurationBibliotheque;
 
 /**
  * Interface du système de gestion d'une bibliothèque
@@ -25,6 +34,40 @@ import ca.qc.collegeahuntsic.bibliotheque.util.FormatteurDate;
  * passe pour le user id 4- fichier de transaction [optionnel] si non spécifié,
  * les transactions sont lues au clavier (System.in)
  *
+ * Paramètres (configuration externe) 0- fichier de configuration .properties
+ * (voir ConfigurationConnexion et ConfigurationBibliotheque) 1- fichier de
+ * transaction [optionnel]
+ *
+ * Le fichier de transaction est un chemin (le fichier est alors projeté en
+ * mémoire), une ressource du classpath, ou "-" pour l'entrée standard (voir
+ * LecteurTransactions).
+ *
+ * Si la configuration le demande (chargementParLots), les acquerir et les
+ * inscrire consécutifs sont regroupés et traités en lots (acquerirLot,
+ * inscrireLot) ; les erreurs d'un lot sont affichées quand il est traité.
+ *
+ * Si la configuration le demande (groupe.taille, groupe.delai), les
+ * transactions consécutives sont validées par groupes, avec un seul commit
+ * par groupe ; une transaction qui échoue n'annule qu'elle-même. Si le
+ * serveur annule tout le groupe, ses transactions sont reprises une à une.
+ * L'affichage d'un groupe est gardé (SortieTampon) jusqu'à son commit ; si
+ * le groupe est repris, seul l'affichage de la reprise est écrit.
+ * Le débit (transactions/s) est affiché à la fin du traitement.
+ *
+ * Si la configuration le demande (rejeu.fils), les transactions sont
+ * plutôt rejouées en parallèle, avec le même affichage (voir
+ * RejeuParallele).
+ *
+ * Si la configuration le demande (pipeline.actif), un fichier de
+ * transactions est lu et validé en avance, dans d'autres threads, pendant
+ * l'exécution des transactions précédentes (voir PipelineTransactions).
+ * L'entrée standard est toujours lue au fil de l'exécution.
+ *
+ * L'affichage passe par la Sortie de BibliothequeCreateur : directement à la
+ * console, ou par un tampon vidé en arrière-plan (sortie.asynchrone). Elle
+ * est vidée à la fin du traitement, y compris sur erreur. En mode silencieux
+ * (sortie.silencieuse), l'écho des lignes lues n'est pas affiché.
+ *
  * Pré-condition la base de données de la bibliothèque doit exister
  *
  * Post-condition le programme effectue les maj associées à chaque transaction
@@ -33,244 +76,502 @@ import ca.qc.collegeahuntsic.bibliotheque.util.FormatteurDate;
 public class Biblio {
     private static BibliothequeCreateur gestionBiblio;
 
+    /**
+     * Sortie de l'affichage des transactions (remplacée pendant le rejeu
+     * parallèle).
+     */
+    static Sortie sortie;
+
+    private static final StringBuilder ECHO = new StringBuilder("> ");
+
+    /* Affichage du groupe de transactions en cours, null hors des groupes */
+    private static SortieTampon sortieGroupe;
+
+    private static List<LivreDTO> lotLivres = new ArrayList<>();
+
+    private static List<MembreDTO> lotMembres = new ArrayList<>();
+
     /**
      * Ouverture de la BD, traitement des transactions et fermeture de la BD.
      */
     public static void main(String argv[]) throws Exception {
         // validation du nombre de paramètres
-        if(argv.length < 5) {
+        boolean configurationExterne = argv.length >= 1
+            && argv[0].endsWith(".properties");
+        if(argv.length < 4
+            && !configurationExterne) {
             System.out.println("Usage: java Biblio <serveur> <bd> <user> <password> [<fichier-transactions>]");
+            System.out.println("       java Biblio <configuration.properties> [<fichier-transactions>]");
+            System.out.println("       (fichier, ressource du classpath, ou - pour l'entrée standard)");
             System.out.println(Connexion.serveursSupportes());
             return;
         }
+        int indiceFichier = configurationExterne
+            ? 1
+            : 4;
+        String fichierTransactions = argv.length > indiceFichier
+            ? argv[indiceFichier]
+            : null;
 
         try {
             // ouverture du fichier de transactions
-            // s'il est spécifié comme argument
-            InputStream sourceTransaction = Biblio.class.getResourceAsStream("/"
-                + argv[4]);
+            // s'il est spécifié comme argument, sinon de l'entrée standard
             try(
-                BufferedReader reader = new BufferedReader(new InputStreamReader(sourceTransaction))) {
-                gestionBiblio = new BibliothequeCreateur(argv[0],
-                    argv[1],
-                    argv[2],
-                    argv[3]);
-                traiterTransactions(reader);
+                LecteurTransactions lecteur = LecteurTransactions.ouvrir(fichierTransactions)) {
+                if(configurationExterne) {
+                    Properties proprietes = ConfigurationConnexion.lireProprietes(argv[0]);
+                    gestionBiblio = new BibliothequeCreateur(ConfigurationConnexion.depuisProprietes(proprietes),
+                        ConfigurationBibliotheque.depuisProprietes(proprietes));
+                } else {
+                    gestionBiblio = new BibliothequeCreateur(argv[0],
+                        argv[1],
+                        argv[2],
+                        argv[3]);
+                }
+                sortie = gestionBiblio.sortie;
+                traiterTransactions(lecteur);
             }
 
         } catch(Exception e) {
-            e.printStackTrace(System.out);
+            if(sortie == null) {
+                e.printStackTrace(System.out);
+            } else {
+                /* après l'affichage en attente */
+                StringWriter trace = new StringWriter();
+                e.printStackTrace(new PrintWriter(trace));
+                sortie.ecrire(trace.toString());
+            }
         } finally {
-            gestionBiblio.fermer();
+            if(gestionBiblio != null) {
+                gestionBiblio.fermer();
+            }
         }
     }
 
     /**
      * Traitement des transactions de la bibliothèque
      */
-    static void traiterTransactions(BufferedReader reader) throws Exception {
+    static void traiterTransactions(LecteurTransactions lecteur) throws Exception {
+        ConfigurationBibliotheque configuration = gestionBiblio.configuration;
+        List<String> groupe = new ArrayList<>();
+        long debutGroupe = 0;
+        long nbTransactions = 0;
+        long debut = System.nanoTime();
+
         afficherAide();
-        String transaction = lireTransaction(reader);
-        while(!finTransaction(transaction)) {
-            /* découpage de la transaction en mots */
-            StringTokenizer tokenizer = new StringTokenizer(transaction,
-                " ");
-            if(tokenizer.hasMoreTokens()) {
-                executerTransaction(tokenizer);
+        if(configuration.getFilsRejeu() > 1
+            && !configuration.isChargementParLots()
+            && configuration.getTailleGroupe() <= 1) {
+            nbTransactions = new RejeuParallele(gestionBiblio,
+                configuration.getFilsRejeu(),
+                configuration.getFenetreRejeu()).rejouer(lecteur);
+            afficherDebit(nbTransactions,
+                System.nanoTime()
+                    - debut);
+            return;
+        }
+        AnalyseurTransaction analyseur = new AnalyseurTransaction();
+        if(configuration.getTailleGroupe() > 1) {
+            sortieGroupe = new SortieTampon();
+            sortie = sortieGroupe;
+            gestionBiblio.gestionInterrogation.setSortie(sortieGroupe);
+        }
+        try {
+            try(
+                PipelineTransactions pipeline = configuration.isPipeline()
+                    && !lecteur.estEntreeStandard()
+                        ? new PipelineTransactions(lecteur,
+                            configuration.getFilePipeline())
+                        : null) {
+                while(true) {
+                    LigneTransaction transaction = pipeline == null
+                        ? lireTransaction(lecteur,
+                            analyseur)
+                        : lireTransaction(pipeline);
+                    if(transaction == null
+                        || transaction.estFin()) {
+                        break;
+                    }
+                    if(transaction.estVide()) {
+                        continue;
+                    }
+                    if(configuration.getTailleGroupe() > 1) {
+                        if(groupe.isEmpty()) {
+                            gestionBiblio.cx.debuterGroupe();
+                            debutGroupe = System.currentTimeMillis();
+                        }
+                        groupe.add(transaction.getLigne());
+                        executerDansGroupe(() -> executerTransaction(transaction),
+                            groupe);
+                        if(groupe.size() >= configuration.getTailleGroupe()
+                            || (configuration.getDelaiGroupe() > 0
+                                && System.currentTimeMillis()
+                                    - debutGroupe >= configuration.getDelaiGroupe())) {
+                            terminerGroupe(groupe);
+                        }
+                    } else {
+                        executerTransaction(transaction);
+                    }
+                    if(!transaction.estCommentaire()) {
+                        nbTransactions++;
+                    }
+                }
+            }
+            terminerGroupe(groupe);
+        } finally {
+            if(sortieGroupe != null) {
+                /* affichage en attente, dont celui d'un groupe interrompu */
+                sortieGroupe.transferer(gestionBiblio.sortie);
+                sortieGroupe = null;
+                sortie = gestionBiblio.sortie;
+                gestionBiblio.gestionInterrogation.setSortie(gestionBiblio.sortie);
             }
-            transaction = lireTransaction(reader);
         }
+        afficherDebit(nbTransactions,
+            System.nanoTime()
+                - debut);
     }
 
     /**
-     * Lecture d'une transaction
+     * Exécution d'un travail dans le groupe de transactions en cours. Si le
+     * serveur annule le groupe, ses transactions sont reprises une à une.
      */
-    static String lireTransaction(BufferedReader reader) throws IOException {
-
-        String transaction = reader.readLine();
-        if(transaction != null) {
-            System.out.print("> ");
-            /* echo si lecture dans un fichier */
-            System.out.println(transaction);
+    static void executerDansGroupe(UniteTravail travail,
+        List<String> groupe) throws Exception {
+        try {
+            travail.executer();
+        } catch(SQLException e) {
+            if(!gestionBiblio.cx.isGroupePerdu()) {
+                throw e;
+            }
+            reprendreGroupe(groupe,
+                e);
         }
-        return transaction;
     }
 
     /**
-     * Décodage et traitement d'une transaction
+     * Traitement des lots en attente et commit du groupe de transactions en
+     * cours.
      */
-    static void executerTransaction(StringTokenizer tokenizer) throws Exception {
+    static void terminerGroupe(List<String> groupe) throws Exception {
+        executerDansGroupe(() -> {
+            viderLotLivres();
+            viderLotMembres();
+        },
+            groupe);
+        if(groupe.isEmpty()) {
+            afficherGroupe();
+            return;
+        }
         try {
-            String command = tokenizer.nextToken();
-
-            /* ******************* */
-            /* HELP */
-            /* ******************* */
-            if("aide".startsWith(command)) {
-                afficherAide();
-            } else if("acquerir".startsWith(command)) {
-                gestionBiblio.gestionLivre.acquerir(readInt(tokenizer) /* idLivre */,
-                    readString(tokenizer) /* titre */,
-                    readString(tokenizer) /* auteur */,
-                    readDate(tokenizer) /* dateAcquisition */);
-            } else if("vendre".startsWith(command)) {
-                gestionBiblio.gestionLivre.vendre(readInt(tokenizer) /* idLivre */);
-            } else if("preter".startsWith(command)) {
-                gestionBiblio.gestionPret.preter(readInt(tokenizer) /* idLivre */,
-                    readInt(tokenizer) /* idMembre */,
-                    readDate(tokenizer) /* dateEmprunt */);
-            } else if("renouveler".startsWith(command)) {
-                gestionBiblio.gestionPret.renouveler(readInt(tokenizer) /* idLivre */,
-                    readDate(tokenizer) /* dateRenouvellement */);
-            } else if("retourner".startsWith(command)) {
-                gestionBiblio.gestionPret.retourner(readInt(tokenizer) /* idLivre */,
-                    readDate(tokenizer) /* dateRetour */);
-            } else if("inscrire".startsWith(command)) {
-                gestionBiblio.gestionMembre.inscrire(readInt(tokenizer) /* idMembre */,
-                    readString(tokenizer) /* nom */,
-                    readLong(tokenizer) /* tel */,
-                    readInt(tokenizer) /* limitePret */);
-            } else if("desinscrire".startsWith(command)) {
-                gestionBiblio.gestionMembre.desinscrire(readInt(tokenizer) /* idMembre */);
-            } else if("reserver".startsWith(command)) {
-                gestionBiblio.gestionReservation.reserver(readInt(tokenizer) /* idReservation */,
-                    readInt(tokenizer) /* idLivre */,
-                    readInt(tokenizer) /* idMembre */,
-                    readDate(tokenizer) /* dateReservation */);
-            } else if("prendreRes".startsWith(command)) {
-                gestionBiblio.gestionReservation.prendreRes(readInt(tokenizer) /* idReservation */,
-                    readDate(tokenizer) /* dateReservation */);
-            } else if("annulerRes".startsWith(command)) {
-                gestionBiblio.gestionReservation.annulerRes(readInt(tokenizer) /* idReservation */);
-            } else if("listerLivres".startsWith(command)) {
-                gestionBiblio.gestionInterrogation.listerLivres();
-            } else if("listerLivresTitre".startsWith(command)) {
-                gestionBiblio.gestionInterrogation.listerLivresTitre(readString(tokenizer) /* mot */);
-            } else if("--".startsWith(command)) {
-            }// ne rien faire; c'est un commentaire
-            /* *********************** */
-            /* TRANSACTION NON RECONNUEE */
-            /* *********************** */else {
-                System.out.println("  Transactions non reconnue.  Essayer \"aide\"");
-            }
-        } catch(BiblioException e) {
-            System.out.println("** "
-                + e.toString());
+            gestionBiblio.cx.terminerGroupe();
+            groupe.clear();
+        } catch(SQLException e) {
+            reprendreGroupe(groupe,
+                e);
         }
+        afficherGroupe();
     }
 
-    /** Affiche le menu des transactions acceptées par le système */
-    static void afficherAide() {
-        System.out.println();
-        System.out.println("Chaque transaction comporte un nom et une liste d'arguments");
-        System.out.println("separes par des espaces. La liste peut etre vide.");
-        System.out.println(" Les dates sont en format yyyy-mm-dd.");
-        System.out.println("");
-        System.out.println("Les transactions sont:");
-        System.out.println("  aide");
-        System.out.println("  exit");
-        System.out.println("  acquerir <idLivre> <titre> <auteur> <dateAcquisition>");
-        System.out.println("  preter <idLivre> <idMembre> <dateEmprunt>");
-        System.out.println("  renouveler <idLivre> <dateRenouvellement>");
-        System.out.println("  retourner <idLivre> <dateRetour>");
-        System.out.println("  vendre <idLivre>");
-        System.out.println("  inscrire <idMembre> <nom> <telephone> <limitePret>");
-        System.out.println("  desinscrire <idMembre>");
-        System.out.println("  reserver <idReservation> <idLivre> <idMembre> <dateReservation>");
-        System.out.println("  prendreRes <idReservation> <dateEmprunt>");
-        System.out.println("  annulerRes <idReservation>");
-        System.out.println("  listerLivresRetard <dateCourante>");
-        System.out.println("  listerLivresTitre <mot>");
-        System.out.println("  listerLivres");
+    /**
+     * Écriture de l'affichage gardé du groupe de transactions, après son
+     * commit.
+     */
+    private static void afficherGroupe() {
+        if(sortieGroupe != null) {
+            sortieGroupe.transferer(gestionBiblio.sortie);
+        }
     }
 
     /**
-     * Vérifie si la fin du traitement des transactions est atteinte.
+     * Annulation du groupe de transactions en cours et reprise de ses
+     * transactions une à une, chacune avec son propre commit. L'affichage
+     * de leur première exécution est abandonné ; chacune est affichée de
+     * nouveau, avec son écho.
      */
-    static boolean finTransaction(String transaction) {
-        /* fin de fichier atteinte */
-        if(transaction == null) {
-            return true;
+    static void reprendreGroupe(List<String> groupe,
+        SQLException cause) throws Exception {
+        gestionBiblio.cx.annulerGroupe();
+        List<String> transactions = new ArrayList<>(groupe);
+        groupe.clear();
+        lotLivres = new ArrayList<>();
+        lotMembres = new ArrayList<>();
+        if(sortieGroupe != null) {
+            sortieGroupe.effacer();
         }
+        sortie.ecrireLigne("** Groupe de "
+            + transactions.size()
+            + " transactions annulé ("
+            + cause.getMessage()
+            + "), reprise une à une");
+        AnalyseurTransaction analyseur = new AnalyseurTransaction();
+        for(String transaction : transactions) {
+            ecrireEcho(transaction);
+            analyseur.analyser(transaction);
+            executerTransaction(analyseur);
+        }
+        viderLotLivres();
+        viderLotMembres();
+        afficherGroupe();
+    }
+
+    /**
+     * Affichage du nombre de transactions traitées par seconde.
+     */
+    static void afficherDebit(long nbTransactions,
+        long duree) {
+        long millis = Math.max(1,
+            duree
+                / 1000000);
+        sortie.ecrireLigne("Débit : "
+            + nbTransactions
+            + " transactions en "
+            + millis
+            + " ms ("
+            + nbTransactions
+                * 1000
+                / millis
+            + " transactions/s)");
+    }
 
-        StringTokenizer tokenizer = new StringTokenizer(transaction,
-            " ");
+    /**
+     * Lecture d'une transaction, laissée analysée dans analyseur.
+     *
+     * @return analyseur, ou null à la fin du fichier
+     */
+    static LigneTransaction lireTransaction(LecteurTransactions lecteur,
+        AnalyseurTransaction analyseur) throws IOException {
 
-        /* ligne ne contenant que des espaces */
-        if(!tokenizer.hasMoreTokens()) {
-            return false;
+        if(!lecteur.suivante()) {
+            return null;
         }
+        if(!gestionBiblio.configuration.isSortieSilencieuse()) {
+            /* echo si lecture dans un fichier, en une seule écriture */
+            ECHO.setLength(2);
+            ECHO.append(lecteur.getTampon(),
+                lecteur.getDebut(),
+                lecteur.getFin()
+                    - lecteur.getDebut());
+            sortie.ecrireLigne(ECHO);
+        }
+        analyseur.analyser(lecteur.getTampon(),
+            lecteur.getDebut(),
+            lecteur.getFin());
+        return analyseur;
+    }
 
-        /* commande "exit" */
-        String commande = tokenizer.nextToken();
-        if(commande.equals("exit")) {
-            return true;
-        } else {
-            return false;
+    /**
+     * Lecture d'une transaction déjà validée par le pipeline.
+     *
+     * @return null à la fin du fichier
+     */
+    static LigneTransaction lireTransaction(PipelineTransactions pipeline) throws IOException,
+        InterruptedException {
+
+        LigneValidee transaction = pipeline.suivante();
+        if(transaction != null) {
+            ecrireEcho(transaction.getLigne());
         }
+        return transaction;
     }
 
-    /** lecture d'une chaîne de caractères de la transaction entrée à l'écran */
-    static String readString(StringTokenizer tokenizer) throws BiblioException {
-        if(tokenizer.hasMoreElements()) {
-            return tokenizer.nextToken();
-        } else {
-            throw new BiblioException("autre paramètre attendu");
+    /**
+     * Écho d'une ligne de transaction, en une seule écriture, sauf en mode
+     * silencieux.
+     */
+    private static void ecrireEcho(String ligne) {
+        if(!gestionBiblio.configuration.isSortieSilencieuse()) {
+            ECHO.setLength(2);
+            ECHO.append(ligne);
+            sortie.ecrireLigne(ECHO);
         }
     }
 
     /**
-     * lecture d'un int java de la transaction entrée à l'écran
+     * Traitement d'une transaction analysée
      */
-    static int readInt(StringTokenizer tokenizer) throws BiblioException {
-        if(tokenizer.hasMoreElements()) {
-            String token = tokenizer.nextToken();
-            try {
-                return Integer.valueOf(token).intValue();
-            } catch(NumberFormatException e) {
-                throw new BiblioException("Nombre attendu à la place de \""
-                    + token
-                    + "\"");
+    static void executerTransaction(LigneTransaction transaction) throws Exception {
+        try {
+            Commande commande = transaction.getCommande();
+            if(commande != Commande.COMMENTAIRE) {
+                if(commande != Commande.ACQUERIR) {
+                    viderLotLivres();
+                }
+                if(commande != Commande.INSCRIRE) {
+                    viderLotMembres();
+                }
+            }
+
+            if(commande == null) {
+                /* *********************** */
+                /* TRANSACTION NON RECONNUEE */
+                /* *********************** */
+                sortie.ecrireLigne("  Transactions non reconnue.  Essayer \"aide\"");
+                return;
             }
-        } else {
-            throw new BiblioException("autre paramètre attendu");
+            switch(commande) {
+                case AIDE:
+                    afficherAide();
+                    break;
+                case ACQUERIR:
+                    if(chargementParLots()) {
+                        LivreDTO tupleLivre = new LivreDTO();
+                        try {
+                            tupleLivre.idLivre = transaction.lireInt();
+                            tupleLivre.titre = transaction.lireString();
+                            tupleLivre.auteur = transaction.lireString();
+                            tupleLivre.dateAcquisition = Date.valueOf(transaction.lireDate());
+                        } catch(BiblioException e) {
+                            // les erreurs du lot en attente sont affichées avant celle-ci
+                            viderLotLivres();
+                            throw e;
+                        }
+                        lotLivres.add(tupleLivre);
+                        if(lotLivres.size() >= tailleLot()) {
+                            viderLotLivres();
+                        }
+                    } else {
+                        gestionBiblio.gestionLivre.acquerir(transaction.lireInt() /* idLivre */,
+                            transaction.lireString() /* titre */,
+                            transaction.lireString() /* auteur */,
+                            transaction.lireDate() /* dateAcquisition */);
+                    }
+                    break;
+                case VENDRE:
+                    gestionBiblio.gestionLivre.vendre(transaction.lireInt() /* idLivre */);
+                    break;
+                case PRETER:
+                    gestionBiblio.gestionPret.preter(transaction.lireInt() /* idLivre */,
+                        transaction.lireInt() /* idMembre */,
+                        transaction.lireDate() /* dateEmprunt */);
+                    break;
+                case RENOUVELER:
+                    gestionBiblio.gestionPret.renouveler(transaction.lireInt() /* idLivre */,
+                        transaction.lireDate() /* dateRenouvellement */);
+                    break;
+                case RETOURNER:
+                    gestionBiblio.gestionPret.retourner(transaction.lireInt() /* idLivre */,
+                        transaction.lireDate() /* dateRetour */);
+                    break;
+                case INSCRIRE:
+                    if(chargementParLots()) {
+                        MembreDTO tupleMembre = new MembreDTO();
+                        try {
+                            tupleMembre.idMembre = transaction.lireInt();
+                            tupleMembre.nom = transaction.lireString();
+                            tupleMembre.telephone = transaction.lireLong();
+                            tupleMembre.limitePret = transaction.lireInt();
+                        } catch(BiblioException e) {
+                            // les erreurs du lot en attente sont affichées avant celle-ci
+                            viderLotMembres();
+                            throw e;
+                        }
+                        lotMembres.add(tupleMembre);
+                        if(lotMembres.size() >= tailleLot()) {
+                            viderLotMembres();
+                        }
+                    } else {
+                        gestionBiblio.gestionMembre.inscrire(transaction.lireInt() /* idMembre */,
+                            transaction.lireString() /* nom */,
+                            transaction.lireLong() /* tel */,
+                            transaction.lireInt() /* limitePret */);
+                    }
+                    break;
+                case DESINSCRIRE:
+                    gestionBiblio.gestionMembre.desinscrire(transaction.lireInt() /* idMembre */);
+                    break;
+                case RESERVER:
+                    gestionBiblio.gestionReservation.reserver(transaction.lireInt() /* idReservation */,
+                        transaction.lireInt() /* idLivre */,
+                        transaction.lireInt() /* idMembre */,
+                        transaction.lireDate() /* dateReservation */);
+                    break;
+                case PRENDRE_RES:
+                    gestionBiblio.gestionReservation.prendreRes(transaction.lireInt() /* idReservation */,
+                        transaction.lireDate() /* dateReservation */);
+                    break;
+                case ANNULER_RES:
+                    gestionBiblio.gestionReservation.annulerRes(transaction.lireInt() /* idReservation */);
+                    break;
+                case LISTER_LIVRES:
+                    gestionBiblio.gestionInterrogation.listerLivres();
+                    break;
+                case LISTER_LIVRES_TITRE:
+                    gestionBiblio.gestionInterrogation.listerLivresTitre(transaction.lireString() /* mot */);
+                    break;
+                case COMMENTAIRE:
+                default:
+                    // ne rien faire; c'est un commentaire
+                    break;
+            }
+        } catch(BiblioException e) {
+            sortie.ecrireLigne("** "
+                + e.toString());
         }
     }
 
+    private static boolean chargementParLots() {
+        return gestionBiblio.configuration.isChargementParLots();
+    }
+
+    private static int tailleLot() {
+        return Math.max(1,
+            gestionBiblio.configuration.getTailleLot());
+    }
+
     /**
-     * lecture d'un long java de la transaction entrée à l'écran
+     * Traitement du lot de livres en attente et affichage de ses erreurs.
      */
-    static long readLong(StringTokenizer tokenizer) throws BiblioException {
-        if(tokenizer.hasMoreElements()) {
-            String token = tokenizer.nextToken();
-            try {
-                return Long.valueOf(token).longValue();
-            } catch(NumberFormatException e) {
-                throw new BiblioException("Nombre attendu à la place de \""
-                    + token
-                    + "\"");
-            }
-        } else {
-            throw new BiblioException("autre paramètre attendu");
+    static void viderLotLivres() throws Exception {
+        if(lotLivres.isEmpty()) {
+            return;
         }
+        List<LivreDTO> lot = lotLivres;
+        lotLivres = new ArrayList<>();
+        afficherErreurs(gestionBiblio.gestionLivre.acquerirLot(lot));
     }
 
     /**
-     * lecture d'une date en format YYYY-MM-DD
+     * Traitement du lot de membres en attente et affichage de ses erreurs.
      */
-    static String readDate(StringTokenizer tokenizer) throws BiblioException {
-        if(tokenizer.hasMoreElements()) {
-            String token = tokenizer.nextToken();
-            try {
-                FormatteurDate.convertirDate(token);
-                return token;
-            } catch(ParseException e) {
-                throw new BiblioException("Date en format YYYY-MM-DD attendue à la place  de \""
-                    + token
-                    + "\"");
-            }
-        } else {
-            throw new BiblioException("autre paramètre attendu");
+    static void viderLotMembres() throws Exception {
+        if(lotMembres.isEmpty()) {
+            return;
+        }
+        List<MembreDTO> lot = lotMembres;
+        lotMembres = new ArrayList<>();
+        afficherErreurs(gestionBiblio.gestionMembre.inscrireLot(lot));
+    }
+
+    private static void afficherErreurs(List<BiblioException> erreurs) {
+        for(BiblioException e : erreurs) {
+            sortie.ecrireLigne("** "
+                + e.toString());
         }
     }
+
+    /** Affiche le menu des transactions acceptées par le système */
+    static void afficherAide() {
+        sortie.ecrireLigne("");
+        sortie.ecrireLigne("Chaque transaction comporte un nom et une liste d'arguments");
+        sortie.ecrireLigne("separes par des espaces. La liste peut etre vide.");
+        sortie.ecrireLigne(" Les dates sont en format yyyy-mm-dd.");
+        sortie.ecrireLigne("");
+        sortie.ecrireLigne("Les transactions sont:");
+        sortie.ecrireLigne("  aide");
+        sortie.ecrireLigne("  exit");
+        sortie.ecrireLigne("  acquerir <idLivre> <titre> <auteur> <dateAcquisition>");
+        sortie.ecrireLigne("  preter <idLivre> <idMembre> <dateEmprunt>");
+        sortie.ecrireLigne("  renouveler <idLivre> <dateRenouvellement>");
+        sortie.ecrireLigne("  retourner <idLivre> <dateRetour>");
+        sortie.ecrireLigne("  vendre <idLivre>");
+        sortie.ecrireLigne("  inscrire <idMembre> <nom> <telephone> <limitePret>");
+        sortie.ecrireLigne("  desinscrire <idMembre>");
+        sortie.ecrireLigne("  reserver <idReservation> <idLivre> <idMembre> <dateReservation>");
+        sortie.ecrireLigne("  prendreRes <idReservation> <dateEmprunt>");
+        sortie.ecrireLigne("  annulerRes <idReservation>");
+        sortie.ecrireLigne("  listerLivresRetard <dateCourante>");
+        sortie.ecrireLigne("  listerLivresTitre <mot>");
+        sortie.ecrireLigne("  listerLivres");
+    }
 }// class
@@ -2,9 +2,14 @@
 package ca.qc.collegeahuntsic.bibliotheque;
 
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import ca.qc.collegeahuntsic.bibliotheque.dao.DAO;
+import ca.qc.collegeahuntsic.bibliotheque.dao.InstantaneLivres;
 import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
+import ca.qc.collegeahuntsic.bibliotheque.sortie.Sortie;
+import ca.qc.collegeahuntsic.bibliotheque.sortie.SortieConsole;
 
 /**
  * Gestion des transactions d'interrogation dans une bibliothèque.
@@ -21,30 +26,82 @@ import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
  *     le programme effectue les maj associées à chaque
  *     transaction
  *
+ *   Avec un instantané du catalogue (InstantaneLivres), les listes de
+ *   livres sont faites en mémoire, après la relecture des seuls livres
+ *   modifiés depuis la liste précédente. La date de retour est alors la
+ *   date de prêt plus 14 jours.
+ *
+ *   Les listes sont écrites dans une Sortie (la console par défaut), une
+ *   ligne par livre.
  *
  * </pre>
  */
 
-public class GestionInterrogation {
+public class GestionInterrogation extends DAO {
+
+    private static final long serialVersionUID = 1L;
 
-    private PreparedStatement stmtLivresTitreMot;
+    private static final String SQL_LIVRES_TITRE_MOT = "select t1.idLivre, t1.titre, t1.auteur, t1.idmembre, t1.datePret + 14 "
+        + "from livre t1 "
+        + "where lower(titre) like ?";
 
-    private PreparedStatement stmtListeTousLivres;
+    private static final String SQL_LISTE_TOUS_LIVRES = "select t1.idLivre, t1.titre, t1.auteur, t1.idmembre, t1.datePret "
+        + "from livre t1";
 
-    private Connexion cx;
+    private final InstantaneLivres instantane;
+
+    private Sortie sortie;
 
     /**
      * Creation d'une instance
      */
-    public GestionInterrogation(Connexion cx) throws SQLException {
+    public GestionInterrogation(Connexion cx) {
+
+        this(cx,
+            null);
+    }
+
+    /**
+     * Creation d'une instance dont les listes de livres sont faites sur
+     * instantane, s'il n'est pas null.
+     */
+    public GestionInterrogation(Connexion cx,
+        InstantaneLivres instantane) {
 
-        this.cx = cx;
-        this.stmtLivresTitreMot = cx.getConnection().prepareStatement("select t1.idLivre, t1.titre, t1.auteur, t1.idmembre, t1.datePret + 14 "
-            + "from livre t1 "
-            + "where lower(titre) like ?");
+        this(cx,
+            instantane,
+            new SortieConsole());
+    }
+
+    /**
+     * Creation d'une instance dont les listes de livres sont faites sur
+     * instantane, s'il n'est pas null, et écrites dans sortie.
+     */
+    public GestionInterrogation(Connexion cx,
+        InstantaneLivres instantane,
+        Sortie sortie) {
 
-        this.stmtListeTousLivres = cx.getConnection().prepareStatement("select t1.idLivre, t1.titre, t1.auteur, t1.idmembre, t1.datePret "
-            + "from livre t1");
+        super(cx);
+        this.instantane = instantane;
+        this.sortie = sortie;
+    }
+
+    /**
+     * Retourne les énoncés SQL utilisés, pour le préchauffage des connexions.
+     */
+    public List<String> getEnonces() {
+
+        return Arrays.asList(SQL_LIVRES_TITRE_MOT,
+            SQL_LISTE_TOUS_LIVRES);
+    }
+
+    /**
+     * Remplace la sortie des listes (Biblio y garde l'affichage d'un groupe
+     * de transactions).
+     */
+    public void setSortie(Sortie sortie) {
+
+        this.sortie = sortie;
     }
 
     /**
@@ -52,30 +109,50 @@ public class GestionInterrogation {
      */
     public void listerLivresTitre(String mot) throws SQLException {
 
-        this.stmtLivresTitreMot.setString(1,
-            "%"
-                + mot
-                + "%");
-        ResultSet rset = this.stmtLivresTitreMot.executeQuery();
-
-        int idMembre;
-        System.out.println("idLivre titre auteur idMembre dateRetour");
-        while(rset.next()) {
-            System.out.print(rset.getInt(1)
-                + " "
-                + rset.getString(2)
-                + " "
-                + rset.getString(3));
-            idMembre = rset.getInt(4);
-            if(!rset.wasNull()) {
-                System.out.print(" "
-                    + idMembre
-                    + " "
-                    + rset.getDate(5));
-            }
-            System.out.println();
+        if(this.instantane != null) {
+            listerInstantane("GestionInterrogation.listerLivresTitre",
+                "idLivre titre auteur idMembre dateRetour",
+                mot,
+                14);
+            return;
+        }
+        long debut = System.nanoTime();
+        getConnexion().debuterLecture();
+        try {
+            PreparedStatement stmtLivresTitreMot = preparer(SQL_LIVRES_TITRE_MOT);
+            stmtLivresTitreMot.setString(1,
+                "%"
+                    + mot
+                    + "%");
+
+            this.sortie.ecrireLigne("idLivre titre auteur idMembre dateRetour");
+            StringBuilder ligne = new StringBuilder();
+            parcourir(stmtLivresTitreMot,
+                rset -> {
+                    ligne.setLength(0);
+                    ligne.append(rset.getInt(1));
+                    ligne.append(' ');
+                    ligne.append(rset.getString(2));
+                    ligne.append(' ');
+                    ligne.append(rset.getString(3));
+                    int idMembre = rset.getInt(4);
+                    if(!rset.wasNull()) {
+                        ligne.append(' ');
+                        ligne.append(idMembre);
+                        ligne.append(' ');
+                        ligne.append(rset.getDate(5));
+                    }
+                    this.sortie.ecrireLigne(ligne);
+                });
+            getConnexion().commit();
+        } catch(SQLException e) {
+            getConnexion().rollback();
+            throw e;
+        } finally {
+            getConnexion().getMetriques().enregistrer("GestionInterrogation.listerLivresTitre",
+                System.nanoTime()
+                    - debut);
         }
-        this.cx.commit();
     }
 
     /**
@@ -83,25 +160,94 @@ public class GestionInterrogation {
      */
     public void listerLivres() throws SQLException {
 
-        ResultSet rset = this.stmtListeTousLivres.executeQuery();
-
-        System.out.println("idLivre titre auteur idMembre datePret");
-        int idMembre;
-        while(rset.next()) {
-            System.out.print(rset.getInt("idLivre")
-                + " "
-                + rset.getString("titre")
-                + " "
-                + rset.getString("auteur"));
-            idMembre = rset.getInt("idMembre");
-            if(!rset.wasNull()) {
-                System.out.print(" "
-                    + idMembre
-                    + " "
-                    + rset.getDate("datePret"));
+        if(this.instantane != null) {
+            listerInstantane("GestionInterrogation.listerLivres",
+                "idLivre titre auteur idMembre datePret",
+                null,
+                0);
+            return;
+        }
+        long debut = System.nanoTime();
+        getConnexion().debuterLecture();
+        try {
+            this.sortie.ecrireLigne("idLivre titre auteur idMembre datePret");
+            StringBuilder ligne = new StringBuilder();
+            parcourir(preparer(SQL_LISTE_TOUS_LIVRES),
+                rset -> {
+                    ligne.setLength(0);
+                    ligne.append(rset.getInt("idLivre"));
+                    ligne.append(' ');
+                    ligne.append(rset.getString("titre"));
+                    ligne.append(' ');
+                    ligne.append(rset.getString("auteur"));
+                    int idMembre = rset.getInt("idMembre");
+                    if(!rset.wasNull()) {
+                        ligne.append(' ');
+                        ligne.append(idMembre);
+                        ligne.append(' ');
+                        ligne.append(rset.getDate("datePret"));
+                    }
+                    this.sortie.ecrireLigne(ligne);
+                });
+            getConnexion().commit();
+        } catch(SQLException e) {
+            getConnexion().rollback();
+            throw e;
+        } finally {
+            getConnexion().getMetriques().enregistrer("GestionInterrogation.listerLivres",
+                System.nanoTime()
+                    - debut);
+        }
+    }
+
+    /**
+     * Liste des livres de l'instantané (tous, ou ceux dont le titre contient
+     * mot), après son rafraîchissement dans une transaction de la BD
+     * principale. La date de prêt affichée est avancée de jours jours.
+     */
+    private void listerInstantane(String mesure,
+        String entete,
+        String mot,
+        int jours) throws SQLException {
+
+        long debut = System.nanoTime();
+        try {
+            try {
+                this.instantane.rafraichir();
+                getConnexion().commit();
+            } catch(SQLException e) {
+                getConnexion().rollback();
+                throw e;
+            }
+            this.sortie.ecrireLigne(entete);
+            StringBuilder ligne = new StringBuilder();
+            InstantaneLivres.Visiteur affichage = (idLivre, titre, auteur, idMembre, datePret) -> {
+                ligne.setLength(0);
+                ligne.append(idLivre);
+                ligne.append(' ');
+                ligne.append(titre);
+                ligne.append(' ');
+                ligne.append(auteur);
+                if(idMembre != 0) {
+                    ligne.append(' ');
+                    ligne.append(idMembre);
+                    ligne.append(' ');
+                    ligne.append(datePret == null
+                        ? null
+                        : datePret.plusDays(jours));
+                }
+                this.sortie.ecrireLigne(ligne);
+            };
+            if(mot == null) {
+                this.instantane.parcourir(affichage);
+            } else {
+                this.instantane.parcourirTitre(mot,
+                    affichage);
             }
-            System.out.println();
+        } finally {
+            getConnexion().getMetriques().enregistrer(mesure,
+                System.nanoTime()
+                    - debut);
         }
-        this.cx.commit();
     }
 }
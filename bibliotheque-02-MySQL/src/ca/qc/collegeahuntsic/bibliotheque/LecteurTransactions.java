@@ -0,0 +1,349 @@
+
+package ca.qc.collegeahuntsic.bibliotheque;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lecture ligne à ligne d'un fichier de transactions.
+ *
+ * <pre>
+ * La ligne courante est donnée par une tranche d'un tampon char[] réutilisé
+ * (getTampon(), getDebut(), getFin()), qui peut être passée telle quelle à
+ * AnalyseurTransaction ; getLigne() n'en fait une String qu'au besoin. Les
+ * fins de ligne sont celles de BufferedReader.readLine() (\n, \r ou \r\n)
+ * et le décodage se fait avec le jeu de caractères par défaut, comme
+ * InputStreamReader.
+ *
+ * ouvrir() choisit la lecture selon la source :
+ *   - un fichier du système de fichiers est projeté en mémoire
+ *     (FileChannel.map) par fenêtres de 64 Mo ; les fins de ligne sont
+ *     cherchées dans les octets et une ligne ASCII est copiée directement
+ *     dans le tampon, sans décodeur ;
+ *   - "-" (ou aucun fichier) : l'entrée standard ;
+ *   - sinon, une ressource du classpath (comportement d'origine).
+ * </pre>
+ */
+public abstract class LecteurTransactions implements Closeable {
+
+    /**
+     * Taille des fenêtres projetées en mémoire.
+     */
+    static final int TAILLE_FENETRE = 64 * 1024 * 1024;
+
+    char[] tampon = new char[256];
+
+    int fin;
+
+    private String ligne;
+
+    /**
+     * Ouverture de la source de transactions fichier : "-" ou null pour
+     * l'entrée standard, chemin d'un fichier, ou nom d'une ressource du
+     * classpath.
+     */
+    public static LecteurTransactions ouvrir(String fichier) throws IOException {
+        if(fichier == null
+            || "-".equals(fichier)) {
+            return new Flux(System.in);
+        }
+        Path chemin = Paths.get(fichier);
+        if(Files.isRegularFile(chemin)
+            && estCompatibleAscii(Charset.defaultCharset())) {
+            return new Projection(chemin,
+                TAILLE_FENETRE);
+        }
+        if(Files.isRegularFile(chemin)) {
+            return new Flux(Files.newInputStream(chemin));
+        }
+        InputStream ressource = Biblio.class.getResourceAsStream("/"
+            + fichier);
+        if(ressource == null) {
+            throw new FileNotFoundException("Fichier de transactions introuvable : "
+                + fichier);
+        }
+        return new Flux(ressource);
+    }
+
+    /**
+     * Passage à la ligne suivante.
+     *
+     * @return false à la fin de la source
+     */
+    public boolean suivante() throws IOException {
+        this.ligne = null;
+        return lire();
+    }
+
+    /**
+     * Tampon contenant la ligne courante, de getDebut() à getFin() - 1.
+     * Son contenu change à chaque appel de suivante().
+     */
+    public char[] getTampon() {
+        return this.tampon;
+    }
+
+    /**
+     * Début de la ligne courante dans getTampon().
+     */
+    public int getDebut() {
+        return 0;
+    }
+
+    /**
+     * Fin (exclue) de la ligne courante dans getTampon().
+     */
+    public int getFin() {
+        return this.fin;
+    }
+
+    /**
+     * Ligne courante, sans sa fin de ligne.
+     */
+    public String getLigne() {
+        if(this.ligne == null) {
+            this.ligne = new String(this.tampon,
+                0,
+                this.fin);
+        }
+        return this.ligne;
+    }
+
+    /**
+     * Vérifie si la source est l'entrée standard, dont la lecture peut
+     * attendre indéfiniment une ligne.
+     */
+    public boolean estEntreeStandard() {
+        return false;
+    }
+
+    /**
+     * Lecture de la ligne suivante dans tampon (de 0 à fin).
+     *
+     * @return false à la fin de la source
+     */
+    abstract boolean lire() throws IOException;
+
+    void reserver(int taille) {
+        if(taille > this.tampon.length) {
+            this.tampon = Arrays.copyOf(this.tampon,
+                Math.max(taille,
+                    2 * this.tampon.length));
+        }
+    }
+
+    /**
+     * Vérifie si un octet ASCII, dont \r et \n, est toujours un caractère
+     * ASCII dans le jeu de caractères : UTF-8, ou jeu d'un octet par
+     * caractère qui étend ASCII.
+     */
+    private static boolean estCompatibleAscii(Charset jeu) {
+        String ascii = "\r\n -09AZaz~";
+        return (jeu.equals(StandardCharsets.UTF_8)
+            || jeu.newEncoder().maxBytesPerChar() == 1)
+            && Arrays.equals(ascii.getBytes(jeu),
+                ascii.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Lecture par un BufferedReader (entrée standard, ressource du classpath).
+     */
+    private static final class Flux extends LecteurTransactions {
+        private final BufferedReader reader;
+
+        private final boolean entreeStandard;
+
+        private Flux(InputStream source) {
+            this.reader = new BufferedReader(new InputStreamReader(source));
+            this.entreeStandard = source == System.in;
+        }
+
+        @Override
+        public boolean estEntreeStandard() {
+            return this.entreeStandard;
+        }
+
+        @Override
+        boolean lire() throws IOException {
+            String suivante = this.reader.readLine();
+            if(suivante == null) {
+                return false;
+            }
+            reserver(suivante.length());
+            suivante.getChars(0,
+                suivante.length(),
+                this.tampon,
+                0);
+            this.fin = suivante.length();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
+
+    /**
+     * Lecture d'un fichier projeté en mémoire, par fenêtres.
+     */
+    private static final class Projection extends LecteurTransactions {
+        private final FileChannel canal;
+
+        private final long taille;
+
+        private final CharsetDecoder decodeur;
+
+        private final int tailleFenetre;
+
+        private MappedByteBuffer fenetre;
+
+        /* Position de la fenêtre dans le fichier */
+        private long debutFenetre;
+
+        /* Début de la prochaine ligne dans la fenêtre */
+        private int position;
+
+        private Projection(Path chemin,
+            int tailleFenetre) throws IOException {
+            this.tailleFenetre = tailleFenetre;
+            this.canal = FileChannel.open(chemin,
+                StandardOpenOption.READ);
+            this.taille = this.canal.size();
+            this.decodeur = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            projeter(0,
+                0);
+        }
+
+        @Override
+        boolean lire() throws IOException {
+            while(true) {
+                if(this.debutFenetre
+                    + this.position >= this.taille) {
+                    return false;
+                }
+                int limite = this.fenetre.limit();
+                boolean derniere = this.debutFenetre
+                    + limite >= this.taille;
+                int i = this.position;
+                byte octet = 0;
+                while(i < limite) {
+                    octet = this.fenetre.get(i);
+                    if(octet == '\n'
+                        || octet == '\r') {
+                        break;
+                    }
+                    i++;
+                }
+                /* Ligne coupée par la fin de la fenêtre, ou \r dont on ne voit pas la suite */
+                if(!derniere
+                    && (i == limite
+                        || (octet == '\r'
+                            && i
+                                + 1 == limite))) {
+                    projeter(this.debutFenetre
+                        + this.position,
+                        i
+                            - this.position);
+                    continue;
+                }
+                decoder(this.position,
+                    i);
+                if(i < limite) {
+                    i += octet == '\r'
+                        && i
+                            + 1 < limite
+                        && this.fenetre.get(i
+                            + 1) == '\n'
+                                ? 2
+                                : 1;
+                }
+                this.position = i;
+                return true;
+            }
+        }
+
+        /**
+         * Décodage des octets debut à fin - 1 de la fenêtre dans tampon.
+         */
+        private void decoder(int debut,
+            int fin) throws IOException {
+            int longueur = fin
+                - debut;
+            reserver(longueur);
+            for(int i = 0; i < longueur; i++) {
+                byte octet = this.fenetre.get(debut
+                    + i);
+                if(octet < 0) {
+                    decoderJeu(debut,
+                        fin);
+                    return;
+                }
+                this.tampon[i] = (char) octet;
+            }
+            this.fin = longueur;
+        }
+
+        private void decoderJeu(int debut,
+            int fin) throws IOException {
+            ByteBuffer octets = this.fenetre.duplicate();
+            octets.limit(fin);
+            octets.position(debut);
+            reserver((int) Math.ceil((fin - debut)
+                * (double) this.decodeur.maxCharsPerByte()));
+            CharBuffer caracteres = CharBuffer.wrap(this.tampon);
+            this.decodeur.reset();
+            this.decodeur.decode(octets,
+                caracteres,
+                true);
+            this.decodeur.flush(caracteres);
+            this.fin = caracteres.position();
+        }
+
+        /**
+         * Projection d'une fenêtre commençant à debut, assez grande pour
+         * dépasser la ligne de longueurVue octets qui y commence.
+         */
+        private void projeter(long debut,
+            int longueurVue) throws IOException {
+            long longueur = Math.min(this.taille
+                - debut,
+                Math.max(this.tailleFenetre,
+                    2L * longueurVue
+                        + 2));
+            if(longueur > Integer.MAX_VALUE) {
+                throw new IOException("Ligne de plus de 1 Go à la position "
+                    + debut);
+            }
+            this.fenetre = this.canal.map(FileChannel.MapMode.READ_ONLY,
+                debut,
+                longueur);
+            this.debutFenetre = debut;
+            this.position = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.canal.close();
+        }
+    }
+}
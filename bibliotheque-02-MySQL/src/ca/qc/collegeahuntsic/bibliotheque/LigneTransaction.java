@@ -0,0 +1,69 @@
+
+package ca.qc.collegeahuntsic.bibliotheque;
+
+import ca.qc.collegeahuntsic.bibliotheque.AnalyseurTransaction.Commande;
+import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
+
+/**
+ * Ligne du fichier de transactions, dont les arguments sont lus dans
+ * l'ordre.
+ *
+ * <pre>
+ * Biblio.executerTransaction() traite une ligne analysée au moment de son
+ * exécution (AnalyseurTransaction) ou d'avance, par l'étape de validation
+ * du pipeline (LigneValidee). Les deux donnent les mêmes valeurs et les
+ * mêmes erreurs, au même argument.
+ * </pre>
+ */
+public interface LigneTransaction {
+
+    /**
+     * Texte de la ligne.
+     */
+    String getLigne();
+
+    /**
+     * Vérifie si la ligne ne contient que des espaces.
+     */
+    boolean estVide();
+
+    /**
+     * Vérifie si la ligne est la commande exit.
+     */
+    boolean estFin();
+
+    /**
+     * Vérifie si la ligne est un commentaire (commence par "--").
+     */
+    boolean estCommentaire();
+
+    /**
+     * Commande désignée par le premier mot, ou null.
+     */
+    Commande getCommande();
+
+    /**
+     * Vérifie si le premier mot est une abréviation de commande.
+     */
+    boolean estAbreviation(Commande commande);
+
+    /**
+     * Lecture de l'argument suivant, de type int.
+     */
+    int lireInt() throws BiblioException;
+
+    /**
+     * Lecture de l'argument suivant, de type long.
+     */
+    long lireLong() throws BiblioException;
+
+    /**
+     * Lecture de l'argument suivant, de type chaîne.
+     */
+    String lireString() throws BiblioException;
+
+    /**
+     * Lecture de l'argument suivant, une date en format YYYY-MM-DD.
+     */
+    String lireDate() throws BiblioException;
+}
@@ -0,0 +1,159 @@
+
+package ca.qc.collegeahuntsic.bibliotheque;
+
+import ca.qc.collegeahuntsic.bibliotheque.AnalyseurTransaction.Commande;
+import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
+
+/**
+ * Ligne de transaction analysée et validée d'avance.
+ *
+ * <pre>
+ * Les arguments sont lus une fois pour toutes à la création, dans l'ordre
+ * de Commande.getArguments(), puis redonnés dans le même ordre par
+ * lireInt(), lireLong(), lireString() et lireDate(). Si un argument est
+ * invalide ou manque, la validation s'arrête : son BiblioException est levée
+ * à la lecture de cet argument, comme par l'analyseur, et la ligne est
+ * refusée sans accès à la BD. Les arguments en trop sont ignorés, comme par
+ * l'analyseur.
+ * </pre>
+ */
+public class LigneValidee implements LigneTransaction {
+
+    private final String ligne;
+
+    private final boolean vide;
+
+    private final boolean fin;
+
+    private final boolean commentaire;
+
+    private final int masque;
+
+    private final Commande commande;
+
+    /* Arguments par position : nombres (i, l) ou textes (s, d) */
+    private final long[] nombres;
+
+    private final String[] textes;
+
+    /* Nombre d'arguments valides, suivis de erreur s'il y en a une */
+    private final int nbArguments;
+
+    private final BiblioException erreur;
+
+    private int position;
+
+    /**
+     * Analyse et validation de ligne avec analyseur.
+     */
+    public LigneValidee(String ligne,
+        AnalyseurTransaction analyseur) {
+        analyseur.analyser(ligne);
+        this.ligne = ligne;
+        this.vide = analyseur.estVide();
+        this.fin = analyseur.estFin();
+        this.commentaire = analyseur.estCommentaire();
+        this.masque = analyseur.getMasque();
+        this.commande = analyseur.getCommande();
+        String types = this.commande == null
+            ? ""
+            : this.commande.getArguments();
+        this.nombres = new long[types.length()];
+        this.textes = new String[types.length()];
+        int i = 0;
+        BiblioException invalide = null;
+        try {
+            for(; i < types.length(); i++) {
+                switch(types.charAt(i)) {
+                    case 'i':
+                        this.nombres[i] = analyseur.lireInt();
+                        break;
+                    case 'l':
+                        this.nombres[i] = analyseur.lireLong();
+                        break;
+                    case 's':
+                        this.textes[i] = analyseur.lireString();
+                        break;
+                    default:
+                        this.textes[i] = analyseur.lireDate();
+                        break;
+                }
+            }
+        } catch(BiblioException e) {
+            invalide = e;
+        }
+        this.nbArguments = i;
+        this.erreur = invalide;
+    }
+
+    /**
+     * Erreur de validation de la ligne, ou null si tous ses arguments sont
+     * valides.
+     */
+    public BiblioException getErreur() {
+        return this.erreur;
+    }
+
+    @Override
+    public String getLigne() {
+        return this.ligne;
+    }
+
+    @Override
+    public boolean estVide() {
+        return this.vide;
+    }
+
+    @Override
+    public boolean estFin() {
+        return this.fin;
+    }
+
+    @Override
+    public boolean estCommentaire() {
+        return this.commentaire;
+    }
+
+    @Override
+    public Commande getCommande() {
+        return this.commande;
+    }
+
+    @Override
+    public boolean estAbreviation(Commande commandeAbregee) {
+        return (this.masque & (1 << commandeAbregee.ordinal())) != 0;
+    }
+
+    @Override
+    public int lireInt() throws BiblioException {
+        return (int) this.nombres[suivant()];
+    }
+
+    @Override
+    public long lireLong() throws BiblioException {
+        return this.nombres[suivant()];
+    }
+
+    @Override
+    public String lireString() throws BiblioException {
+        return this.textes[suivant()];
+    }
+
+    @Override
+    public String lireDate() throws BiblioException {
+        return this.textes[suivant()];
+    }
+
+    /**
+     * Position de l'argument suivant, ou l'erreur de validation quand on
+     * l'atteint.
+     */
+    private int suivant() throws BiblioException {
+        if(this.position == this.nbArguments) {
+            throw this.erreur != null
+                ? this.erreur
+                : new BiblioException("autre paramètre attendu");
+        }
+        return this.position++;
+    }
+}
@@ -0,0 +1,175 @@
+
+package ca.qc.collegeahuntsic.bibliotheque;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Lecture et validation d'un fichier de transactions en pipeline, en avance
+ * sur leur exécution.
+ *
+ * <pre>
+ * Trois étapes, reliées par des files bornées (pipeline.file lignes) :
+ *   - lecture : un thread lit les lignes du fichier ;
+ *   - validation : un thread analyse chaque ligne et lit ses arguments
+ *     (nombres, dates, nombre d'arguments) dans une LigneValidee ;
+ *   - exécution : le thread de Biblio prend les lignes validées dans
+ *     l'ordre du fichier (suivante()) et les exécute.
+ * Une étape en avance attend quand sa file est pleine. La lecture et la
+ * validation des lignes suivantes se font ainsi pendant les accès à la BD
+ * de la transaction en cours, et une ligne mal formée est refusée sans
+ * accès à la BD.
+ *
+ * La validation s'arrête à la commande exit ; les lignes lues au-delà sont
+ * ignorées. Une erreur (exception ou Error) de la lecture ou de la
+ * validation termine son étape ; elle est relancée par suivante() après
+ * les lignes qui la précèdent. close() arrête les étapes en cours. La lecture
+ * ne s'interrompt qu'entre deux lignes : le pipeline n'est pas fait pour
+ * l'entrée standard.
+ * </pre>
+ */
+public class PipelineTransactions implements Closeable {
+
+    /* Marques de fin de fichier dans les files (comparées par identité) */
+    private static final String FIN_FICHIER = new String();
+
+    private static final LigneValidee FIN_VALIDATION = new LigneValidee("",
+        new AnalyseurTransaction());
+
+    private final LecteurTransactions lecteur;
+
+    private final BlockingQueue<String> lignes;
+
+    private final BlockingQueue<LigneValidee> validees;
+
+    private final Thread lecture;
+
+    private final Thread validation;
+
+    private volatile Throwable erreurLecture;
+
+    private volatile Throwable erreurValidation;
+
+    /**
+     * Démarrage de la lecture et de la validation des lignes de lecteur,
+     * avec des files de tailleFile lignes.
+     */
+    public PipelineTransactions(LecteurTransactions lecteur,
+        int tailleFile) {
+        this.lecteur = lecteur;
+        this.lignes = new ArrayBlockingQueue<>(Math.max(1,
+            tailleFile));
+        this.validees = new ArrayBlockingQueue<>(Math.max(1,
+            tailleFile));
+        this.lecture = new Thread(this::lire,
+            "pipeline-lecture");
+        this.validation = new Thread(this::valider,
+            "pipeline-validation");
+        this.lecture.setDaemon(true);
+        this.validation.setDaemon(true);
+        this.lecture.start();
+        this.validation.start();
+    }
+
+    /**
+     * Ligne validée suivante, dans l'ordre du fichier.
+     *
+     * @return null à la fin du fichier
+     */
+    public LigneValidee suivante() throws IOException,
+        InterruptedException {
+        LigneValidee ligne = this.validees.take();
+        if(ligne != FIN_VALIDATION) {
+            return ligne;
+        }
+        /* la ligne refusée par la validation précède l'erreur de lecture */
+        Throwable erreur = this.erreurValidation != null
+            ? this.erreurValidation
+            : this.erreurLecture;
+        if(erreur instanceof IOException) {
+            throw (IOException) erreur;
+        } else if(erreur instanceof RuntimeException) {
+            throw (RuntimeException) erreur;
+        } else if(erreur instanceof Error) {
+            throw (Error) erreur;
+        } else if(erreur != null) {
+            throw new IOException(erreur);
+        }
+        return null;
+    }
+
+    /**
+     * Arrêt des étapes de lecture et de validation. On attend la fin de la
+     * lecture en cours, pour que le lecteur puisse ensuite être fermé.
+     */
+    @Override
+    public void close() {
+        this.lecture.interrupt();
+        this.validation.interrupt();
+        boolean interrompu = false;
+        while(this.lecture.isAlive()) {
+            try {
+                this.lecture.join();
+            } catch(InterruptedException e) {
+                interrompu = true;
+            }
+        }
+        if(interrompu) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Étape de lecture.
+     */
+    private void lire() {
+        try {
+            try {
+                while(this.lecteur.suivante()) {
+                    this.lignes.put(this.lecteur.getLigne());
+                }
+            } catch(InterruptedException e) {
+                // arrêt du pipeline
+                return;
+            } catch(Throwable e) {
+                this.erreurLecture = e;
+            }
+            this.lignes.put(FIN_FICHIER);
+        } catch(InterruptedException e) {
+            // arrêt du pipeline
+        }
+    }
+
+    /**
+     * Étape de validation.
+     */
+    private void valider() {
+        AnalyseurTransaction analyseur = new AnalyseurTransaction();
+        try {
+            try {
+                while(true) {
+                    String ligne = this.lignes.take();
+                    if(ligne == FIN_FICHIER) {
+                        break;
+                    }
+                    LigneValidee validee = new LigneValidee(ligne,
+                        analyseur);
+                    this.validees.put(validee);
+                    if(validee.estFin()) {
+                        return;
+                    }
+                }
+            } catch(InterruptedException e) {
+                // arrêt du pipeline
+                return;
+            } catch(Throwable e) {
+                this.erreurValidation = e;
+            }
+            this.validees.put(FIN_VALIDATION);
+        } catch(InterruptedException e) {
+            // arrêt du pipeline
+        }
+    }
+}
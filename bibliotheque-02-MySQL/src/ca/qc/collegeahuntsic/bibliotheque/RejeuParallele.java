@@ -0,0 +1,516 @@
+
+package ca.qc.collegeahuntsic.bibliotheque;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import ca.qc.collegeahuntsic.bibliotheque.AnalyseurTransaction.Commande;
+import ca.qc.collegeahuntsic.bibliotheque.dto.LivreDTO;
+import ca.qc.collegeahuntsic.bibliotheque.dto.ReservationDTO;
+import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
+import ca.qc.collegeahuntsic.bibliotheque.sortie.Sortie;
+import ca.qc.collegeahuntsic.bibliotheque.util.BibliothequeCreateur;
+import ca.qc.collegeahuntsic.bibliotheque.util.TableIdsParId;
+import ca.qc.collegeahuntsic.bibliotheque.util.TableParId;
+
+/**
+ * Rejeu en parallèle d'un fichier de transactions, avec le même résultat
+ * (BD et affichage) que le traitement séquentiel de Biblio.
+ *
+ * <pre>
+ * Les lignes sont lues par fenêtres (rejeu.fenetre lignes). Chaque
+ * transaction de la fenêtre est rattachée aux livres, membres et
+ * réservations qu'elle peut lire ou modifier ; elle attend la fin de la
+ * transaction précédente sur chacun d'eux, et les transactions
+ * indépendantes sont exécutées en même temps par rejeu.fils threads.
+ *
+ * Certaines transactions touchent des tuples qui ne sont pas sur leur
+ * ligne : retourner met à jour l'emprunteur du livre, prendreRes et
+ * annulerRes le livre et le membre de la réservation. Ces tuples sont lus
+ * dans la BD au début de la fenêtre, puis suivis d'une ligne à l'autre :
+ * un livre dépend de tous les membres qui ont pu l'emprunter (preter,
+ * prendreRes) et une réservation de tous les livres et membres qui ont pu
+ * lui être associés (reserver). Un surplus de dépendances ne fait que
+ * retarder une transaction.
+ *
+ * listerLivres et listerLivresTitre lisent tous les livres : elles
+ * terminent la fenêtre et sont exécutées seules. aide, les commentaires et
+ * les lignes mal formées ne touchent pas la BD et sont traités au moment
+ * de leur affichage.
+ *
+ * L'affichage de chaque transaction est conservé, puis écrit dans l'ordre
+ * du fichier (dans la Sortie de gestionBiblio), précédé de l'écho de sa
+ * ligne sauf en mode silencieux. Si une transaction lève une
+ * exception autre que BiblioException, les transactions suivantes qui
+ * n'ont pas commencé sont abandonnées et l'exception est relancée après
+ * l'affichage des précédentes ; des transactions suivantes indépendantes
+ * peuvent toutefois avoir déjà été exécutées.
+ * </pre>
+ */
+public class RejeuParallele {
+
+    /**
+     * Ligne de la fenêtre et, si elle touche la BD, sa transaction.
+     */
+    private static final class Tache {
+        private final String ligne;
+
+        private final int numero;
+
+        /* Transaction de la BD (graphe) ou ligne traitée à l'affichage */
+        private boolean enParallele;
+
+        private final StringBuilder sortie = new StringBuilder();
+
+        private final AtomicInteger nbPrecedentes = new AtomicInteger();
+
+        private final List<Tache> suivantes = new ArrayList<>();
+
+        private final CountDownLatch fin = new CountDownLatch(1);
+
+        /* Numéro de la dernière tâche ajoutée à suivantes */
+        private int marque = -1;
+
+        private volatile Throwable erreur;
+
+        private Tache(String ligne,
+            int numero) {
+            this.ligne = ligne;
+            this.numero = numero;
+        }
+    }
+
+    /**
+     * Sortie de Biblio pendant le rejeu : ce qu'écrit un thread qui exécute
+     * une tâche va dans la sortie de la tâche, le reste à la console.
+     */
+    private static final class SortieParFil implements Sortie {
+        private static final String FIN_LIGNE = System.lineSeparator();
+
+        private final Sortie console;
+
+        private final ThreadLocal<StringBuilder> captures = new ThreadLocal<>();
+
+        private SortieParFil(Sortie console) {
+            this.console = console;
+        }
+
+        @Override
+        public void ecrire(CharSequence texte) {
+            StringBuilder capture = this.captures.get();
+            if(capture == null) {
+                this.console.ecrire(texte);
+            } else {
+                capture.append(texte);
+            }
+        }
+
+        @Override
+        public void ecrire(char[] tampon,
+            int debut,
+            int fin) {
+            StringBuilder capture = this.captures.get();
+            if(capture == null) {
+                this.console.ecrire(tampon,
+                    debut,
+                    fin);
+            } else {
+                capture.append(tampon,
+                    debut,
+                    fin
+                        - debut);
+            }
+        }
+
+        @Override
+        public void ecrireLigne(CharSequence texte) {
+            StringBuilder capture = this.captures.get();
+            if(capture == null) {
+                this.console.ecrireLigne(texte);
+            } else {
+                capture.append(texte);
+                capture.append(FIN_LIGNE);
+            }
+        }
+
+        @Override
+        public void vider() throws IOException {
+            if(this.captures.get() == null) {
+                this.console.vider();
+            }
+        }
+
+        @Override
+        public void fermer() throws IOException {
+            vider();
+        }
+    }
+
+    private static final ThreadLocal<AnalyseurTransaction> ANALYSEURS = ThreadLocal.withInitial(AnalyseurTransaction::new);
+
+    private final BibliothequeCreateur gestionBiblio;
+
+    private final int nbFils;
+
+    private final int tailleFenetre;
+
+    private final AnalyseurTransaction analyseur = new AnalyseurTransaction();
+
+    private ExecutorService fils;
+
+    private SortieParFil aiguillage;
+
+    private volatile boolean arret;
+
+    /**
+     * Creation d'un rejeu sur les gestionnaires de gestionBiblio, par
+     * nbFils threads et par fenêtres de tailleFenetre lignes.
+     */
+    public RejeuParallele(BibliothequeCreateur gestionBiblio,
+        int nbFils,
+        int tailleFenetre) {
+        this.gestionBiblio = gestionBiblio;
+        this.nbFils = Math.max(1,
+            nbFils);
+        this.tailleFenetre = Math.max(1,
+            tailleFenetre);
+    }
+
+    /**
+     * Rejeu des transactions de lecteur, jusqu'à la fin du fichier ou la
+     * commande exit.
+     *
+     * @return le nombre de transactions traitées (sans les commentaires)
+     */
+    public long rejouer(LecteurTransactions lecteur) throws Exception {
+        Sortie console = this.gestionBiblio.sortie;
+        this.aiguillage = new SortieParFil(console);
+        this.fils = Executors.newFixedThreadPool(this.nbFils);
+        this.arret = false;
+        Biblio.sortie = this.aiguillage;
+        try {
+            long nbTransactions = 0;
+            boolean fin = false;
+            while(!fin) {
+                List<Tache> fenetre = new ArrayList<>();
+                boolean barriere = false;
+                while(!fin
+                    && !barriere
+                    && fenetre.size() < this.tailleFenetre) {
+                    if(!lecteur.suivante()) {
+                        fin = true;
+                        break;
+                    }
+                    fenetre.add(new Tache(lecteur.getLigne(),
+                        fenetre.size()));
+                    this.analyseur.analyser(lecteur.getTampon(),
+                        lecteur.getDebut(),
+                        lecteur.getFin());
+                    if(this.analyseur.estFin()) {
+                        fin = true;
+                    } else if(!this.analyseur.estVide()) {
+                        if(!this.analyseur.estCommentaire()) {
+                            nbTransactions++;
+                        }
+                        Commande commande = this.analyseur.getCommande();
+                        barriere = commande == Commande.LISTER_LIVRES
+                            || commande == Commande.LISTER_LIVRES_TITRE;
+                    }
+                }
+                traiterFenetre(fenetre,
+                    console);
+            }
+            return nbTransactions;
+        } finally {
+            Biblio.sortie = console;
+            this.fils.shutdownNow();
+        }
+    }
+
+    /**
+     * Exécution des transactions de la fenêtre selon leurs dépendances, puis
+     * affichage dans l'ordre. La dernière ligne, si c'est une liste, est
+     * exécutée après toutes les autres.
+     */
+    private void traiterFenetre(List<Tache> fenetre,
+        Sortie console) throws Exception {
+        List<Tache> premieres = construireGraphe(fenetre);
+        for(Tache tache : premieres) {
+            soumettre(tache);
+        }
+        boolean echo = !this.gestionBiblio.configuration.isSortieSilencieuse();
+        for(Tache tache : fenetre) {
+            if(echo) {
+                console.ecrireLigne("> "
+                    + tache.ligne);
+            }
+            if(tache.enParallele) {
+                tache.fin.await();
+                console.ecrire(tache.sortie);
+                if(tache.erreur instanceof Exception) {
+                    throw (Exception) tache.erreur;
+                } else if(tache.erreur != null) {
+                    throw (Error) tache.erreur;
+                }
+            } else {
+                this.analyseur.analyser(tache.ligne);
+                if(!this.analyseur.estVide()
+                    && !this.analyseur.estFin()) {
+                    Biblio.executerTransaction(this.analyseur);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rattachement de chaque transaction de la fenêtre à celles qui la
+     * précèdent sur ses livres, ses membres et ses réservations.
+     *
+     * @return les transactions qui ne dépendent d'aucune autre
+     */
+    private List<Tache> construireGraphe(List<Tache> fenetre) throws SQLException {
+        TableIdsParId emprunteurs = new TableIdsParId();
+        TableIdsParId livresReservation = new TableIdsParId();
+        TableIdsParId membresReservation = new TableIdsParId();
+        lireAssociations(fenetre,
+            emprunteurs,
+            livresReservation,
+            membresReservation);
+
+        TableParId<Tache> derniersLivres = new TableParId<>();
+        TableParId<Tache> derniersMembres = new TableParId<>();
+        TableParId<Tache> derniersReservations = new TableParId<>();
+        List<Tache> premieres = new ArrayList<>();
+        for(Tache tache : fenetre) {
+            this.analyseur.analyser(tache.ligne);
+            Commande commande = this.analyseur.getCommande();
+            if(commande == null
+                || this.analyseur.estVide()
+                || this.analyseur.estFin()) {
+                continue;
+            }
+            try {
+                switch(commande) {
+                    case ACQUERIR:
+                    case VENDRE:
+                    case RENOUVELER:
+                        dependre(derniersLivres,
+                            this.analyseur.lireInt(),
+                            tache);
+                        break;
+                    case PRETER: {
+                        int idLivre = this.analyseur.lireInt();
+                        int idMembre = this.analyseur.lireInt();
+                        dependre(derniersLivres,
+                            idLivre,
+                            tache);
+                        dependre(derniersMembres,
+                            idMembre,
+                            tache);
+                        ajouterUnique(emprunteurs,
+                            idLivre,
+                            idMembre);
+                        break;
+                    }
+                    case RETOURNER: {
+                        int idLivre = this.analyseur.lireInt();
+                        dependre(derniersLivres,
+                            idLivre,
+                            tache);
+                        for(int idMembre : emprunteurs.lire(idLivre)) {
+                            dependre(derniersMembres,
+                                idMembre,
+                                tache);
+                        }
+                        break;
+                    }
+                    case INSCRIRE:
+                    case DESINSCRIRE:
+                        dependre(derniersMembres,
+                            this.analyseur.lireInt(),
+                            tache);
+                        break;
+                    case RESERVER: {
+                        int idReservation = this.analyseur.lireInt();
+                        int idLivre = this.analyseur.lireInt();
+                        int idMembre = this.analyseur.lireInt();
+                        dependre(derniersReservations,
+                            idReservation,
+                            tache);
+                        dependre(derniersLivres,
+                            idLivre,
+                            tache);
+                        dependre(derniersMembres,
+                            idMembre,
+                            tache);
+                        ajouterUnique(livresReservation,
+                            idReservation,
+                            idLivre);
+                        ajouterUnique(membresReservation,
+                            idReservation,
+                            idMembre);
+                        break;
+                    }
+                    case PRENDRE_RES:
+                    case ANNULER_RES: {
+                        int idReservation = this.analyseur.lireInt();
+                        int[] livres = livresReservation.lire(idReservation);
+                        int[] membres = membresReservation.lire(idReservation);
+                        dependre(derniersReservations,
+                            idReservation,
+                            tache);
+                        for(int idLivre : livres) {
+                            dependre(derniersLivres,
+                                idLivre,
+                                tache);
+                            if(commande == Commande.PRENDRE_RES) {
+                                for(int idMembre : membres) {
+                                    ajouterUnique(emprunteurs,
+                                        idLivre,
+                                        idMembre);
+                                }
+                            }
+                        }
+                        for(int idMembre : membres) {
+                            dependre(derniersMembres,
+                                idMembre,
+                                tache);
+                        }
+                        break;
+                    }
+                    default:
+                        /* aide, commentaire, liste : traités à l'affichage */
+                        continue;
+                }
+            } catch(BiblioException e) {
+                /* Ligne mal formée : l'erreur sera affichée sans accès à la BD */
+                continue;
+            }
+            tache.enParallele = true;
+            if(tache.nbPrecedentes.get() == 0) {
+                premieres.add(tache);
+            }
+        }
+        return premieres;
+    }
+
+    /**
+     * Lecture dans la BD des emprunteurs des livres retournés et des livres
+     * et membres des réservations prises ou annulées dans la fenêtre.
+     */
+    private void lireAssociations(List<Tache> fenetre,
+        TableIdsParId emprunteurs,
+        TableIdsParId livresReservation,
+        TableIdsParId membresReservation) throws SQLException {
+        int[] idsLivres = new int[fenetre.size()];
+        int nbLivres = 0;
+        int[] idsReservations = new int[fenetre.size()];
+        int nbReservations = 0;
+        for(Tache tache : fenetre) {
+            this.analyseur.analyser(tache.ligne);
+            Commande commande = this.analyseur.getCommande();
+            try {
+                if(commande == Commande.RETOURNER) {
+                    idsLivres[nbLivres++] = this.analyseur.lireInt();
+                } else if(commande == Commande.PRENDRE_RES
+                    || commande == Commande.ANNULER_RES) {
+                    idsReservations[nbReservations++] = this.analyseur.lireInt();
+                }
+            } catch(BiblioException e) {
+                continue;
+            }
+        }
+        if(nbLivres == 0
+            && nbReservations == 0) {
+            return;
+        }
+        try {
+            TableParId<LivreDTO> livres = this.gestionBiblio.livre.getLivres(Arrays.copyOf(idsLivres,
+                nbLivres));
+            TableParId<ReservationDTO> reservations = this.gestionBiblio.reservation.getReservations(Arrays.copyOf(idsReservations,
+                nbReservations));
+            this.gestionBiblio.cx.commit();
+            livres.parcourir((idLivre, tupleLivre) -> {
+                if(tupleLivre.idMembre != 0) {
+                    emprunteurs.ajouter(idLivre,
+                        tupleLivre.idMembre);
+                }
+            });
+            reservations.parcourir((idReservation, tupleReservation) -> {
+                livresReservation.ajouter(idReservation,
+                    tupleReservation.idLivre);
+                membresReservation.ajouter(idReservation,
+                    tupleReservation.idMembre);
+            });
+        } catch(SQLException e) {
+            this.gestionBiblio.cx.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * tache suit la dernière transaction sur cle, et devient la dernière.
+     */
+    private static void dependre(TableParId<Tache> derniers,
+        int cle,
+        Tache tache) {
+        Tache precedente = derniers.mettre(cle,
+            tache);
+        if(precedente != null
+            && precedente != tache
+            && precedente.marque != tache.numero) {
+            precedente.marque = tache.numero;
+            precedente.suivantes.add(tache);
+            tache.nbPrecedentes.incrementAndGet();
+        }
+    }
+
+    private static void ajouterUnique(TableIdsParId table,
+        int cle,
+        int valeur) {
+        if(!table.contient(cle,
+            valeur)) {
+            table.ajouter(cle,
+                valeur);
+        }
+    }
+
+    private void soumettre(Tache tache) {
+        this.fils.execute(() -> executer(tache));
+    }
+
+    /**
+     * Exécution de tache dans un thread du rejeu, puis soumission des
+     * transactions qui n'attendaient plus qu'elle.
+     */
+    private void executer(Tache tache) {
+        try {
+            if(!this.arret) {
+                AnalyseurTransaction analyseurFil = ANALYSEURS.get();
+                analyseurFil.analyser(tache.ligne);
+                this.aiguillage.captures.set(tache.sortie);
+                try {
+                    Biblio.executerTransaction(analyseurFil);
+                } finally {
+                    this.aiguillage.captures.remove();
+                }
+            }
+        } catch(Throwable e) {
+            tache.erreur = e;
+            this.arret = true;
+        } finally {
+            tache.fin.countDown();
+            for(Tache suivante : tache.suivantes) {
+                if(suivante.nbPrecedentes.decrementAndGet() == 0) {
+                    soumettre(suivante);
+                }
+            }
+        }
+    }
+}
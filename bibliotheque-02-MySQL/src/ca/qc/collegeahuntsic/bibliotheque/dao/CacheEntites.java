@@ -0,0 +1,254 @@
+
+package ca.qc.collegeahuntsic.bibliotheque.dao;
+
+import ca.qc.collegeahuntsic.bibliotheque.metrique.RegistreMetriques;
+import ca.qc.collegeahuntsic.bibliotheque.util.TableParId;
+
+/**
+ * Cache LRU des tuples d'une table, indexés par leur clé.
+ *
+ * <pre>
+ * Le cache est borné à taille tuples ; au-delà, le tuple le moins récemment
+ * utilisé est retiré. Un tuple est aussi retiré duree ms après sa mise en
+ * cache (0 : sans échéance). Une taille de 0 désactive le cache. Les tuples
+ * sont indexés par une TableParId (sans Integer par consultation) et
+ * chaînés du plus récemment utilisé au moins récemment utilisé.
+ *
+ * Le cache est tenu à jour par les DAO (voir DAO.lireAvecCache()) :
+ *   - un tuple lu n'est mis en cache qu'au commit de la transaction qui l'a
+ *     lu, et seulement si aucun tuple n'a été invalidé entre-temps (numéro
+ *     de génération inchangé) ;
+ *   - un tuple modifié est invalidé immédiatement, puis de nouveau au commit
+ *     de la transaction qui l'a modifié.
+ * Les modifications faites par d'autres programmes ne sont pas vues : le
+ * cache ne convient qu'à une BD modifiée par ce seul programme.
+ *
+ * Les tuples sont copiés à l'entrée et à la sortie du cache, pour qu'un
+ * appelant ne puisse modifier le tuple partagé. Les succès, échecs et
+ * retraits sont comptés dans le registre de mesures, sous cache.nom.succes,
+ * cache.nom.echecs et cache.nom.evictions.
+ * </pre>
+ */
+public class CacheEntites<V> {
+
+    /**
+     * Copie d'un tuple.
+     */
+    public interface Copieur<V> {
+        V copier(V tuple);
+    }
+
+    /**
+     * Tuple en cache, son échéance et ses voisins dans l'ordre d'utilisation.
+     */
+    private static final class Entree<V> {
+        private final int id;
+
+        private final V tuple;
+
+        private final long echeance;
+
+        private Entree<V> precedente;
+
+        private Entree<V> suivante;
+
+        private Entree(int id,
+            V tuple,
+            long echeance) {
+            this.id = id;
+            this.tuple = tuple;
+            this.echeance = echeance;
+        }
+    }
+
+    private final int taille;
+
+    private final long duree;
+
+    private final Copieur<V> copieur;
+
+    private final RegistreMetriques metriques;
+
+    private final String nomSucces;
+
+    private final String nomEchecs;
+
+    private final String nomEvictions;
+
+    private final TableParId<Entree<V>> entrees;
+
+    /**
+     * Entrée la plus récemment utilisée, début de la chaîne.
+     */
+    private Entree<V> premiere;
+
+    /**
+     * Entrée la moins récemment utilisée, retirée la première.
+     */
+    private Entree<V> derniere;
+
+    private long generation;
+
+    /**
+     * Creation d'un cache d'au plus taille tuples de la table nom, conservés
+     * au plus duree ms.
+     */
+    public CacheEntites(String nom,
+        int taille,
+        long duree,
+        Copieur<V> copieur,
+        RegistreMetriques metriques) {
+        this.taille = taille;
+        this.duree = duree;
+        this.copieur = copieur;
+        this.metriques = metriques;
+        this.nomSucces = "cache."
+            + nom
+            + ".succes";
+        this.nomEchecs = "cache."
+            + nom
+            + ".echecs";
+        this.nomEvictions = "cache."
+            + nom
+            + ".evictions";
+        this.entrees = new TableParId<>();
+    }
+
+    /**
+     * Vérifie si le cache est actif (taille positive).
+     */
+    public boolean isActif() {
+        return this.taille > 0;
+    }
+
+    /**
+     * Retourne une copie du tuple id, ou null s'il n'est pas en cache.
+     */
+    public synchronized V lire(int id) {
+        if(!isActif()) {
+            return null;
+        }
+        Entree<V> entree = this.entrees.lire(id);
+        if(entree != null
+            && System.currentTimeMillis() >= entree.echeance) {
+            retirer(entree);
+            this.metriques.incrementer(this.nomEvictions);
+            entree = null;
+        }
+        if(entree == null) {
+            this.metriques.incrementer(this.nomEchecs);
+            return null;
+        }
+        detacher(entree);
+        attacher(entree);
+        this.metriques.incrementer(this.nomSucces);
+        return this.copieur.copier(entree.tuple);
+    }
+
+    /**
+     * Numéro de génération courant, à obtenir avant de lire un tuple dans la
+     * BD pour le mettre en cache.
+     */
+    public synchronized long getGeneration() {
+        return this.generation;
+    }
+
+    /**
+     * Copie d'un tuple, à mettre en cache plus tard.
+     */
+    public V copier(V tuple) {
+        return this.copieur.copier(tuple);
+    }
+
+    /**
+     * Mise en cache de tuple (une copie, voir copier()), lu dans la BD à la
+     * génération generationLecture. Le tuple est ignoré si une invalidation a
+     * eu lieu depuis sa lecture.
+     */
+    public synchronized void mettre(int id,
+        V tuple,
+        long generationLecture) {
+        if(!isActif()
+            || generationLecture != this.generation) {
+            return;
+        }
+        Entree<V> entree = new Entree<>(id,
+            tuple,
+            this.duree > 0
+                ? System.currentTimeMillis()
+                    + this.duree
+                : Long.MAX_VALUE);
+        Entree<V> ancienne = this.entrees.mettre(id,
+            entree);
+        if(ancienne != null) {
+            detacher(ancienne);
+        }
+        attacher(entree);
+        if(this.entrees.getTaille() > this.taille) {
+            retirer(this.derniere);
+            this.metriques.incrementer(this.nomEvictions);
+        }
+    }
+
+    /**
+     * Retrait du tuple id, modifié ou supprimé.
+     */
+    public synchronized void invalider(int id) {
+        this.generation++;
+        Entree<V> entree = this.entrees.lire(id);
+        if(entree != null) {
+            retirer(entree);
+        }
+    }
+
+    /**
+     * Retrait de tous les tuples.
+     */
+    public synchronized void vider() {
+        this.generation++;
+        this.entrees.vider();
+        this.premiere = null;
+        this.derniere = null;
+    }
+
+    /**
+     * Nombre de tuples en cache.
+     */
+    public synchronized int getNbTuples() {
+        return this.entrees.getTaille();
+    }
+
+    private void retirer(Entree<V> entree) {
+        this.entrees.retirer(entree.id);
+        detacher(entree);
+    }
+
+    /**
+     * Ajout de entree au début de la chaîne (la plus récemment utilisée).
+     */
+    private void attacher(Entree<V> entree) {
+        entree.precedente = null;
+        entree.suivante = this.premiere;
+        if(this.premiere != null) {
+            this.premiere.precedente = entree;
+        } else {
+            this.derniere = entree;
+        }
+        this.premiere = entree;
+    }
+
+    private void detacher(Entree<V> entree) {
+        if(entree.precedente != null) {
+            entree.precedente.suivante = entree.suivante;
+        } else {
+            this.premiere = entree.suivante;
+        }
+        if(entree.suivante != null) {
+            entree.suivante.precedente = entree.precedente;
+        } else {
+            this.derniere = entree.precedente;
+        }
+        entree.precedente = null;
+        entree.suivante = null;
+    }
+}
@@ -5,9 +5,44 @@
 package ca.qc.collegeahuntsic.bibliotheque.dao;
 
 import java.io.Serializable;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import ca.qc.collegeahuntsic.bibliotheque.db.ConfigurationConnexion;
+import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
+import ca.qc.collegeahuntsic.bibliotheque.util.TableParId;
 
 /**
- * TODO Auto-generated class javadoc
+ * Classe de base des DAO.
+ *
+ * <pre>
+ * Les requêtes passent par les méthodes d'exécution de cette classe, qui
+ * ferment toujours le ResultSet, même en cas d'erreur :
+ *   - existe() et lireUn() limitent le résultat à une ligne (setMaxRows(1))
+ *   - parcourir() lit les listes par lots de fetchSizeListes lignes, ou en
+ *     continu (une ligne à la fois, sans tampon) avec le pilote MySQL si
+ *     lectureEnContinu est configuré (voir ConfigurationConnexion)
+ *   - parcourirIds() lit les tuples d'un ensemble d'identifiants par listes
+ *     in (...) d'au plus 1000 identifiants (limite d'Oracle) ; chaque liste
+ *     est complétée à 16, 128 ou 1000 identifiants, pour que peu d'énoncés
+ *     différents soient précompilés
+ *
+ * Les mises à jour passent par executerMaj() et executerLot(), les appels
+ * de procédure par executerAppel(). Chaque méthode d'exécution enregistre
+ * la durée de l'exécution de l'énoncé (voir Connexion.mesurer()).
+ *
+ * Les ajouts passent par insererSiNouveau(), sans vérifier d'abord
+ * l'existence du tuple : la clé primaire (ou d'unicité) refuse un doublon,
+ * et la violation est retournée comme un refus (false) plutôt que levée.
+ * Cela économise une requête par ajout et reste juste quand deux
+ * transactions ajoutent le même tuple en même temps.
+ *
+ * Les DAO qui gardent leurs tuples dans un CacheEntites passent par
+ * lireAvecCache(), lireEtCacher() et invalider(), qui diffèrent la mise à
+ * jour du cache jusqu'au commit de la transaction.
+ * </pre>
  *
  * @author Franz Nkezimana
  */
@@ -18,4 +53,399 @@ public class DAO implements Serializable {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Construction d'un objet à partir de la ligne courante d'un ResultSet.
+     */
+    public interface Lecteur<T> {
+        T lire(ResultSet rset) throws SQLException;
+    }
+
+    /**
+     * Traitement de la ligne courante d'un ResultSet.
+     */
+    public interface Traitement {
+        void traiter(ResultSet rset) throws SQLException;
+    }
+
+    /**
+     * Lecture d'un tuple dans la BD.
+     */
+    public interface Recherche<T> {
+        T chercher() throws SQLException;
+    }
+
+    private static final int[] TAILLES_LISTE_IDS = {16, 128, 1000};
+
+    private final Connexion cx;
+
+    /**
+     * Creation d'un DAO sur la connexion cx.
+     */
+    protected DAO(Connexion cx) {
+        this.cx = cx;
+    }
+
+    /**
+     * Retourner la connexion associée.
+     */
+    public Connexion getConnexion() {
+        return this.cx;
+    }
+
+    /**
+     * Retourne l'énoncé précompilé pour sql dans la transaction du thread
+     * courant.
+     */
+    protected PreparedStatement preparer(String sql) throws SQLException {
+        return this.cx.preparer(sql);
+    }
+
+    /**
+     * Retourne l'appel de procédure stockée précompilé pour sql dans la
+     * transaction du thread courant.
+     */
+    protected CallableStatement preparerAppel(String sql) throws SQLException {
+        return this.cx.preparerAppel(sql);
+    }
+
+    /**
+     * Vérifie si la requête stmt retourne au moins une ligne.
+     */
+    protected boolean existe(PreparedStatement stmt) throws SQLException {
+        stmt.setMaxRows(1);
+        try(
+            ResultSet rset = executerRequete(stmt)) {
+            return rset.next();
+        }
+    }
+
+    /**
+     * Exécution de l'ajout stmtInsert ; retourne false si le tuple viole une
+     * clé primaire ou d'unicité (voir estDoublon()).
+     */
+    protected boolean insererSiNouveau(PreparedStatement stmtInsert) throws SQLException {
+        try {
+            executerMaj(stmtInsert);
+            return true;
+        } catch(SQLException e) {
+            if(estDoublon(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Vérifie si e (ou une exception chaînée) est une violation de clé
+     * primaire ou d'unicité : SQLState 23505 (H2), MySQL 1062, Oracle
+     * ORA-00001. Les autres violations de contrainte (clé étrangère,
+     * vérification) ne sont pas des doublons.
+     */
+    protected static boolean estDoublon(SQLException e) {
+        for(SQLException sqle = e; sqle != null; sqle = sqle.getNextException()) {
+            if("23505".equals(sqle.getSQLState())) {
+                return true;
+            }
+            if(sqle.getMessage() != null
+                && sqle.getMessage().startsWith("ORA-")) {
+                if(sqle.getErrorCode() == 1) {
+                    return true;
+                }
+            } else if(sqle.getErrorCode() == 1062) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lecture de la première ligne retournée par stmt, ou null s'il n'y en a
+     * pas.
+     */
+    protected <T> T lireUn(PreparedStatement stmt,
+        Lecteur<T> lecteur) throws SQLException {
+        stmt.setMaxRows(1);
+        try(
+            ResultSet rset = executerRequete(stmt)) {
+            return rset.next()
+                ? lecteur.lire(rset)
+                : null;
+        }
+    }
+
+    /**
+     * Traitement de chaque ligne retournée par stmt. Les lignes sont lues par
+     * lots (ou en continu), de sorte que la mémoire utilisée ne dépend pas du
+     * nombre de lignes.
+     */
+    protected void parcourir(PreparedStatement stmt,
+        Traitement traitement) throws SQLException {
+        stmt.setMaxRows(0);
+        stmt.setFetchSize(tailleLotListes());
+        try(
+            ResultSet rset = executerRequete(stmt)) {
+            while(rset.next()) {
+                traitement.traiter(rset);
+            }
+        }
+    }
+
+    private ResultSet executerRequete(PreparedStatement stmt) throws SQLException {
+        long debut = System.nanoTime();
+        try {
+            return stmt.executeQuery();
+        } finally {
+            this.cx.mesurer(stmt,
+                debut);
+        }
+    }
+
+    /**
+     * Exécution de la mise à jour stmt.
+     *
+     * @return le nombre de lignes modifiées
+     */
+    protected int executerMaj(PreparedStatement stmt) throws SQLException {
+        long debut = System.nanoTime();
+        try {
+            return stmt.executeUpdate();
+        } finally {
+            this.cx.mesurer(stmt,
+                debut);
+        }
+    }
+
+    /**
+     * Exécution du lot de mises à jour accumulé dans stmt (addBatch()).
+     *
+     * @return le nombre de lignes modifiées par chaque élément du lot
+     */
+    protected int[] executerLot(PreparedStatement stmt) throws SQLException {
+        long debut = System.nanoTime();
+        try {
+            return stmt.executeBatch();
+        } finally {
+            this.cx.mesurer(stmt,
+                debut);
+        }
+    }
+
+    /**
+     * Exécution de l'appel de procédure stockée stmtAppel.
+     */
+    protected void executerAppel(CallableStatement stmtAppel) throws SQLException {
+        long debut = System.nanoTime();
+        try {
+            stmtAppel.execute();
+        } finally {
+            this.cx.mesurer(stmtAppel,
+                debut);
+        }
+    }
+
+    /**
+     * Traitement des lignes retournées par sqlDebut ?, ?, ... sqlFin pour
+     * les identifiants ids (les doublons sont ignorés), en une requête par
+     * liste d'au plus 1000 identifiants. sqlDebut se termine par « in ( » et
+     * sqlFin commence par « ) ».
+     */
+    protected void parcourirIds(String sqlDebut,
+        String sqlFin,
+        int[] ids,
+        Traitement traitement) throws SQLException {
+        int[] uniques = ids.clone();
+        Arrays.sort(uniques);
+        int nb = 0;
+        for(int i = 0; i < uniques.length; i++) {
+            if(nb == 0
+                || uniques[nb - 1] != uniques[i]) {
+                uniques[nb++] = uniques[i];
+            }
+        }
+        int tailleMax = TAILLES_LISTE_IDS[TAILLES_LISTE_IDS.length - 1];
+        for(int debut = 0; debut < nb; debut += tailleMax) {
+            int nbListe = Math.min(tailleMax,
+                nb
+                    - debut);
+            int taille = tailleListeIds(nbListe);
+            PreparedStatement stmt = preparer(enonceListeIds(sqlDebut,
+                taille,
+                sqlFin));
+            for(int i = 0; i < taille; i++) {
+                /* Les places en trop répètent le dernier identifiant */
+                stmt.setInt(i + 1,
+                    uniques[debut
+                        + Math.min(i,
+                            nbListe - 1)]);
+            }
+            parcourir(stmt,
+                traitement);
+        }
+    }
+
+    private static int tailleListeIds(int nb) {
+        for(int taille : TAILLES_LISTE_IDS) {
+            if(nb <= taille) {
+                return taille;
+            }
+        }
+        return TAILLES_LISTE_IDS[TAILLES_LISTE_IDS.length - 1];
+    }
+
+    private static String enonceListeIds(String sqlDebut,
+        int taille,
+        String sqlFin) {
+        StringBuilder sql = new StringBuilder(sqlDebut.length()
+            + 3 * taille
+            + sqlFin.length());
+        sql.append(sqlDebut);
+        for(int i = 0; i < taille; i++) {
+            sql.append(i == 0
+                ? "?"
+                : ", ?");
+        }
+        return sql.append(sqlFin).toString();
+    }
+
+    /**
+     * Nombre de lignes lues à la fois par les requêtes de liste.
+     * Integer.MIN_VALUE demande la lecture en continu au pilote MySQL.
+     */
+    private int tailleLotListes() {
+        ConfigurationConnexion configuration = this.cx.getConfiguration();
+        if(configuration.isLectureEnContinu()
+            && configuration.estMySQL()
+            && !configuration.isUseCursorFetch()) {
+            return Integer.MIN_VALUE;
+        }
+        return configuration.getFetchSizeListes() > 0
+            ? configuration.getFetchSizeListes()
+            : configuration.getFetchSize();
+    }
+
+    /**
+     * Retourne le tuple id de cache, ou le cherche dans la BD s'il n'y est
+     * pas (voir lireEtCacher()).
+     */
+    protected <T> T lireAvecCache(CacheEntites<T> cache,
+        int id,
+        Recherche<T> recherche) throws SQLException {
+        T tuple = cache.lire(id);
+        if(tuple != null) {
+            return tuple;
+        }
+        return lireEtCacher(cache,
+            id,
+            recherche);
+    }
+
+    /**
+     * Cherche le tuple id dans la BD, sans consulter cache ; le tuple trouvé
+     * est mis en cache au commit de la transaction.
+     */
+    protected <T> T lireEtCacher(final CacheEntites<T> cache,
+        final int id,
+        Recherche<T> recherche) throws SQLException {
+        if(!cache.isActif()) {
+            return recherche.chercher();
+        }
+        final long generation = cache.getGeneration();
+        T tuple = recherche.chercher();
+        if(tuple != null) {
+            cacherAuCommit(cache,
+                id,
+                tuple,
+                generation);
+        }
+        return tuple;
+    }
+
+    /**
+     * Lecture des tuples ids dans cache, puis dans la BD pour ceux qui n'y
+     * sont pas (voir parcourirIds()) ; la première colonne des lignes est
+     * l'identifiant. Les tuples lus dans la BD sont mis en cache au commit.
+     *
+     * @return les tuples trouvés, par identifiant
+     */
+    protected <T> TableParId<T> lireParIds(final CacheEntites<T> cache,
+        String sqlDebut,
+        String sqlFin,
+        int[] ids,
+        final Lecteur<T> lecteur) throws SQLException {
+        final TableParId<T> tuples = new TableParId<>(ids.length);
+        int[] absents = lireCache(cache,
+            ids,
+            tuples);
+        final long generation = cache.getGeneration();
+        parcourirIds(sqlDebut,
+            sqlFin,
+            absents,
+            rset -> {
+                int id = rset.getInt(1);
+                T tuple = lecteur.lire(rset);
+                tuples.mettre(id,
+                    tuple);
+                if(cache.isActif()) {
+                    cacherAuCommit(cache,
+                        id,
+                        tuple,
+                        generation);
+                }
+            });
+        return tuples;
+    }
+
+    /**
+     * Copie dans tuples des tuples ids trouvés dans cache.
+     *
+     * @return les identifiants absents du cache
+     */
+    protected static <T> int[] lireCache(CacheEntites<T> cache,
+        int[] ids,
+        TableParId<T> tuples) {
+        if(!cache.isActif()) {
+            return ids;
+        }
+        int[] absents = new int[ids.length];
+        int nb = 0;
+        for(int id : ids) {
+            T tuple = cache.lire(id);
+            if(tuple != null) {
+                tuples.mettre(id,
+                    tuple);
+            } else {
+                absents[nb++] = id;
+            }
+        }
+        return Arrays.copyOf(absents,
+            nb);
+    }
+
+    /**
+     * Mise en cache d'une copie de tuple, lu à la génération generation, au
+     * commit de la transaction.
+     */
+    protected <T> void cacherAuCommit(final CacheEntites<T> cache,
+        final int id,
+        T tuple,
+        final long generation) throws SQLException {
+        final T copie = cache.copier(tuple);
+        this.cx.apresCommit(() -> cache.mettre(id,
+            copie,
+            generation));
+    }
+
+    /**
+     * Retrait du tuple id de cache, avant sa modification ; il est retiré de
+     * nouveau au commit, au cas où une autre transaction l'aurait remis en
+     * cache entre-temps.
+     */
+    protected void invalider(final CacheEntites<?> cache,
+        final int id) throws SQLException {
+        if(!cache.isActif()) {
+            return;
+        }
+        cache.invalider(id);
+        this.cx.apresCommit(() -> cache.invalider(id));
+    }
 }
@@ -0,0 +1,353 @@
+
+package ca.qc.collegeahuntsic.bibliotheque.dao;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import ca.qc.collegeahuntsic.bibliotheque.dto.LivreDTO;
+import ca.qc.collegeahuntsic.bibliotheque.util.TableParId;
+
+/**
+ * Instantané en mémoire de la table livre, pour les consultations.
+ *
+ * <pre>
+ * Les livres sont rangés par colonnes, triées par idLivre : tableaux int des
+ * identifiants, des emprunteurs (0 : non prêté) et des dates (jours depuis
+ * le 1970-01-01, AUCUNE_DATE : pas de date). Les titres et les auteurs sont
+ * codés par dictionnaire : chaque valeur distincte n'est gardée qu'une fois
+ * et la colonne ne contient que son code. Un livre occupe ainsi 24 octets,
+ * plus ses chaînes distinctes, au lieu d'un LivreDTO et de deux Date.
+ *
+ * L'instantané est chargé en une lecture de la table (LivreDAO.parcourirLivres())
+ * à sa première utilisation. LivreDAO marque ensuite, au commit, chaque
+ * livre modifié ; rafraichir() relit seulement les livres marqués
+ * (LivreDAO.getLivres()) et intègre les ajouts et les suppressions. Les
+ * modifications faites par d'autres programmes ne sont pas vues.
+ * </pre>
+ */
+public class InstantaneLivres {
+
+    /**
+     * Date absente (livre non prêté).
+     */
+    public static final int AUCUNE_DATE = Integer.MIN_VALUE;
+
+    /**
+     * Traitement d'un livre de l'instantané.
+     */
+    public interface Visiteur {
+        void visiter(int idLivre,
+            String titre,
+            String auteur,
+            int idMembre,
+            LocalDate datePret);
+    }
+
+    /**
+     * Valeurs distinctes d'une colonne de chaînes et leurs codes.
+     */
+    private static final class Dictionnaire {
+        private final List<String> valeurs = new ArrayList<>();
+
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        private int coder(String valeur) {
+            Integer code = this.codes.get(valeur);
+            if(code == null) {
+                code = this.valeurs.size();
+                this.valeurs.add(valeur);
+                this.codes.put(valeur,
+                    code);
+            }
+            return code;
+        }
+
+        private String lire(int code) {
+            return this.valeurs.get(code);
+        }
+    }
+
+    private final LivreDAO livre;
+
+    private final Dictionnaire titres = new Dictionnaire();
+
+    private final Dictionnaire auteurs = new Dictionnaire();
+
+    private int nb;
+
+    private int[] ids = new int[0];
+
+    private int[] codesTitre = new int[0];
+
+    private int[] codesAuteur = new int[0];
+
+    private int[] idMembres = new int[0];
+
+    private int[] datesAcquisition = new int[0];
+
+    private int[] datesPret = new int[0];
+
+    private boolean charge;
+
+    /**
+     * Livres modifiés depuis le dernier rafraîchissement ; sert aussi de
+     * verrou pour les marques.
+     */
+    private final TableParId<Boolean> modifies = new TableParId<>();
+
+    /**
+     * Creation d'un instantané des livres de livre, chargé à sa première
+     * utilisation.
+     */
+    public InstantaneLivres(LivreDAO livre) {
+        this.livre = livre;
+    }
+
+    /**
+     * Marque le livre idLivre, modifié par une transaction validée, pour le
+     * prochain rafraîchissement.
+     */
+    public void marquer(int idLivre) {
+        synchronized(this.modifies) {
+            this.modifies.mettre(idLivre,
+                Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Chargement de l'instantané, ou relecture des livres marqués, dans la
+     * transaction du thread courant.
+     */
+    public synchronized void rafraichir() throws SQLException {
+        int[] marques = prendreMarques();
+        try {
+            if(!this.charge) {
+                charger();
+            } else if(marques.length > 0) {
+                relire(marques);
+            }
+        } catch(SQLException e) {
+            for(int idLivre : marques) {
+                marquer(idLivre);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Traitement des livres, par ordre d'identifiant.
+     */
+    public synchronized void parcourir(Visiteur visiteur) {
+        for(int i = 0; i < this.nb; i++) {
+            visiter(i,
+                visiteur);
+        }
+    }
+
+    /**
+     * Traitement des livres dont le titre contient mot, par ordre
+     * d'identifiant. Comme lower(titre) like '%mot%' : mot suit la syntaxe
+     * de like (% et _) et est comparé tel quel au titre en minuscules (un
+     * mot avec des majuscules ne retient aucun titre). Le motif n'est évalué
+     * qu'une fois par titre distinct.
+     */
+    public synchronized void parcourirTitre(String mot,
+        Visiteur visiteur) {
+        Pattern motif = motifLike(mot);
+        boolean[] retenus = new boolean[this.titres.valeurs.size()];
+        for(int code = 0; code < retenus.length; code++) {
+            String titre = this.titres.lire(code);
+            retenus[code] = titre != null
+                && motif.matcher(titre.toLowerCase(Locale.ROOT)).matches();
+        }
+        for(int i = 0; i < this.nb; i++) {
+            if(retenus[this.codesTitre[i]]) {
+                visiter(i,
+                    visiteur);
+            }
+        }
+    }
+
+    /**
+     * Nombre de livres.
+     */
+    public synchronized int getNbLivres() {
+        return this.nb;
+    }
+
+    private void visiter(int i,
+        Visiteur visiteur) {
+        visiteur.visiter(this.ids[i],
+            this.titres.lire(this.codesTitre[i]),
+            this.auteurs.lire(this.codesAuteur[i]),
+            this.idMembres[i],
+            this.datesPret[i] == AUCUNE_DATE
+                ? null
+                : LocalDate.ofEpochDay(this.datesPret[i]));
+    }
+
+    /**
+     * Retire et retourne les marques courantes.
+     */
+    private int[] prendreMarques() {
+        synchronized(this.modifies) {
+            if(this.modifies.estVide()) {
+                return new int[0];
+            }
+            int[] marques = this.modifies.getCles();
+            this.modifies.vider();
+            return marques;
+        }
+    }
+
+    private void charger() throws SQLException {
+        this.nb = 0;
+        allouer(1024);
+        this.livre.parcourirLivres(tupleLivre -> {
+            if(this.nb == this.ids.length) {
+                allouer(2 * this.nb);
+            }
+            ecrire(this.nb++,
+                tupleLivre);
+        });
+        this.charge = true;
+    }
+
+    /**
+     * Relecture des livres marques : mise à jour sur place des livres
+     * existants, puis ajout et retrait des autres en une seule recopie.
+     */
+    private void relire(int[] marques) throws SQLException {
+        TableParId<LivreDTO> lus = this.livre.getLivres(marques);
+        List<LivreDTO> ajouts = new ArrayList<>();
+        boolean[] retires = null;
+        for(int idLivre : marques) {
+            int i = Arrays.binarySearch(this.ids,
+                0,
+                this.nb,
+                idLivre);
+            LivreDTO tupleLivre = lus.lire(idLivre);
+            if(tupleLivre == null) {
+                if(i >= 0) {
+                    if(retires == null) {
+                        retires = new boolean[this.nb];
+                    }
+                    retires[i] = true;
+                }
+            } else if(i >= 0) {
+                ecrire(i,
+                    tupleLivre);
+            } else {
+                ajouts.add(tupleLivre);
+            }
+        }
+        if(!ajouts.isEmpty()
+            || retires != null) {
+            fusionner(ajouts,
+                retires);
+        }
+    }
+
+    private void fusionner(List<LivreDTO> ajouts,
+        boolean[] retires) {
+        ajouts.sort((a, b) -> Integer.compare(a.idLivre,
+            b.idLivre));
+        int[] anciensIds = this.ids;
+        int[] anciensTitres = this.codesTitre;
+        int[] anciensAuteurs = this.codesAuteur;
+        int[] anciensMembres = this.idMembres;
+        int[] anciennesAcquisitions = this.datesAcquisition;
+        int[] anciensPrets = this.datesPret;
+        int ancienNb = this.nb;
+        allouer(Math.max(1024,
+            ancienNb
+                + ajouts.size()));
+        this.nb = 0;
+        int a = 0;
+        for(int i = 0; i <= ancienNb; i++) {
+            while(a < ajouts.size()
+                && (i == ancienNb
+                    || ajouts.get(a).idLivre < anciensIds[i])) {
+                ecrire(this.nb++,
+                    ajouts.get(a++));
+            }
+            if(i < ancienNb
+                && (retires == null
+                    || !retires[i])) {
+                this.ids[this.nb] = anciensIds[i];
+                this.codesTitre[this.nb] = anciensTitres[i];
+                this.codesAuteur[this.nb] = anciensAuteurs[i];
+                this.idMembres[this.nb] = anciensMembres[i];
+                this.datesAcquisition[this.nb] = anciennesAcquisitions[i];
+                this.datesPret[this.nb] = anciensPrets[i];
+                this.nb++;
+            }
+        }
+    }
+
+    private void ecrire(int i,
+        LivreDTO tupleLivre) {
+        this.ids[i] = tupleLivre.idLivre;
+        this.codesTitre[i] = this.titres.coder(tupleLivre.titre);
+        this.codesAuteur[i] = this.auteurs.coder(tupleLivre.auteur);
+        this.idMembres[i] = tupleLivre.idMembre;
+        this.datesAcquisition[i] = jour(tupleLivre.dateAcquisition);
+        this.datesPret[i] = jour(tupleLivre.datePret);
+    }
+
+    private void allouer(int capacite) {
+        this.ids = Arrays.copyOf(this.ids,
+            capacite);
+        this.codesTitre = Arrays.copyOf(this.codesTitre,
+            capacite);
+        this.codesAuteur = Arrays.copyOf(this.codesAuteur,
+            capacite);
+        this.idMembres = Arrays.copyOf(this.idMembres,
+            capacite);
+        this.datesAcquisition = Arrays.copyOf(this.datesAcquisition,
+            capacite);
+        this.datesPret = Arrays.copyOf(this.datesPret,
+            capacite);
+    }
+
+    private static int jour(Date date) {
+        return date == null
+            ? AUCUNE_DATE
+            : (int) date.toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Expression régulière équivalente à like '%mot%'.
+     */
+    private static Pattern motifLike(String mot) {
+        StringBuilder motif = new StringBuilder(".*");
+        StringBuilder litteral = new StringBuilder();
+        for(int i = 0; i < mot.length(); i++) {
+            char c = mot.charAt(i);
+            if(c == '%'
+                || c == '_') {
+                if(litteral.length() > 0) {
+                    motif.append(Pattern.quote(litteral.toString()));
+                    litteral.setLength(0);
+                }
+                motif.append(c == '%'
+                    ? ".*"
+                    : ".");
+            } else {
+                litteral.append(c);
+            }
+        }
+        if(litteral.length() > 0) {
+            motif.append(Pattern.quote(litteral.toString()));
+        }
+        return Pattern.compile(motif.append(".*").toString(),
+            Pattern.DOTALL);
+    }
+}
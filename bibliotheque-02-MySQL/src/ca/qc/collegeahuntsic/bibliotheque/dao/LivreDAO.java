@@ -6,46 +6,134 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
 import ca.qc.collegeahuntsic.bibliotheque.dto.LivreDTO;
+import ca.qc.collegeahuntsic.bibliotheque.util.ConfigurationBibliotheque;
+import ca.qc.collegeahuntsic.bibliotheque.util.TableParId;
 
 /**
  * Permet d'effectuer les accès à la table livre.
+ *
+ * Les livres lus sont gardés dans un CacheEntites si la configuration le
+ * demande (cacheEntites.taille) ; getLivre() et existe() le consultent, et
+ * chaque modification d'un livre l'en retire.
+ *
+ * Si la configuration le demande (instantaneLivres), chaque livre modifié est
+ * aussi marqué, au commit, dans l'instantané du catalogue (InstantaneLivres).
  */
 
-public class LivreDAO {
+public class LivreDAO extends DAO {
 
-    private PreparedStatement stmtExiste;
+    private static final long serialVersionUID = 1L;
 
-    private PreparedStatement stmtInsert;
+    private static final String SQL_EXISTE = "select idlivre, titre, auteur, dateAcquisition, idMembre, datePret from livre where idlivre = ?";
 
-    private PreparedStatement stmtUpdate;
+    private static final String SQL_EXISTE_POUR_MAJ = SQL_EXISTE
+        + " for update";
 
-    private PreparedStatement stmtDelete;
+    private static final String SQL_LISTE_TOUS = "select idlivre, titre, auteur, dateAcquisition, idMembre, datePret from livre order by idlivre";
 
-    private Connexion cx;
+    private static final String SQL_LISTE_IDS = "select idlivre, titre, auteur, dateAcquisition, idMembre, datePret from livre where idlivre in (";
+
+    private static final String SQL_INSERT = "insert into livre (idLivre, titre, auteur, dateAcquisition, idMembre, datePret) "
+        + "values (?,?,?,?,null,null)";
+
+    private static final String SQL_UPDATE = "update livre set idMembre = ?, datePret = ? "
+        + "where idLivre = ?";
+
+    private static final String SQL_PRETER_SI_DISPONIBLE = "update livre set idMembre = ?, datePret = ? "
+        + "where idLivre = ? and idMembre is null "
+        + "and not exists (select idReservation from reservation where idLivre = ?) "
+        + "and exists (select idMembre from membre where idMembre = ? and nbpret < limitePret)";
+
+    private static final String SQL_PRETER_SI_PREMIERE_RES = "update livre set idMembre = ?, datePret = ? "
+        + "where idLivre = ? and idMembre is null "
+        + "and not exists (select idReservation from reservation "
+        + "where idLivre = ? and idReservation <> ? and dateReservation <= ?) "
+        + "and exists (select idMembre from membre where idMembre = ? and nbpret < limitePret)";
+
+    private static final String SQL_RENOUVELER_SI_PRETE = "update livre set datePret = ? "
+        + "where idLivre = ? and idMembre is not null and datePret <= ? "
+        + "and not exists (select idReservation from reservation where idLivre = ?)";
+
+    private static final String SQL_DELETE = "delete from livre where idlivre = ?";
+
+    private final CacheEntites<LivreDTO> cache;
+
+    private final InstantaneLivres instantane;
+
+    /**
+     * Creation d'une instance. Les énoncés SQL sont précompilés dans la
+     * transaction du thread appelant, à leur première utilisation.
+     */
+    public LivreDAO(Connexion cx) {
+
+        this(cx,
+            new ConfigurationBibliotheque());
+    }
+
+    /**
+     * Creation d'une instance dont le cache et l'instantané suivent configuration.
+     */
+    public LivreDAO(Connexion cx,
+        ConfigurationBibliotheque configuration) {
+
+        super(cx);
+        this.cache = new CacheEntites<>("livre",
+            configuration.getTailleCacheEntites(),
+            configuration.getDureeCacheEntites(),
+            LivreDAO::copier,
+            cx.getMetriques());
+        this.instantane = configuration.isInstantaneLivres()
+            ? new InstantaneLivres(this)
+            : null;
+    }
 
     /**
-     * Creation d'une instance. Des énoncés SQL pour chaque requête sont précompilés.
+     * Retourne le cache des livres lus.
      */
-    public LivreDAO(Connexion cx) throws SQLException {
+    public CacheEntites<LivreDTO> getCache() {
 
-        this.cx = cx;
-        this.stmtExiste = cx.getConnection()
-            .prepareStatement("select idlivre, titre, auteur, dateAcquisition, idMembre, datePret from livre where idlivre = ?");
-        this.stmtInsert = cx.getConnection().prepareStatement("insert into livre (idLivre, titre, auteur, dateAcquisition, idMembre, datePret) "
-            + "values (?,?,?,?,null,null)");
-        this.stmtUpdate = cx.getConnection().prepareStatement("update livre set idMembre = ?, datePret = ? "
-            + "where idLivre = ?");
-        this.stmtDelete = cx.getConnection().prepareStatement("delete from livre where idlivre = ?");
+        return this.cache;
     }
 
     /**
-     * Retourner la connexion associée.
+     * Retourne l'instantané du catalogue, ou null s'il n'est pas configuré.
      */
-    public Connexion getConnexion() {
+    public InstantaneLivres getInstantane() {
 
-        return this.cx;
+        return this.instantane;
+    }
+
+    /**
+     * Retrait du livre idLivre du cache, avant sa modification, et marquage
+     * dans l'instantané au commit.
+     */
+    void modifier(final int idLivre) throws SQLException {
+
+        invalider(this.cache,
+            idLivre);
+        if(this.instantane != null) {
+            getConnexion().apresCommit(() -> this.instantane.marquer(idLivre));
+        }
+    }
+
+    /**
+     * Retourne les énoncés SQL utilisés, pour le préchauffage des connexions.
+     */
+    public List<String> getEnonces() {
+
+        return Arrays.asList(SQL_EXISTE,
+            SQL_EXISTE_POUR_MAJ,
+            SQL_INSERT,
+            SQL_UPDATE,
+            SQL_PRETER_SI_DISPONIBLE,
+            SQL_PRETER_SI_PREMIERE_RES,
+            SQL_RENOUVELER_SI_PRETE,
+            SQL_DELETE);
     }
 
     /**
@@ -53,12 +141,7 @@ public class LivreDAO {
      */
     public boolean existe(int idLivre) throws SQLException {
 
-        this.stmtExiste.setInt(1,
-            idLivre);
-        ResultSet rset = this.stmtExiste.executeQuery();
-        boolean livreExiste = rset.next();
-        rset.close();
-        return livreExiste;
+        return getLivre(idLivre) != null;
     }
 
     /**
@@ -66,40 +149,137 @@ public class LivreDAO {
      */
     public LivreDTO getLivre(int idLivre) throws SQLException {
 
-        this.stmtExiste.setInt(1,
+        return lireAvecCache(this.cache,
+            idLivre,
+            () -> lireLivre(SQL_EXISTE,
+                idLivre));
+    }
+
+    /**
+     * Lecture des livres ids, par listes d'identifiants (voir
+     * DAO.parcourirIds()).
+     *
+     * @return les livres trouvés, par identifiant
+     */
+    public TableParId<LivreDTO> getLivres(int[] ids) throws SQLException {
+
+        return lireParIds(this.cache,
+            SQL_LISTE_IDS,
+            ")",
+            ids,
+            LivreDAO::lireLivre);
+    }
+
+    /**
+     * Lecture de tous les livres par ordre d'identifiant ; chaque livre est
+     * passé à traitement dès sa lecture (voir DAO.parcourir()).
+     */
+    public void parcourirLivres(Consumer<LivreDTO> traitement) throws SQLException {
+
+        parcourir(preparer(SQL_LISTE_TOUS),
+            rset -> traitement.accept(lireLivre(rset)));
+    }
+
+    /**
+     * Lecture d'un livre avec verrouillage de la ligne jusqu'à la fin de la
+     * transaction, avant sa modification.
+     */
+    public LivreDTO getLivrePourMaj(int idLivre) throws SQLException {
+
+        return lireEtCacher(this.cache,
+            idLivre,
+            () -> lireLivre(SQL_EXISTE_POUR_MAJ,
+                idLivre));
+    }
+
+    private LivreDTO lireLivre(String sql,
+        int idLivre) throws SQLException {
+
+        PreparedStatement stmtExiste = preparer(sql);
+        stmtExiste.setInt(1,
             idLivre);
-        ResultSet rset = this.stmtExiste.executeQuery();
-        if(rset.next()) {
-            LivreDTO tupleLivre = new LivreDTO();
-            tupleLivre.idLivre = idLivre;
-            tupleLivre.titre = rset.getString(2);
-            tupleLivre.auteur = rset.getString(3);
-            tupleLivre.dateAcquisition = rset.getDate(4);
-            tupleLivre.idMembre = rset.getInt(5);
-            tupleLivre.datePret = rset.getDate(6);
-            return tupleLivre;
-        } else {
-            return null;
-        }
+        return lireUn(stmtExiste,
+            LivreDAO::lireLivre);
+    }
+
+    private static LivreDTO lireLivre(ResultSet rset) throws SQLException {
+
+        LivreDTO tupleLivre = new LivreDTO();
+        tupleLivre.idLivre = rset.getInt(1);
+        tupleLivre.titre = rset.getString(2);
+        tupleLivre.auteur = rset.getString(3);
+        tupleLivre.dateAcquisition = rset.getDate(4);
+        tupleLivre.idMembre = rset.getInt(5);
+        tupleLivre.datePret = rset.getDate(6);
+        return tupleLivre;
+    }
+
+    private static LivreDTO copier(LivreDTO tupleLivre) {
+
+        LivreDTO copie = new LivreDTO();
+        copie.idLivre = tupleLivre.idLivre;
+        copie.titre = tupleLivre.titre;
+        copie.auteur = tupleLivre.auteur;
+        copie.dateAcquisition = copier(tupleLivre.dateAcquisition);
+        copie.idMembre = tupleLivre.idMembre;
+        copie.datePret = copier(tupleLivre.datePret);
+        return copie;
+    }
+
+    private static Date copier(Date date) {
+
+        return date == null
+            ? null
+            : new Date(date.getTime());
     }
 
     /**
      * Ajout d'un nouveau livre dans la base de donnees.
+     *
+     * @return false si le livre existe déjà
      */
-    public void acquerir(int idLivre,
+    public boolean acquerir(int idLivre,
         String titre,
         String auteur,
         String dateAcquisition) throws SQLException {
+        modifier(idLivre);
         /* Ajout du livre. */
-        this.stmtInsert.setInt(1,
+        PreparedStatement stmtInsert = preparer(SQL_INSERT);
+        stmtInsert.setInt(1,
             idLivre);
-        this.stmtInsert.setString(2,
+        stmtInsert.setString(2,
             titre);
-        this.stmtInsert.setString(3,
+        stmtInsert.setString(3,
             auteur);
-        this.stmtInsert.setDate(4,
+        stmtInsert.setDate(4,
             Date.valueOf(dateAcquisition));
-        this.stmtInsert.executeUpdate();
+        return insererSiNouveau(stmtInsert);
+    }
+
+    /**
+     * Ajout de plusieurs livres en un seul envoi (executeBatch).
+     *
+     * @return le nombre de lignes ajoutées pour chaque livre
+     */
+    public int[] acquerirLot(List<LivreDTO> livres) throws SQLException {
+        PreparedStatement stmtInsert = preparer(SQL_INSERT);
+        for(LivreDTO tupleLivre : livres) {
+            modifier(tupleLivre.idLivre);
+            stmtInsert.setInt(1,
+                tupleLivre.idLivre);
+            stmtInsert.setString(2,
+                tupleLivre.titre);
+            stmtInsert.setString(3,
+                tupleLivre.auteur);
+            stmtInsert.setDate(4,
+                tupleLivre.dateAcquisition);
+            stmtInsert.addBatch();
+        }
+        try {
+            return executerLot(stmtInsert);
+        } finally {
+            stmtInsert.clearBatch();
+        }
     }
 
     /**
@@ -108,37 +288,121 @@ public class LivreDAO {
     public int preter(int idLivre,
         int idMembre,
         String datePret) throws SQLException {
+        modifier(idLivre);
         /* Enregistrement du pret. */
-        this.stmtUpdate.setInt(1,
+        PreparedStatement stmtUpdate = preparer(SQL_UPDATE);
+        stmtUpdate.setInt(1,
             idMembre);
-        this.stmtUpdate.setDate(2,
+        stmtUpdate.setDate(2,
             Date.valueOf(datePret));
-        this.stmtUpdate.setInt(3,
+        stmtUpdate.setInt(3,
             idLivre);
-        return this.stmtUpdate.executeUpdate();
+        return executerMaj(stmtUpdate);
     }
 
     /**
      * Rendre le livre disponible (non-prêté)
      */
     public int retourner(int idLivre) throws SQLException {
+        modifier(idLivre);
         /* Enregistrement du pret. */
-        this.stmtUpdate.setNull(1,
+        PreparedStatement stmtUpdate = preparer(SQL_UPDATE);
+        stmtUpdate.setNull(1,
             Types.INTEGER);
-        this.stmtUpdate.setNull(2,
+        stmtUpdate.setNull(2,
             Types.DATE);
-        this.stmtUpdate.setInt(3,
+        stmtUpdate.setInt(3,
+            idLivre);
+        return executerMaj(stmtUpdate);
+    }
+
+    /**
+     * Pret conditionnel, en un seul énoncé : le livre n'est prêté que s'il
+     * existe, n'est pas prêté, n'est pas réservé et que le membre existe sans
+     * avoir atteint sa limite de pret.
+     *
+     * @return 0 si une de ces conditions n'est pas remplie
+     */
+    public int preterSiDisponible(int idLivre,
+        int idMembre,
+        String datePret) throws SQLException {
+        modifier(idLivre);
+        PreparedStatement stmtUpdate = preparer(SQL_PRETER_SI_DISPONIBLE);
+        stmtUpdate.setInt(1,
+            idMembre);
+        stmtUpdate.setDate(2,
+            Date.valueOf(datePret));
+        stmtUpdate.setInt(3,
+            idLivre);
+        stmtUpdate.setInt(4,
+            idLivre);
+        stmtUpdate.setInt(5,
+            idMembre);
+        return executerMaj(stmtUpdate);
+    }
+
+    /**
+     * Pret conditionnel d'un livre réservé : comme preterSiDisponible(), mais
+     * la réservation idReservation doit être la seule à dateReservation ou
+     * avant pour ce livre.
+     *
+     * @return 0 si une de ces conditions n'est pas remplie
+     */
+    public int preterSiPremiereRes(int idLivre,
+        int idMembre,
+        String datePret,
+        int idReservation,
+        Date dateReservation) throws SQLException {
+        modifier(idLivre);
+        PreparedStatement stmtUpdate = preparer(SQL_PRETER_SI_PREMIERE_RES);
+        stmtUpdate.setInt(1,
+            idMembre);
+        stmtUpdate.setDate(2,
+            Date.valueOf(datePret));
+        stmtUpdate.setInt(3,
+            idLivre);
+        stmtUpdate.setInt(4,
+            idLivre);
+        stmtUpdate.setInt(5,
+            idReservation);
+        stmtUpdate.setDate(6,
+            dateReservation);
+        stmtUpdate.setInt(7,
+            idMembre);
+        return executerMaj(stmtUpdate);
+    }
+
+    /**
+     * Renouvellement conditionnel : le livre doit être prêté depuis au plus
+     * datePret et ne pas être réservé.
+     *
+     * @return 0 si une de ces conditions n'est pas remplie
+     */
+    public int renouvelerSiPrete(int idLivre,
+        String datePret) throws SQLException {
+        modifier(idLivre);
+        PreparedStatement stmtUpdate = preparer(SQL_RENOUVELER_SI_PRETE);
+        Date date = Date.valueOf(datePret);
+        stmtUpdate.setDate(1,
+            date);
+        stmtUpdate.setInt(2,
+            idLivre);
+        stmtUpdate.setDate(3,
+            date);
+        stmtUpdate.setInt(4,
             idLivre);
-        return this.stmtUpdate.executeUpdate();
+        return executerMaj(stmtUpdate);
     }
 
     /**
      * Suppression d'un livre.
      */
     public int vendre(int idLivre) throws SQLException {
+        modifier(idLivre);
         /* Suppression du livre. */
-        this.stmtDelete.setInt(1,
+        PreparedStatement stmtDelete = preparer(SQL_DELETE);
+        stmtDelete.setInt(1,
             idLivre);
-        return this.stmtDelete.executeUpdate();
+        return executerMaj(stmtDelete);
     }
 }
@@ -4,126 +4,260 @@ package ca.qc.collegeahuntsic.bibliotheque.dao;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
 import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
 import ca.qc.collegeahuntsic.bibliotheque.dto.MembreDTO;
+import ca.qc.collegeahuntsic.bibliotheque.util.ConfigurationBibliotheque;
+import ca.qc.collegeahuntsic.bibliotheque.util.TableParId;
 
 /**
  * Permet d'effectuer les accès à la table membre.
  * Cette classe gère tous les accès à la table membre.
  *
+ * Les membres lus sont gardés dans un CacheEntites si la configuration le
+ * demande (cacheEntites.taille) ; getMembre() et existe() le consultent, et
+ * chaque modification d'un membre l'en retire.
  *</pre>
  */
 
-public class MembreDAO {
+public class MembreDAO extends DAO {
 
-    private PreparedStatement stmtExiste;
+    private static final long serialVersionUID = 1L;
 
-    private PreparedStatement stmtInsert;
+    private static final String SQL_EXISTE = "select idMembre, nom, telephone, limitePret, nbpret from membre where idmembre = ?";
 
-    private PreparedStatement stmtUpdateIncrNbPret;
+    private static final String SQL_EXISTE_POUR_MAJ = SQL_EXISTE
+        + " for update";
 
-    private PreparedStatement stmtUpdateDecNbPret;
+    private static final String SQL_LISTE_IDS = "select idMembre, nom, telephone, limitePret, nbpret from membre where idmembre in (";
 
-    private PreparedStatement stmtDelete;
+    private static final String SQL_INSERT = "insert into membre (idmembre, nom, telephone, limitepret, nbpret) "
+        + "values (?,?,?,?,0)";
 
-    private Connexion cx;
+    private static final String SQL_UPDATE_INCR_NB_PRET = "update membre set nbpret = nbPret + 1 where idMembre = ?";
+
+    private static final String SQL_UPDATE_DEC_NB_PRET = "update membre set nbpret = nbPret - 1 where idMembre = ?";
+
+    private static final String SQL_UPDATE_INCR_NB_PRET_SI_LIMITE = SQL_UPDATE_INCR_NB_PRET
+        + " and nbpret < limitePret";
+
+    private static final String SQL_DELETE = "delete from membre where idmembre = ?";
+
+    private final CacheEntites<MembreDTO> cache;
+
+    /**
+     * Creation d'une instance. Les énoncés SQL sont précompilés dans la
+     * transaction du thread appelant, à leur première utilisation.
+     */
+    public MembreDAO(Connexion cx) {
+        this(cx,
+            new ConfigurationBibliotheque());
+    }
+
+    /**
+     * Creation d'une instance dont le cache suit configuration.
+     */
+    public MembreDAO(Connexion cx,
+        ConfigurationBibliotheque configuration) {
+        super(cx);
+        this.cache = new CacheEntites<>("membre",
+            configuration.getTailleCacheEntites(),
+            configuration.getDureeCacheEntites(),
+            MembreDAO::copier,
+            cx.getMetriques());
+    }
 
     /**
-     * Creation d'une instance. Précompilation d'énoncés SQL.
+     * Retourne le cache des membres lus.
      */
-    public MembreDAO(Connexion cx) throws SQLException {
-        this.cx = cx;
-        this.stmtExiste = cx.getConnection().prepareStatement("select idMembre, nom, telephone, limitePret, nbpret from membre where idmembre = ?");
-        this.stmtInsert = cx.getConnection().prepareStatement("insert into membre (idmembre, nom, telephone, limitepret, nbpret) "
-            + "values (?,?,?,?,0)");
-        this.stmtUpdateIncrNbPret = cx.getConnection().prepareStatement("update membre set nbpret = nbPret + 1 where idMembre = ?");
-        this.stmtUpdateDecNbPret = cx.getConnection().prepareStatement("update membre set nbpret = nbPret - 1 where idMembre = ?");
-        this.stmtDelete = cx.getConnection().prepareStatement("delete from membre where idmembre = ?");
+    public CacheEntites<MembreDTO> getCache() {
+        return this.cache;
     }
 
     /**
-     * Retourner la connexion associée.
+     * Retourne les énoncés SQL utilisés, pour le préchauffage des connexions.
      */
-    public Connexion getConnexion() {
+    public List<String> getEnonces() {
 
-        return this.cx;
+        return Arrays.asList(SQL_EXISTE,
+            SQL_EXISTE_POUR_MAJ,
+            SQL_INSERT,
+            SQL_UPDATE_INCR_NB_PRET,
+            SQL_UPDATE_DEC_NB_PRET,
+            SQL_UPDATE_INCR_NB_PRET_SI_LIMITE,
+            SQL_DELETE);
     }
 
     /**
      * Vérifie si un membre éxiste.
      */
     public boolean existe(int idMembre) throws SQLException {
-        this.stmtExiste.setInt(1,
-            idMembre);
-        ResultSet rset = this.stmtExiste.executeQuery();
-        boolean membreExiste = rset.next();
-        rset.close();
-        return membreExiste;
+        return getMembre(idMembre) != null;
     }
 
     /**
      * Lecture d'un membre.
      */
     public MembreDTO getMembre(int idMembre) throws SQLException {
-        this.stmtExiste.setInt(1,
+        return lireAvecCache(this.cache,
+            idMembre,
+            () -> lireMembre(SQL_EXISTE,
+                idMembre));
+    }
+
+    /**
+     * Lecture des membres ids, par listes d'identifiants (voir
+     * DAO.parcourirIds()).
+     *
+     * @return les membres trouvés, par identifiant
+     */
+    public TableParId<MembreDTO> getMembres(int[] ids) throws SQLException {
+        return lireParIds(this.cache,
+            SQL_LISTE_IDS,
+            ")",
+            ids,
+            MembreDAO::lireMembre);
+    }
+
+    /**
+     * Lecture d'un membre avec verrouillage de la ligne jusqu'à la fin de la
+     * transaction, avant sa modification.
+     */
+    public MembreDTO getMembrePourMaj(int idMembre) throws SQLException {
+        return lireEtCacher(this.cache,
+            idMembre,
+            () -> lireMembre(SQL_EXISTE_POUR_MAJ,
+                idMembre));
+    }
+
+    private MembreDTO lireMembre(String sql,
+        int idMembre) throws SQLException {
+        PreparedStatement stmtExiste = preparer(sql);
+        stmtExiste.setInt(1,
             idMembre);
-        ResultSet rset = this.stmtExiste.executeQuery();
-        if(rset.next()) {
-            MembreDTO tupleMembre = new MembreDTO();
-            tupleMembre.idMembre = idMembre;
-            tupleMembre.nom = rset.getString(2);
-            tupleMembre.telephone = rset.getLong(3);
-            tupleMembre.limitePret = rset.getInt(4);
-            tupleMembre.nbPret = rset.getInt(5);
-            return tupleMembre;
-        } else {
-            return null;
-        }
+        return lireUn(stmtExiste,
+            MembreDAO::lireMembre);
+    }
+
+    private static MembreDTO lireMembre(ResultSet rset) throws SQLException {
+        MembreDTO tupleMembre = new MembreDTO();
+        tupleMembre.idMembre = rset.getInt(1);
+        tupleMembre.nom = rset.getString(2);
+        tupleMembre.telephone = rset.getLong(3);
+        tupleMembre.limitePret = rset.getInt(4);
+        tupleMembre.nbPret = rset.getInt(5);
+        return tupleMembre;
+    }
+
+    private static MembreDTO copier(MembreDTO tupleMembre) {
+        MembreDTO copie = new MembreDTO();
+        copie.idMembre = tupleMembre.idMembre;
+        copie.nom = tupleMembre.nom;
+        copie.telephone = tupleMembre.telephone;
+        copie.limitePret = tupleMembre.limitePret;
+        copie.nbPret = tupleMembre.nbPret;
+        return copie;
     }
 
     /**
      * Ajout d'un nouveau membre.
+     *
+     * @return false si le membre existe déjà
      */
-    public void inscrire(int idMembre,
+    public boolean inscrire(int idMembre,
         String nom,
         long telephone,
         int limitePret) throws SQLException {
+        invalider(this.cache,
+            idMembre);
         /* Ajout du membre. */
-        this.stmtInsert.setInt(1,
+        PreparedStatement stmtInsert = preparer(SQL_INSERT);
+        stmtInsert.setInt(1,
             idMembre);
-        this.stmtInsert.setString(2,
+        stmtInsert.setString(2,
             nom);
-        this.stmtInsert.setLong(3,
+        stmtInsert.setLong(3,
             telephone);
-        this.stmtInsert.setInt(4,
+        stmtInsert.setInt(4,
             limitePret);
-        this.stmtInsert.executeUpdate();
+        return insererSiNouveau(stmtInsert);
+    }
+
+    /**
+     * Ajout de plusieurs membres en un seul envoi (executeBatch).
+     *
+     * @return le nombre de lignes ajoutées pour chaque membre
+     */
+    public int[] inscrireLot(List<MembreDTO> membres) throws SQLException {
+        PreparedStatement stmtInsert = preparer(SQL_INSERT);
+        for(MembreDTO tupleMembre : membres) {
+            invalider(this.cache,
+                tupleMembre.idMembre);
+            stmtInsert.setInt(1,
+                tupleMembre.idMembre);
+            stmtInsert.setString(2,
+                tupleMembre.nom);
+            stmtInsert.setLong(3,
+                tupleMembre.telephone);
+            stmtInsert.setInt(4,
+                tupleMembre.limitePret);
+            stmtInsert.addBatch();
+        }
+        try {
+            return executerLot(stmtInsert);
+        } finally {
+            stmtInsert.clearBatch();
+        }
     }
 
     /**
      * Incrementer le nb de pret d'un membre.
      */
     public int preter(int idMembre) throws SQLException {
-        this.stmtUpdateIncrNbPret.setInt(1,
+        invalider(this.cache,
+            idMembre);
+        PreparedStatement stmtUpdateIncrNbPret = preparer(SQL_UPDATE_INCR_NB_PRET);
+        stmtUpdateIncrNbPret.setInt(1,
             idMembre);
-        return this.stmtUpdateIncrNbPret.executeUpdate();
+        return executerMaj(stmtUpdateIncrNbPret);
     }
 
     /**
      * Decrementer le nb de pret d'un membre.
      */
     public int retourner(int idMembre) throws SQLException {
-        this.stmtUpdateDecNbPret.setInt(1,
+        invalider(this.cache,
             idMembre);
-        return this.stmtUpdateDecNbPret.executeUpdate();
+        PreparedStatement stmtUpdateDecNbPret = preparer(SQL_UPDATE_DEC_NB_PRET);
+        stmtUpdateDecNbPret.setInt(1,
+            idMembre);
+        return executerMaj(stmtUpdateDecNbPret);
+    }
+
+    /**
+     * Incrementer le nb de pret d'un membre qui n'a pas atteint sa limite.
+     *
+     * @return 0 si le membre n'existe pas ou a atteint sa limite de pret
+     */
+    public int preterSiSousLimite(int idMembre) throws SQLException {
+        invalider(this.cache,
+            idMembre);
+        PreparedStatement stmtUpdateIncrNbPret = preparer(SQL_UPDATE_INCR_NB_PRET_SI_LIMITE);
+        stmtUpdateIncrNbPret.setInt(1,
+            idMembre);
+        return executerMaj(stmtUpdateIncrNbPret);
     }
 
     /**
      * Suppression d'un membre.
      */
     public int desinscrire(int idMembre) throws SQLException {
-        this.stmtDelete.setInt(1,
+        invalider(this.cache,
+            idMembre);
+        PreparedStatement stmtDelete = preparer(SQL_DELETE);
+        stmtDelete.setInt(1,
             idMembre);
-        return this.stmtDelete.executeUpdate();
+        return executerMaj(stmtDelete);
     }
 }
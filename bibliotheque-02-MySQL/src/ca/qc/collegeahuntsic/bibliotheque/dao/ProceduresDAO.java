@@ -0,0 +1,261 @@
+
+package ca.qc.collegeahuntsic.bibliotheque.dao;
+
+import java.sql.CallableStatement;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
+
+/**
+ * Permet d'appeler les procédures stockées des transactions de prêt et de
+ * réservation.
+ *
+ * <pre>
+ * Les procédures (MySQL-procedures.sql, Oracle-procedures.sql) font toutes
+ * les vérifications et mises à jour d'une transaction en un seul appel au
+ * serveur. Elles ne valident pas la transaction : le commit ou le rollback
+ * reste fait par l'appelant.
+ *
+ * Chaque procédure retourne un code (OK ou la raison du refus) et jusqu'à
+ * deux identifiants cités par le message d'erreur :
+ *   LIVRE_INEXISTANT, LIVRE_NON_PRETE, LIVRE_PRETE_AU_MEMBRE : le livre
+ *   LIVRE_PRETE : le livre et son emprunteur
+ *   LIVRE_RESERVE : le membre et la réservation qui bloquent le livre
+ *   MEMBRE_INEXISTANT, LIMITE_ATTEINTE : le membre
+ *   RESERVATION_INEXISTANTE, RESERVATION_EXISTANTE : la réservation
+ *   RESERVATION_PAS_PREMIERE : la première réservation du livre
+ *   LIVRE_RESERVE_PAR_MEMBRE : le livre et le membre
+ *   DATE_INFERIEURE : aucun
+ * En cas de succès, biblio_retourner retourne l'emprunteur,
+ * biblio_prendreRes le livre et le membre et biblio_annulerRes le livre,
+ * pour que les livres, membres et files de réservations modifiés soient
+ * retirés des caches de LivreDAO, MembreDAO et ReservationDAO.
+ * </pre>
+ */
+
+public class ProceduresDAO extends DAO {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Résultat de l'appel d'une procédure.
+     */
+    public static class Resultat {
+        public int code;
+
+        public int info1;
+
+        public int info2;
+    }
+
+    public static final int OK = 0;
+
+    public static final int LIVRE_INEXISTANT = 1;
+
+    public static final int LIVRE_PRETE = 2;
+
+    public static final int LIVRE_NON_PRETE = 3;
+
+    public static final int LIVRE_PRETE_AU_MEMBRE = 4;
+
+    public static final int LIVRE_RESERVE = 5;
+
+    public static final int MEMBRE_INEXISTANT = 6;
+
+    public static final int LIMITE_ATTEINTE = 7;
+
+    public static final int DATE_INFERIEURE = 8;
+
+    public static final int RESERVATION_INEXISTANTE = 9;
+
+    public static final int RESERVATION_EXISTANTE = 10;
+
+    public static final int RESERVATION_PAS_PREMIERE = 11;
+
+    public static final int LIVRE_RESERVE_PAR_MEMBRE = 12;
+
+    private static final String SQL_PRETER = "{call biblio_preter(?, ?, ?, ?, ?, ?)}";
+
+    private static final String SQL_RENOUVELER = "{call biblio_renouveler(?, ?, ?, ?, ?)}";
+
+    private static final String SQL_RETOURNER = "{call biblio_retourner(?, ?, ?, ?, ?)}";
+
+    private static final String SQL_RESERVER = "{call biblio_reserver(?, ?, ?, ?, ?, ?, ?)}";
+
+    private static final String SQL_PRENDRE_RES = "{call biblio_prendreRes(?, ?, ?, ?, ?)}";
+
+    private static final String SQL_ANNULER_RES = "{call biblio_annulerRes(?, ?, ?, ?)}";
+
+    private final LivreDAO livre;
+
+    private final MembreDAO membre;
+
+    private final ReservationDAO reservation;
+
+    /**
+     * Creation d'une instance. Les appels sont précompilés dans la
+     * transaction du thread appelant, à leur première utilisation. Les
+     * livres, membres et files de réservations modifiés sont retirés des
+     * caches des autres DAO.
+     */
+    public ProceduresDAO(Connexion cx,
+        LivreDAO livre,
+        MembreDAO membre,
+        ReservationDAO reservation) {
+
+        super(cx);
+        this.livre = livre;
+        this.membre = membre;
+        this.reservation = reservation;
+    }
+
+    /**
+     * Retourne les appels utilisés, pour le préchauffage des connexions.
+     */
+    public List<String> getEnonces() {
+
+        return Arrays.asList(SQL_PRETER,
+            SQL_RENOUVELER,
+            SQL_RETOURNER,
+            SQL_RESERVER,
+            SQL_PRENDRE_RES,
+            SQL_ANNULER_RES);
+    }
+
+    /**
+     * Pret d'un livre à un membre (voir PretService.preter()).
+     */
+    public Resultat preter(int idLivre,
+        int idMembre,
+        String datePret) throws SQLException {
+        this.livre.modifier(idLivre);
+        invalider(this.membre.getCache(),
+            idMembre);
+        CallableStatement stmtAppel = preparerAppel(SQL_PRETER);
+        stmtAppel.setInt(1,
+            idLivre);
+        stmtAppel.setInt(2,
+            idMembre);
+        stmtAppel.setDate(3,
+            Date.valueOf(datePret));
+        return appeler(stmtAppel,
+            4);
+    }
+
+    /**
+     * Renouvellement d'un pret (voir PretService.renouveler()).
+     */
+    public Resultat renouveler(int idLivre,
+        String datePret) throws SQLException {
+        this.livre.modifier(idLivre);
+        CallableStatement stmtAppel = preparerAppel(SQL_RENOUVELER);
+        stmtAppel.setInt(1,
+            idLivre);
+        stmtAppel.setDate(2,
+            Date.valueOf(datePret));
+        return appeler(stmtAppel,
+            3);
+    }
+
+    /**
+     * Retour d'un livre prêté (voir PretService.retourner()).
+     */
+    public Resultat retourner(int idLivre,
+        String dateRetour) throws SQLException {
+        this.livre.modifier(idLivre);
+        CallableStatement stmtAppel = preparerAppel(SQL_RETOURNER);
+        stmtAppel.setInt(1,
+            idLivre);
+        stmtAppel.setDate(2,
+            Date.valueOf(dateRetour));
+        Resultat resultat = appeler(stmtAppel,
+            3);
+        if(resultat.code == OK) {
+            invalider(this.membre.getCache(),
+                resultat.info1);
+        }
+        return resultat;
+    }
+
+    /**
+     * Réservation d'un livre (voir ReservationService.reserver()).
+     */
+    public Resultat reserver(int idReservation,
+        int idLivre,
+        int idMembre,
+        String dateReservation) throws SQLException {
+        invalider(this.reservation.getCache(),
+            idLivre);
+        CallableStatement stmtAppel = preparerAppel(SQL_RESERVER);
+        stmtAppel.setInt(1,
+            idReservation);
+        stmtAppel.setInt(2,
+            idLivre);
+        stmtAppel.setInt(3,
+            idMembre);
+        stmtAppel.setDate(4,
+            Date.valueOf(dateReservation));
+        return appeler(stmtAppel,
+            5);
+    }
+
+    /**
+     * Prise d'une réservation (voir ReservationService.prendreRes()).
+     */
+    public Resultat prendreRes(int idReservation,
+        String datePret) throws SQLException {
+        CallableStatement stmtAppel = preparerAppel(SQL_PRENDRE_RES);
+        stmtAppel.setInt(1,
+            idReservation);
+        stmtAppel.setDate(2,
+            Date.valueOf(datePret));
+        Resultat resultat = appeler(stmtAppel,
+            3);
+        if(resultat.code == OK) {
+            this.livre.modifier(resultat.info1);
+            invalider(this.membre.getCache(),
+                resultat.info2);
+            invalider(this.reservation.getCache(),
+                resultat.info1);
+        }
+        return resultat;
+    }
+
+    /**
+     * Annulation d'une réservation (voir ReservationService.annulerRes()).
+     */
+    public Resultat annulerRes(int idReservation) throws SQLException {
+        CallableStatement stmtAppel = preparerAppel(SQL_ANNULER_RES);
+        stmtAppel.setInt(1,
+            idReservation);
+        Resultat resultat = appeler(stmtAppel,
+            2);
+        if(resultat.code == OK) {
+            invalider(this.reservation.getCache(),
+                resultat.info1);
+        }
+        return resultat;
+    }
+
+    /**
+     * Exécution de l'appel et lecture du code et des deux identifiants
+     * retournés, à partir du paramètre premierOut.
+     */
+    private Resultat appeler(CallableStatement stmtAppel,
+        int premierOut) throws SQLException {
+
+        for(int i = premierOut; i < premierOut + 3; i++) {
+            stmtAppel.registerOutParameter(i,
+                Types.INTEGER);
+        }
+        executerAppel(stmtAppel);
+        Resultat resultat = new Resultat();
+        resultat.code = stmtAppel.getInt(premierOut);
+        resultat.info1 = stmtAppel.getInt(premierOut + 1);
+        resultat.info2 = stmtAppel.getInt(premierOut + 2);
+        return resultat;
+    }
+}
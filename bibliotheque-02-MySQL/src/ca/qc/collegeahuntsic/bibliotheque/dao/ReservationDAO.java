@@ -1,11 +1,18 @@
 
 package ca.qc.collegeahuntsic.bibliotheque.dao;
 
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
 import ca.qc.collegeahuntsic.bibliotheque.dto.ReservationDTO;
+import ca.qc.collegeahuntsic.bibliotheque.util.ConfigurationBibliotheque;
+import ca.qc.collegeahuntsic.bibliotheque.util.TableParId;
 
 /**
  * Permet d'effectuer les accès à la table reservation.
@@ -13,47 +20,139 @@ import ca.qc.collegeahuntsic.bibliotheque.dto.ReservationDTO;
  *
  * Cette classe g�re tous les accès à la table reservation.
  *
+ * La file des réservations de chaque livre (par date de réservation, puis
+ * par numéro) est gardée dans un CacheEntites si la configuration le
+ * demande (cacheEntites.taille). Elle est lue au complet à la première
+ * consultation du livre, puis getReservationLivre() et
+ * getReservationLivreMembre() y répondent sans accès à la BD. reserver() et
+ * annulerRes() retirent la file du livre, qui est relue au besoin.
+ *
  *</pre>
  */
 
-public class ReservationDAO {
+public class ReservationDAO extends DAO {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String SQL_EXISTE = "select idReservation, idLivre, idMembre, dateReservation "
+        + "from reservation where idReservation = ?";
+
+    private static final String SQL_EXISTE_POUR_MAJ = SQL_EXISTE
+        + " for update";
+
+    private static final String SQL_LISTE = "select idReservation, idLivre, idMembre, dateReservation "
+        + "from reservation where idReservation in (";
+
+    private static final String SQL_LISTE_FIN = ")";
+
+    private static final String SQL_EXISTE_LIVRE = "select idReservation, idLivre, idMembre, dateReservation "
+        + "from reservation where idLivre = ? "
+        + "order by dateReservation, idReservation";
+
+    private static final String SQL_LISTE_LIVRES = "select idReservation, idLivre, idMembre, dateReservation "
+        + "from reservation where idLivre in (";
+
+    private static final String SQL_LISTE_LIVRES_FIN = ") order by dateReservation, idReservation";
+
+    private static final String SQL_EXISTE_MEMBRE = "select idReservation, idLivre, idMembre, dateReservation "
+        + "from reservation where idMembre = ? ";
 
-    private PreparedStatement stmtExiste;
+    private static final String SQL_INSERT = "insert into reservation (idReservation, idlivre, idMembre, dateReservation) "
+        + "values (?,?,?,?)";
 
-    private PreparedStatement stmtExisteLivre;
+    private static final String SQL_DELETE = "delete from reservation where idReservation = ?";
 
-    private PreparedStatement stmtExisteMembre;
+    /**
+     * File des réservations d'un livre, par date de réservation puis par
+     * numéro. La file n'est jamais modifiée ; les réservations retournées
+     * sont des copies.
+     */
+    public static final class FileReservations {
+        private final List<ReservationDTO> reservations;
+
+        private final TableParId<ReservationDTO> parMembre;
+
+        private FileReservations(List<ReservationDTO> reservations) {
+            this.reservations = Collections.unmodifiableList(reservations);
+            this.parMembre = new TableParId<>(reservations.size());
+            for(ReservationDTO tupleReservation : reservations) {
+                this.parMembre.mettre(tupleReservation.idMembre,
+                    tupleReservation);
+            }
+        }
 
-    private PreparedStatement stmtInsert;
+        /**
+         * Première réservation de la file, ou null si elle est vide.
+         */
+        public ReservationDTO getPremiere() {
+            return this.reservations.isEmpty()
+                ? null
+                : copier(this.reservations.get(0));
+        }
+
+        /**
+         * Réservation du membre idMembre, ou null s'il n'en a pas.
+         */
+        public ReservationDTO getReservationMembre(int idMembre) {
+            ReservationDTO tupleReservation = this.parMembre.lire(idMembre);
+            return tupleReservation == null
+                ? null
+                : copier(tupleReservation);
+        }
 
-    private PreparedStatement stmtDelete;
+        /**
+         * Nombre de réservations de la file.
+         */
+        public int getNbReservations() {
+            return this.reservations.size();
+        }
+    }
 
-    private Connexion cx;
+    private final CacheEntites<FileReservations> cache;
 
     /**
-     * Creation d'une instance.
+     * Creation d'une instance. Les énoncés SQL sont précompilés dans la
+     * transaction du thread appelant, à leur première utilisation.
      */
-    public ReservationDAO(Connexion cx) throws SQLException {
+    public ReservationDAO(Connexion cx) {
 
-        this.cx = cx;
-        this.stmtExiste = cx.getConnection().prepareStatement("select idReservation, idLivre, idMembre, dateReservation "
-            + "from reservation where idReservation = ?");
-        this.stmtExisteLivre = cx.getConnection().prepareStatement("select idReservation, idLivre, idMembre, dateReservation "
-            + "from reservation where idLivre = ? "
-            + "order by dateReservation");
-        this.stmtExisteMembre = cx.getConnection().prepareStatement("select idReservation, idLivre, idMembre, dateReservation "
-            + "from reservation where idMembre = ? ");
-        this.stmtInsert = cx.getConnection().prepareStatement("insert into reservation (idReservation, idlivre, idMembre, dateReservation) "
-            + "values (?,?,?,str_to_date(?,'%Y-%m-%d'))");
-        this.stmtDelete = cx.getConnection().prepareStatement("delete from reservation where idReservation = ?");
+        this(cx,
+            new ConfigurationBibliotheque());
     }
 
     /**
-     * Retourner la connexion associée.
+     * Creation d'une instance dont le cache suit configuration.
      */
-    public Connexion getConnexion() {
+    public ReservationDAO(Connexion cx,
+        ConfigurationBibliotheque configuration) {
 
-        return this.cx;
+        super(cx);
+        this.cache = new CacheEntites<>("reservationsLivre",
+            configuration.getTailleCacheEntites(),
+            configuration.getDureeCacheEntites(),
+            file -> file,
+            cx.getMetriques());
+    }
+
+    /**
+     * Retourne le cache des files de réservations, par livre.
+     */
+    public CacheEntites<FileReservations> getCache() {
+
+        return this.cache;
+    }
+
+    /**
+     * Retourne les énoncés SQL utilisés, pour le préchauffage des connexions.
+     */
+    public List<String> getEnonces() {
+
+        return Arrays.asList(SQL_EXISTE,
+            SQL_EXISTE_POUR_MAJ,
+            SQL_EXISTE_LIVRE,
+            SQL_EXISTE_MEMBRE,
+            SQL_INSERT,
+            SQL_DELETE);
     }
 
     /**
@@ -61,12 +160,10 @@ public class ReservationDAO {
      */
     public boolean existe(int idReservation) throws SQLException {
 
-        this.stmtExiste.setInt(1,
+        PreparedStatement stmtExiste = preparer(SQL_EXISTE);
+        stmtExiste.setInt(1,
             idReservation);
-        ResultSet rset = this.stmtExiste.executeQuery();
-        boolean reservationExiste = rset.next();
-        rset.close();
-        return reservationExiste;
+        return existe(stmtExiste);
     }
 
     /**
@@ -74,20 +171,70 @@ public class ReservationDAO {
      */
     public ReservationDTO getReservation(int idReservation) throws SQLException {
 
-        this.stmtExiste.setInt(1,
+        return lireReservation(SQL_EXISTE,
             idReservation);
-        ResultSet rset = this.stmtExiste.executeQuery();
-        if(rset.next()) {
-            ReservationDTO tupleReservation = new ReservationDTO();
-            tupleReservation.idReservation = rset.getInt(1);
-            tupleReservation.idLivre = rset.getInt(2);
-            ;
-            tupleReservation.idMembre = rset.getInt(3);
-            tupleReservation.dateReservation = rset.getDate(4);
-            return tupleReservation;
-        } else {
-            return null;
-        }
+    }
+
+    /**
+     * Lecture des réservations ids, par listes d'identifiants (voir
+     * DAO.parcourirIds()).
+     *
+     * @return les réservations trouvées, par identifiant
+     */
+    public TableParId<ReservationDTO> getReservations(int[] ids) throws SQLException {
+
+        TableParId<ReservationDTO> reservations = new TableParId<>(ids.length);
+        parcourirIds(SQL_LISTE,
+            SQL_LISTE_FIN,
+            ids,
+            rset -> {
+                ReservationDTO tupleReservation = lireReservation(rset);
+                reservations.mettre(tupleReservation.idReservation,
+                    tupleReservation);
+            });
+        return reservations;
+    }
+
+    /**
+     * Lecture d'une reservation avec verrouillage de la ligne jusqu'à la fin
+     * de la transaction, avant sa suppression.
+     */
+    public ReservationDTO getReservationPourMaj(int idReservation) throws SQLException {
+
+        return lireReservation(SQL_EXISTE_POUR_MAJ,
+            idReservation);
+    }
+
+    private ReservationDTO lireReservation(String sql,
+        int idReservation) throws SQLException {
+
+        PreparedStatement stmtExiste = preparer(sql);
+        stmtExiste.setInt(1,
+            idReservation);
+        return lireUn(stmtExiste,
+            ReservationDAO::lireReservation);
+    }
+
+    private static ReservationDTO lireReservation(ResultSet rset) throws SQLException {
+
+        ReservationDTO tupleReservation = new ReservationDTO();
+        tupleReservation.idReservation = rset.getInt(1);
+        tupleReservation.idLivre = rset.getInt(2);
+        tupleReservation.idMembre = rset.getInt(3);
+        tupleReservation.dateReservation = rset.getDate(4);
+        return tupleReservation;
+    }
+
+    private static ReservationDTO copier(ReservationDTO tupleReservation) {
+
+        ReservationDTO copie = new ReservationDTO();
+        copie.idReservation = tupleReservation.idReservation;
+        copie.idLivre = tupleReservation.idLivre;
+        copie.idMembre = tupleReservation.idMembre;
+        copie.dateReservation = tupleReservation.dateReservation == null
+            ? null
+            : new Date(tupleReservation.dateReservation.getTime());
+        return copie;
     }
 
     /**
@@ -95,20 +242,81 @@ public class ReservationDAO {
      */
     public ReservationDTO getReservationLivre(int idLivre) throws SQLException {
 
-        this.stmtExisteLivre.setInt(1,
+        if(this.cache.isActif()) {
+            return getFileLivre(idLivre).getPremiere();
+        }
+        PreparedStatement stmtExisteLivre = preparer(SQL_EXISTE_LIVRE);
+        stmtExisteLivre.setInt(1,
             idLivre);
-        ResultSet rset = this.stmtExisteLivre.executeQuery();
-        if(rset.next()) {
-            ReservationDTO tupleReservation = new ReservationDTO();
-            tupleReservation.idReservation = rset.getInt(1);
-            tupleReservation.idLivre = rset.getInt(2);
-            ;
-            tupleReservation.idMembre = rset.getInt(3);
-            tupleReservation.dateReservation = rset.getDate(4);
-            return tupleReservation;
-        } else {
-            return null;
+        return lireUn(stmtExisteLivre,
+            ReservationDAO::lireReservation);
+    }
+
+    /**
+     * Lecture de la reservation d'un livre par un membre.
+     */
+    public ReservationDTO getReservationLivreMembre(int idLivre,
+        int idMembre) throws SQLException {
+
+        return getFileLivre(idLivre).getReservationMembre(idMembre);
+    }
+
+    /**
+     * Lecture de la file des réservations d'un livre, dans le cache ou, à
+     * défaut, dans la BD.
+     */
+    public FileReservations getFileLivre(final int idLivre) throws SQLException {
+
+        return lireAvecCache(this.cache,
+            idLivre,
+            () -> {
+                PreparedStatement stmtExisteLivre = preparer(SQL_EXISTE_LIVRE);
+                stmtExisteLivre.setInt(1,
+                    idLivre);
+                List<ReservationDTO> reservations = new ArrayList<>();
+                parcourir(stmtExisteLivre,
+                    rset -> reservations.add(lireReservation(rset)));
+                return new FileReservations(reservations);
+            });
+    }
+
+    /**
+     * Lecture des files de réservations des livres ids, dans le cache ou, à
+     * défaut, par listes d'identifiants (voir DAO.parcourirIds()).
+     *
+     * @return la file de chaque livre, vide s'il n'a pas de réservation
+     */
+    public TableParId<FileReservations> getReservationsLivres(int[] ids) throws SQLException {
+
+        TableParId<FileReservations> files = new TableParId<>(ids.length);
+        int[] absents = lireCache(this.cache,
+            ids,
+            files);
+        TableParId<List<ReservationDTO>> reservations = new TableParId<>(absents.length);
+        for(int idLivre : absents) {
+            reservations.mettre(idLivre,
+                new ArrayList<>());
+        }
+        long generation = this.cache.getGeneration();
+        parcourirIds(SQL_LISTE_LIVRES,
+            SQL_LISTE_LIVRES_FIN,
+            absents,
+            rset -> {
+                ReservationDTO tupleReservation = lireReservation(rset);
+                reservations.lire(tupleReservation.idLivre).add(tupleReservation);
+            });
+        for(int idLivre : reservations.getCles()) {
+            FileReservations fileLivre = new FileReservations(reservations.lire(idLivre));
+            files.mettre(idLivre,
+                fileLivre);
+            if(this.cache.isActif()) {
+                cacherAuCommit(this.cache,
+                    idLivre,
+                    fileLivre,
+                    generation);
+            }
         }
+        return files;
     }
 
     /**
@@ -116,46 +324,66 @@ public class ReservationDAO {
      */
     public ReservationDTO getReservationMembre(int idMembre) throws SQLException {
 
-        this.stmtExisteMembre.setInt(1,
+        PreparedStatement stmtExisteMembre = preparer(SQL_EXISTE_MEMBRE);
+        stmtExisteMembre.setInt(1,
             idMembre);
-        ResultSet rset = this.stmtExisteMembre.executeQuery();
-        if(rset.next()) {
-            ReservationDTO tupleReservation = new ReservationDTO();
-            tupleReservation.idReservation = rset.getInt(1);
-            tupleReservation.idLivre = rset.getInt(2);
-            ;
-            tupleReservation.idMembre = rset.getInt(3);
-            tupleReservation.dateReservation = rset.getDate(4);
-            return tupleReservation;
-        } else {
-            return null;
-        }
+        return lireUn(stmtExisteMembre,
+            ReservationDAO::lireReservation);
     }
 
     /**
      * Réservation d'un livre.
+     *
+     * @return false si la réservation existe déjà, ou si le membre a déjà
+     *         réservé le livre
      */
-    public void reserver(int idReservation,
+    public boolean reserver(int idReservation,
         int idLivre,
         int idMembre,
         String dateReservation) throws SQLException {
-        this.stmtInsert.setInt(1,
+        invalider(this.cache,
+            idLivre);
+        PreparedStatement stmtInsert = preparer(SQL_INSERT);
+        stmtInsert.setInt(1,
             idReservation);
-        this.stmtInsert.setInt(2,
+        stmtInsert.setInt(2,
             idLivre);
-        this.stmtInsert.setInt(3,
+        stmtInsert.setInt(3,
             idMembre);
-        this.stmtInsert.setString(4,
-            dateReservation);
-        this.stmtInsert.executeUpdate();
+        stmtInsert.setDate(4,
+            Date.valueOf(dateReservation));
+        return insererSiNouveau(stmtInsert);
     }
 
     /**
-     * Suppression d'une reservation.
+     * Suppression d'une reservation. Si les files de réservations sont en
+     * cache, la réservation est d'abord lue pour connaître son livre.
      */
     public int annulerRes(int idReservation) throws SQLException {
-        this.stmtDelete.setInt(1,
+        if(this.cache.isActif()) {
+            ReservationDTO tupleReservation = getReservation(idReservation);
+            if(tupleReservation == null) {
+                return 0;
+            }
+            return annulerRes(idReservation,
+                tupleReservation.idLivre);
+        }
+        PreparedStatement stmtDelete = preparer(SQL_DELETE);
+        stmtDelete.setInt(1,
+            idReservation);
+        return executerMaj(stmtDelete);
+    }
+
+    /**
+     * Suppression d'une reservation du livre idLivre.
+     */
+    public int annulerRes(int idReservation,
+        int idLivre) throws SQLException {
+        invalider(this.cache,
+            idLivre);
+        PreparedStatement stmtDelete = preparer(SQL_DELETE);
+        stmtDelete.setInt(1,
             idReservation);
-        return this.stmtDelete.executeUpdate();
+        return executerMaj(stmtDelete);
     }
 }
@@ -0,0 +1,181 @@
+package ca.qc.collegeahuntsic.bibliotheque.db;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import ca.qc.collegeahuntsic.bibliotheque.metrique.RegistreMetriques;
+import ca.qc.collegeahuntsic.bibliotheque.metrique.RegistreNul;
+
+/**
+ * Cache LRU des énoncés précompilés d'une connexion physique.
+ *
+ * <pre>
+ * Les énoncés sont indexés par leur texte SQL et survivent aux transactions :
+ * une connexion du pool réutilise ainsi les plans précompilés par le serveur
+ * d'un emprunt à l'autre. Au-delà de la taille maximale, l'énoncé le moins
+ * récemment utilisé est fermé. Le fetchSize et le délai d'exécution
+ * configurés sont appliqués à chaque énoncé précompilé. Un appel de
+ * procédure stockée (texte {call ...}) est précompilé en CallableStatement.
+ *
+ * Sauf avec un RegistreNul, les DAO enregistrent la durée de chaque
+ * exécution d'un énoncé (mesurer()) sous le nom sql:texte de l'énoncé ; les
+ * énoncés du pilote sont utilisés tels quels, sans enveloppe.
+ *
+ * Le cache n'est utilisé que par le thread qui a emprunté la connexion.
+ * </pre>
+ */
+public class CacheEnonces {
+
+    private final Connection conn;
+
+    private final ConfigurationConnexion configuration;
+
+    private final RegistreMetriques metriques;
+
+    private final Map<String, PreparedStatement> enonces;
+
+    /* Nom de mesure de chaque énoncé du cache, null avec un RegistreNul */
+    private final Map<PreparedStatement, String> noms;
+
+    private final AtomicLong nbSucces = new AtomicLong();
+
+    private final AtomicLong nbEchecs = new AtomicLong();
+
+    /**
+     * Creation d'un cache pour conn, d'au plus
+     * configuration.getTailleCacheEnonces() énoncés, dont les exécutions
+     * sont mesurées dans metriques.
+     */
+    public CacheEnonces(Connection conn,
+        ConfigurationConnexion configuration,
+        RegistreMetriques metriques) {
+        final int taille = configuration.getTailleCacheEnonces();
+        this.conn = conn;
+        this.configuration = configuration;
+        this.metriques = metriques;
+        this.noms = metriques instanceof RegistreNul
+            ? null
+            : new IdentityHashMap<PreparedStatement, String>();
+        this.enonces = new LinkedHashMap<String, PreparedStatement>(16,
+            0.75f,
+            true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> plusAncien) {
+                if(size() > taille) {
+                    fermer(plusAncien.getValue());
+                    if(CacheEnonces.this.noms != null) {
+                        CacheEnonces.this.noms.remove(plusAncien.getValue());
+                    }
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Retourne l'énoncé précompilé pour sql, en le précompilant s'il n'est
+     * pas dans le cache.
+     */
+    public PreparedStatement preparer(String sql) throws SQLException {
+        PreparedStatement stmt = this.enonces.get(sql);
+        if(stmt != null) {
+            this.nbSucces.incrementAndGet();
+            return stmt;
+        }
+        this.nbEchecs.incrementAndGet();
+        stmt = estAppel(sql)
+            ? this.conn.prepareCall(sql)
+            : this.conn.prepareStatement(sql);
+        if(this.configuration.getFetchSize() > 0) {
+            stmt.setFetchSize(this.configuration.getFetchSize());
+        }
+        if(this.configuration.getDelaiEnonce() > 0) {
+            stmt.setQueryTimeout(this.configuration.getDelaiEnonce());
+        }
+        if(this.noms != null) {
+            this.noms.put(stmt,
+                RegistreMetriques.PREFIXE_SQL
+                    + sql);
+        }
+        this.enonces.put(sql,
+            stmt);
+        return stmt;
+    }
+
+    /**
+     * Retourne l'appel précompilé pour sql, de la forme {call procedure(...)}.
+     */
+    public CallableStatement preparerAppel(String sql) throws SQLException {
+        if(!estAppel(sql)) {
+            throw new SQLException("Appel de procédure attendu : "
+                + sql);
+        }
+        return (CallableStatement) preparer(sql);
+    }
+
+    /**
+     * Fermeture de tous les énoncés du cache.
+     */
+    public void fermer() {
+        for(PreparedStatement stmt : this.enonces.values()) {
+            fermer(stmt);
+        }
+        this.enonces.clear();
+        if(this.noms != null) {
+            this.noms.clear();
+        }
+    }
+
+    /**
+     * Enregistrement de la durée d'une exécution de stmt, débutée à debut
+     * (System.nanoTime()), sous le nom de son énoncé. Sans effet avec un
+     * RegistreNul ou pour un énoncé qui n'est pas dans le cache.
+     */
+    public void mesurer(PreparedStatement stmt,
+        long debut) {
+        if(this.noms == null) {
+            return;
+        }
+        String nom = this.noms.get(stmt);
+        if(nom != null) {
+            this.metriques.enregistrer(nom,
+                System.nanoTime()
+                    - debut);
+        }
+    }
+
+    /**
+     * Nombre d'énoncés trouvés dans le cache.
+     */
+    public long getNbSucces() {
+        return this.nbSucces.get();
+    }
+
+    /**
+     * Nombre d'énoncés qui ont dû être précompilés.
+     */
+    public long getNbEchecs() {
+        return this.nbEchecs.get();
+    }
+
+    private static boolean estAppel(String sql) {
+        return sql.startsWith("{call ")
+            || sql.startsWith("{? = call ");
+    }
+
+    private static void fermer(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch(SQLException e) {
+            // l'énoncé n'est plus utilisable de toute façon
+        }
+    }
+}
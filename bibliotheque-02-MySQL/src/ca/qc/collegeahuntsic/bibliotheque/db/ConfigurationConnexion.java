@@ -0,0 +1,792 @@
+package ca.qc.collegeahuntsic.bibliotheque.db;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Paramètres d'ouverture des connexions gérées par {@link Connexion}.
+ *
+ * <pre>
+ * La configuration peut être lue d'un fichier de propriétés (voir charger())
+ * afin d'ajuster une installation sans recompiler :
+ *
+ *   url, pilote, utilisateur, motDePasse : accès à la BD ; utilisateur et
+ *     motDePasse peuvent être donnés hors du fichier, par les propriétés
+ *     système bibliotheque.utilisateur et bibliotheque.motDePasse ou les
+ *     variables d'environnement BIBLIOTHEQUE_UTILISATEUR et
+ *     BIBLIOTHEQUE_MOT_DE_PASSE, qui ont priorité sur le fichier
+ *   isolation : READ_COMMITTED (défaut), SERIALIZABLE, REPEATABLE_READ ou
+ *     READ_UNCOMMITTED ; les services verrouillent les lignes qu'ils
+ *     modifient, read committed suffit donc à l'intégrité des prêts
+ *   fetchSize : nombre de lignes lues à la fois par les requêtes
+ *   fetchSizeListes : nombre de lignes lues à la fois par les requêtes de
+ *     liste (fetchSize si absent)
+ *   lectureEnContinu : lit les listes une ligne à la fois (pilote MySQL
+ *     sans useCursorFetch), plutôt que de conserver tout le résultat
+ *   delaiEnonce : délai maximal (s) d'exécution d'un énoncé
+ *   delaiConnexion, delaiSocket : délais (ms) d'ouverture et de lecture réseau
+ *   rewriteBatchedStatements, useCursorFetch : propriétés du pilote MySQL
+ *   pilote.* : toute autre propriété transmise telle quelle au pilote
+ *   creerTables : crée les tables à l'ouverture (BD embarquée en mémoire)
+ *   procedures : les transactions de prêt et de réservation appellent les
+ *     procédures stockées (voir ProceduresDAO), installées au préalable
+ *     avec MySQL-procedures.sql ou Oracle-procedures.sql
+ *   repliques : url des répliques en lecture, séparées par des virgules ;
+ *     repliques.utilisateur et repliques.motDePasse si différents de la BD
+ *     principale. Chaque réplique a son propre pool, de mêmes paramètres.
+ *
+ * Les paramètres du pool de connexions (préfixe pool.) :
+ *   - actif : ouvre un pool plutôt qu'une connexion unique
+ *   - tailleMin, tailleMax : nombre de connexions physiques conservées
+ *   - delaiAcquisition : attente maximale (ms) pour obtenir une connexion
+ *   - delaiInactivite : durée (ms) après laquelle une connexion inutilisée
+ *     au-delà de tailleMin est fermée
+ *   - validationEmprunt : vérifie la connexion (isValid) avant de la prêter
+ *   - delaiValidation : délai (s) accordé à la validation
+ *   - delaiFuite : durée (ms) d'emprunt au-delà de laquelle une fuite
+ *     est signalée (0 pour désactiver)
+ *
+ * Les paramètres de reprise des transactions en conflit (préfixe reprises.,
+ * voir ExecuteurTransaction) :
+ *   - max : nombre maximal de reprises d'une transaction
+ *   - delaiBase, delaiMax : attente (ms) avant la première reprise, doublée
+ *     à chaque reprise jusqu'à delaiMax
+ *
+ * et ceux des énoncés précompilés :
+ *   - tailleCacheEnonces : nombre d'énoncés conservés par connexion ; il
+ *     doit contenir tous les énoncés des DAO et des interrogations, les
+ *     appels de procédure et les 3 formes de liste in (...) de chaque
+ *     lecture par identifiants (une cinquantaine en tout), sinon les
+ *     énoncés sont sans cesse refermés et précompilés de nouveau
+ *   - cachePrepStmts, useServerPrepStmts : propriétés du pilote MySQL
+ *     (cache d'énoncés du pilote et précompilation sur le serveur)
+ *   - prechauffage : au démarrage, précompile les énoncés des DAO sur toutes
+ *     les connexions ouvertes, en parallèle (voir Connexion.prechauffer()) ;
+ *     sinon chaque énoncé est précompilé à sa première utilisation
+ *
+ * Les mesures (voir RegistreMetriques) :
+ *   - metriques : memoire (défaut), aucun, ou nom d'une classe qui
+ *     implémente RegistreMetriques
+ *   - metriques.jmx : inscrit le MBean Metriques auprès du serveur JMX
+ *
+ * Les paramètres de l'application lus du même fichier (lots, groupes,
+ * rejeu, affichage, caches) sont ceux de ConfigurationBibliotheque.
+ * </pre>
+ */
+public class ConfigurationConnexion implements Cloneable {
+
+    private String url;
+
+    private String pilote;
+
+    private String utilisateur;
+
+    private String motDePasse;
+
+    private int isolation = Connection.TRANSACTION_READ_COMMITTED;
+
+    private int fetchSize;
+
+    private int delaiEnonce;
+
+    private int delaiConnexion;
+
+    private int delaiSocket;
+
+    private boolean rewriteBatchedStatements;
+
+    private boolean useCursorFetch;
+
+    private int fetchSizeListes;
+
+    private boolean lectureEnContinu;
+
+    private Properties proprietesPilote = new Properties();
+
+    private boolean creerTables;
+
+    private List<ConfigurationConnexion> repliques = new ArrayList<>();
+
+    private boolean pool;
+
+    private int tailleMin = 1;
+
+    private int tailleMax = 10;
+
+    private long delaiAcquisition = 30000;
+
+    private long delaiInactivite = 600000;
+
+    private boolean validationEmprunt = true;
+
+    private int delaiValidation = 2;
+
+    private long delaiFuite = 60000;
+
+    private int nbMaxReprises = 5;
+
+    private long delaiBaseReprise = 10;
+
+    private long delaiMaxReprise = 1000;
+
+    private int tailleCacheEnonces = 64;
+
+    private boolean prechauffage;
+
+    private boolean procedures;
+
+    private String metriques = "memoire";
+
+    private boolean metriquesJmx;
+
+    private boolean cachePrepStmts;
+
+    private boolean useServerPrepStmts;
+
+    /**
+     * Configuration d'un des serveurs historiques ("local" : MySQL installé
+     * localement, "distant" : Oracle du Collège Ahuntsic).
+     */
+    public static ConfigurationConnexion pourServeur(String serveur,
+        String bd,
+        String user,
+        String pass) {
+        ConfigurationConnexion configuration = new ConfigurationConnexion();
+        configuration.utiliserServeur(serveur,
+            bd,
+            user,
+            pass);
+        return configuration;
+    }
+
+    /**
+     * Lecture d'une configuration dans un fichier de propriétés. Le fichier
+     * est cherché dans le système de fichiers, puis dans le classpath.
+     */
+    public static ConfigurationConnexion charger(String fichier) throws IOException {
+        return depuisProprietes(lireProprietes(fichier));
+    }
+
+    /**
+     * Lecture des propriétés de fichier : un chemin, sinon une ressource du
+     * classpath. Les autres configurations lues du même fichier (voir
+     * ConfigurationBibliotheque) passent aussi par ici.
+     */
+    public static Properties lireProprietes(String fichier) throws IOException {
+        Properties proprietes = new Properties();
+        if(Files.exists(Paths.get(fichier))) {
+            try(
+                InputStream source = new FileInputStream(fichier)) {
+                proprietes.load(source);
+            }
+        } else {
+            try(
+                InputStream source = ConfigurationConnexion.class.getResourceAsStream("/"
+                    + fichier)) {
+                if(source == null) {
+                    throw new IOException("Fichier de configuration introuvable : "
+                        + fichier);
+                }
+                proprietes.load(source);
+            }
+        }
+        return proprietes;
+    }
+
+    /**
+     * Construction d'une configuration à partir de propriétés. Les propriétés
+     * absentes gardent leur valeur par défaut.
+     */
+    public static ConfigurationConnexion depuisProprietes(Properties p) {
+        ConfigurationConnexion c = new ConfigurationConnexion();
+        c.url = p.getProperty("url");
+        c.pilote = p.getProperty("pilote");
+        c.utilisateur = acces(p,
+            "utilisateur",
+            "BIBLIOTHEQUE_UTILISATEUR");
+        c.motDePasse = acces(p,
+            "motDePasse",
+            "BIBLIOTHEQUE_MOT_DE_PASSE");
+        if(p.getProperty("isolation") != null) {
+            c.isolation = isolationDepuisNom(p.getProperty("isolation"));
+        }
+        c.fetchSize = entier(p,
+            "fetchSize",
+            c.fetchSize);
+        c.delaiEnonce = entier(p,
+            "delaiEnonce",
+            c.delaiEnonce);
+        c.delaiConnexion = entier(p,
+            "delaiConnexion",
+            c.delaiConnexion);
+        c.delaiSocket = entier(p,
+            "delaiSocket",
+            c.delaiSocket);
+        c.rewriteBatchedStatements = booleen(p,
+            "rewriteBatchedStatements",
+            c.rewriteBatchedStatements);
+        c.useCursorFetch = booleen(p,
+            "useCursorFetch",
+            c.useCursorFetch);
+        c.fetchSizeListes = entier(p,
+            "fetchSizeListes",
+            c.fetchSizeListes);
+        c.lectureEnContinu = booleen(p,
+            "lectureEnContinu",
+            c.lectureEnContinu);
+        c.creerTables = booleen(p,
+            "creerTables",
+            c.creerTables);
+        c.cachePrepStmts = booleen(p,
+            "cachePrepStmts",
+            c.cachePrepStmts);
+        c.useServerPrepStmts = booleen(p,
+            "useServerPrepStmts",
+            c.useServerPrepStmts);
+        c.tailleCacheEnonces = entier(p,
+            "tailleCacheEnonces",
+            c.tailleCacheEnonces);
+        c.prechauffage = booleen(p,
+            "prechauffage",
+            c.prechauffage);
+        c.procedures = booleen(p,
+            "procedures",
+            c.procedures);
+        c.metriques = p.getProperty("metriques",
+            c.metriques).trim();
+        c.metriquesJmx = booleen(p,
+            "metriques.jmx",
+            c.metriquesJmx);
+        c.pool = booleen(p,
+            "pool.actif",
+            c.pool);
+        c.tailleMin = entier(p,
+            "pool.tailleMin",
+            c.tailleMin);
+        c.tailleMax = entier(p,
+            "pool.tailleMax",
+            c.tailleMax);
+        c.delaiAcquisition = entierLong(p,
+            "pool.delaiAcquisition",
+            c.delaiAcquisition);
+        c.delaiInactivite = entierLong(p,
+            "pool.delaiInactivite",
+            c.delaiInactivite);
+        c.validationEmprunt = booleen(p,
+            "pool.validationEmprunt",
+            c.validationEmprunt);
+        c.delaiValidation = entier(p,
+            "pool.delaiValidation",
+            c.delaiValidation);
+        c.delaiFuite = entierLong(p,
+            "pool.delaiFuite",
+            c.delaiFuite);
+        c.nbMaxReprises = entier(p,
+            "reprises.max",
+            c.nbMaxReprises);
+        c.delaiBaseReprise = entierLong(p,
+            "reprises.delaiBase",
+            c.delaiBaseReprise);
+        c.delaiMaxReprise = entierLong(p,
+            "reprises.delaiMax",
+            c.delaiMaxReprise);
+        for(String cle : p.stringPropertyNames()) {
+            if(cle.startsWith("pilote.")) {
+                c.proprietesPilote.setProperty(cle.substring("pilote.".length()),
+                    p.getProperty(cle));
+            }
+        }
+        if(p.getProperty("repliques") != null) {
+            for(String urlReplique : p.getProperty("repliques").split(",")) {
+                if(!urlReplique.trim().isEmpty()) {
+                    c.ajouterReplique(urlReplique.trim(),
+                        p.getProperty("repliques.utilisateur",
+                            c.utilisateur),
+                        p.getProperty("repliques.motDePasse",
+                            c.motDePasse));
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Remplace l'url, le pilote et l'usager par ceux d'un des serveurs
+     * historiques ("local" ou "distant").
+     */
+    public void utiliserServeur(String serveur,
+        String bd,
+        String user,
+        String pass) {
+        if(serveur.equals("local")) {
+            this.url = "jdbc:mysql://localhost:3306/"
+                + bd;
+            this.pilote = "com.mysql.jdbc.Driver";
+        } else if(serveur.equals("distant")) {
+            this.url = "jdbc:oracle:thin:@collegeahuntsic.info:1521:"
+                + bd;
+            this.pilote = "oracle.jdbc.driver.OracleDriver";
+        } else {
+            throw new IllegalArgumentException("Serveur non supporté : "
+                + serveur);
+        }
+        this.utilisateur = user;
+        this.motDePasse = pass;
+    }
+
+    /**
+     * Ajout d'une réplique en lecture. Elle reprend les paramètres de cette
+     * configuration (pilote, réglages, pool), sauf l'url et l'usager.
+     */
+    public ConfigurationConnexion ajouterReplique(String urlReplique,
+        String utilisateurReplique,
+        String motDePasseReplique) {
+        ConfigurationConnexion replique = copier();
+        replique.url = urlReplique;
+        replique.utilisateur = utilisateurReplique;
+        replique.motDePasse = motDePasseReplique;
+        replique.pool = true;
+        replique.creerTables = false;
+        replique.repliques = new ArrayList<>();
+        this.repliques.add(replique);
+        return replique;
+    }
+
+    /**
+     * Copie de cette configuration.
+     */
+    public ConfigurationConnexion copier() {
+        try {
+            ConfigurationConnexion copie = (ConfigurationConnexion) super.clone();
+            copie.proprietesPilote = (Properties) this.proprietesPilote.clone();
+            copie.repliques = new ArrayList<>(this.repliques);
+            return copie;
+        } catch(CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public List<ConfigurationConnexion> getRepliques() {
+        return this.repliques;
+    }
+
+    /**
+     * Propriétés transmises au pilote à l'ouverture d'une connexion.
+     */
+    public Properties getProprietesConnexion() {
+        Properties proprietes = new Properties();
+        if(this.utilisateur != null) {
+            proprietes.setProperty("user",
+                this.utilisateur);
+        }
+        if(this.motDePasse != null) {
+            proprietes.setProperty("password",
+                this.motDePasse);
+        }
+        if(estMySQL()) {
+            if(this.cachePrepStmts) {
+                proprietes.setProperty("cachePrepStmts",
+                    "true");
+                proprietes.setProperty("prepStmtCacheSize",
+                    String.valueOf(this.tailleCacheEnonces));
+            }
+            if(this.useServerPrepStmts) {
+                proprietes.setProperty("useServerPrepStmts",
+                    "true");
+            }
+            if(this.rewriteBatchedStatements) {
+                proprietes.setProperty("rewriteBatchedStatements",
+                    "true");
+            }
+            if(this.useCursorFetch) {
+                proprietes.setProperty("useCursorFetch",
+                    "true");
+                if(this.fetchSize > 0) {
+                    proprietes.setProperty("defaultFetchSize",
+                        String.valueOf(this.fetchSize));
+                }
+            }
+            if(this.delaiConnexion > 0) {
+                proprietes.setProperty("connectTimeout",
+                    String.valueOf(this.delaiConnexion));
+            }
+            if(this.delaiSocket > 0) {
+                proprietes.setProperty("socketTimeout",
+                    String.valueOf(this.delaiSocket));
+            }
+        } else if(this.url != null
+            && this.url.startsWith("jdbc:oracle:")) {
+            if(this.fetchSize > 0) {
+                proprietes.setProperty("defaultRowPrefetch",
+                    String.valueOf(this.fetchSize));
+            }
+            if(this.delaiConnexion > 0) {
+                proprietes.setProperty("oracle.net.CONNECT_TIMEOUT",
+                    String.valueOf(this.delaiConnexion));
+            }
+            if(this.delaiSocket > 0) {
+                proprietes.setProperty("oracle.jdbc.ReadTimeout",
+                    String.valueOf(this.delaiSocket));
+            }
+        }
+        proprietes.putAll(this.proprietesPilote);
+        return proprietes;
+    }
+
+    /**
+     * Nom d'un niveau d'isolation de java.sql.Connection.
+     */
+    public static String nomIsolation(int isolation) {
+        switch(isolation) {
+            case Connection.TRANSACTION_SERIALIZABLE:
+                return "SERIALIZABLE";
+            case Connection.TRANSACTION_REPEATABLE_READ:
+                return "REPEATABLE_READ";
+            case Connection.TRANSACTION_READ_COMMITTED:
+                return "READ_COMMITTED";
+            case Connection.TRANSACTION_READ_UNCOMMITTED:
+                return "READ_UNCOMMITTED";
+            default:
+                return "NONE";
+        }
+    }
+
+    private static int isolationDepuisNom(String nom) {
+        switch(nom.trim().toUpperCase()) {
+            case "SERIALIZABLE":
+                return Connection.TRANSACTION_SERIALIZABLE;
+            case "REPEATABLE_READ":
+                return Connection.TRANSACTION_REPEATABLE_READ;
+            case "READ_COMMITTED":
+                return Connection.TRANSACTION_READ_COMMITTED;
+            case "READ_UNCOMMITTED":
+                return Connection.TRANSACTION_READ_UNCOMMITTED;
+            default:
+                throw new IllegalArgumentException("Niveau d'isolation inconnu : "
+                    + nom);
+        }
+    }
+
+    /**
+     * Valeur d'un paramètre d'accès à la BD : propriété système
+     * bibliotheque.cle, sinon variable d'environnement variable, sinon
+     * propriété cle de p.
+     */
+    private static String acces(Properties p,
+        String cle,
+        String variable) {
+        String valeur = System.getProperty("bibliotheque."
+            + cle);
+        if(valeur == null) {
+            valeur = System.getenv(variable);
+        }
+        return valeur == null
+            ? p.getProperty(cle)
+            : valeur;
+    }
+
+    private static int entier(Properties p,
+        String cle,
+        int defaut) {
+        String valeur = p.getProperty(cle);
+        return valeur == null
+            ? defaut
+            : Integer.parseInt(valeur.trim());
+    }
+
+    private static long entierLong(Properties p,
+        String cle,
+        long defaut) {
+        String valeur = p.getProperty(cle);
+        return valeur == null
+            ? defaut
+            : Long.parseLong(valeur.trim());
+    }
+
+    private static boolean booleen(Properties p,
+        String cle,
+        boolean defaut) {
+        String valeur = p.getProperty(cle);
+        return valeur == null
+            ? defaut
+            : Boolean.parseBoolean(valeur.trim());
+    }
+
+    public String getUrl() {
+        return this.url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getPilote() {
+        return this.pilote;
+    }
+
+    public void setPilote(String pilote) {
+        this.pilote = pilote;
+    }
+
+    public String getUtilisateur() {
+        return this.utilisateur;
+    }
+
+    public void setUtilisateur(String utilisateur) {
+        this.utilisateur = utilisateur;
+    }
+
+    public String getMotDePasse() {
+        return this.motDePasse;
+    }
+
+    public void setMotDePasse(String motDePasse) {
+        this.motDePasse = motDePasse;
+    }
+
+    /**
+     * Niveau d'isolation demandé (constante de java.sql.Connection). Si le
+     * serveur ne le supporte pas, son niveau par défaut est conservé.
+     */
+    public int getIsolation() {
+        return this.isolation;
+    }
+
+    public void setIsolation(int isolation) {
+        this.isolation = isolation;
+    }
+
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public int getDelaiEnonce() {
+        return this.delaiEnonce;
+    }
+
+    public void setDelaiEnonce(int delaiEnonce) {
+        this.delaiEnonce = delaiEnonce;
+    }
+
+    public int getDelaiConnexion() {
+        return this.delaiConnexion;
+    }
+
+    public void setDelaiConnexion(int delaiConnexion) {
+        this.delaiConnexion = delaiConnexion;
+    }
+
+    public int getDelaiSocket() {
+        return this.delaiSocket;
+    }
+
+    public void setDelaiSocket(int delaiSocket) {
+        this.delaiSocket = delaiSocket;
+    }
+
+    public boolean isRewriteBatchedStatements() {
+        return this.rewriteBatchedStatements;
+    }
+
+    public void setRewriteBatchedStatements(boolean rewriteBatchedStatements) {
+        this.rewriteBatchedStatements = rewriteBatchedStatements;
+    }
+
+    public boolean isUseCursorFetch() {
+        return this.useCursorFetch;
+    }
+
+    public void setUseCursorFetch(boolean useCursorFetch) {
+        this.useCursorFetch = useCursorFetch;
+    }
+
+    public int getFetchSizeListes() {
+        return this.fetchSizeListes;
+    }
+
+    public void setFetchSizeListes(int fetchSizeListes) {
+        this.fetchSizeListes = fetchSizeListes;
+    }
+
+    public boolean isLectureEnContinu() {
+        return this.lectureEnContinu;
+    }
+
+    public void setLectureEnContinu(boolean lectureEnContinu) {
+        this.lectureEnContinu = lectureEnContinu;
+    }
+
+    /**
+     * Vérifie si l'url désigne une BD MySQL.
+     */
+    public boolean estMySQL() {
+        return this.url != null
+            && this.url.startsWith("jdbc:mysql:");
+    }
+
+    public boolean isCreerTables() {
+        return this.creerTables;
+    }
+
+    public void setCreerTables(boolean creerTables) {
+        this.creerTables = creerTables;
+    }
+
+    public boolean isPool() {
+        return this.pool;
+    }
+
+    public void setPool(boolean pool) {
+        this.pool = pool;
+    }
+
+    public int getTailleMin() {
+        return this.tailleMin;
+    }
+
+    public void setTailleMin(int tailleMin) {
+        this.tailleMin = tailleMin;
+    }
+
+    public int getTailleMax() {
+        return this.tailleMax;
+    }
+
+    public void setTailleMax(int tailleMax) {
+        this.tailleMax = tailleMax;
+    }
+
+    public long getDelaiAcquisition() {
+        return this.delaiAcquisition;
+    }
+
+    public void setDelaiAcquisition(long delaiAcquisition) {
+        this.delaiAcquisition = delaiAcquisition;
+    }
+
+    public long getDelaiInactivite() {
+        return this.delaiInactivite;
+    }
+
+    public void setDelaiInactivite(long delaiInactivite) {
+        this.delaiInactivite = delaiInactivite;
+    }
+
+    public boolean isValidationEmprunt() {
+        return this.validationEmprunt;
+    }
+
+    public void setValidationEmprunt(boolean validationEmprunt) {
+        this.validationEmprunt = validationEmprunt;
+    }
+
+    /**
+     * Délai (en secondes) accordé à Connection.isValid() lors de la validation.
+     */
+    public int getDelaiValidation() {
+        return this.delaiValidation;
+    }
+
+    public void setDelaiValidation(int delaiValidation) {
+        this.delaiValidation = delaiValidation;
+    }
+
+    public long getDelaiFuite() {
+        return this.delaiFuite;
+    }
+
+    public void setDelaiFuite(long delaiFuite) {
+        this.delaiFuite = delaiFuite;
+    }
+
+    public int getNbMaxReprises() {
+        return this.nbMaxReprises;
+    }
+
+    public void setNbMaxReprises(int nbMaxReprises) {
+        this.nbMaxReprises = nbMaxReprises;
+    }
+
+    public long getDelaiBaseReprise() {
+        return this.delaiBaseReprise;
+    }
+
+    public void setDelaiBaseReprise(long delaiBaseReprise) {
+        this.delaiBaseReprise = delaiBaseReprise;
+    }
+
+    public long getDelaiMaxReprise() {
+        return this.delaiMaxReprise;
+    }
+
+    public void setDelaiMaxReprise(long delaiMaxReprise) {
+        this.delaiMaxReprise = delaiMaxReprise;
+    }
+
+    public boolean isPrechauffage() {
+        return this.prechauffage;
+    }
+
+    public void setPrechauffage(boolean prechauffage) {
+        this.prechauffage = prechauffage;
+    }
+
+    public boolean isProcedures() {
+        return this.procedures;
+    }
+
+    public void setProcedures(boolean procedures) {
+        this.procedures = procedures;
+    }
+
+    public String getMetriques() {
+        return this.metriques;
+    }
+
+    public void setMetriques(String metriques) {
+        this.metriques = metriques;
+    }
+
+    public boolean isMetriquesJmx() {
+        return this.metriquesJmx;
+    }
+
+    public void setMetriquesJmx(boolean metriquesJmx) {
+        this.metriquesJmx = metriquesJmx;
+    }
+
+    public int getTailleCacheEnonces() {
+        return this.tailleCacheEnonces;
+    }
+
+    public void setTailleCacheEnonces(int tailleCacheEnonces) {
+        this.tailleCacheEnonces = tailleCacheEnonces;
+    }
+
+    public boolean isCachePrepStmts() {
+        return this.cachePrepStmts;
+    }
+
+    public void setCachePrepStmts(boolean cachePrepStmts) {
+        this.cachePrepStmts = cachePrepStmts;
+    }
+
+    public boolean isUseServerPrepStmts() {
+        return this.useServerPrepStmts;
+    }
+
+    public void setUseServerPrepStmts(boolean useServerPrepStmts) {
+        this.useServerPrepStmts = useServerPrepStmts;
+    }
+}
@@ -1,10 +1,28 @@
 package ca.qc.collegeahuntsic.bibliotheque.db;
 
+import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
-import java.sql.Driver;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.JMException;
+import ca.qc.collegeahuntsic.bibliotheque.metrique.Metriques;
+import ca.qc.collegeahuntsic.bibliotheque.metrique.RegistreMemoire;
+import ca.qc.collegeahuntsic.bibliotheque.metrique.RegistreMetriques;
+import ca.qc.collegeahuntsic.bibliotheque.metrique.RegistreNul;
 
 /**
  * Gestionnaire d'une connexion avec une BD relationnelle via JDBC.
@@ -14,16 +32,75 @@ import java.sql.SQLException;
  *
  * Pré-condition le driver JDBC approprié doit être accessible.
  *
- * Post-condition la connexion est ouverte en mode autocommit false et
- * sérialisable, (s'il est supporté par le serveur). </pre>
+ * Post-condition la connexion est ouverte en mode autocommit false et au
+ * niveau d'isolation configuré (read committed par défaut), s'il est supporté
+ * par le serveur. Les services verrouillent explicitement (select ... for
+ * update) les lignes qu'ils modifient, et les consultations peuvent être
+ * faites en lecture seule (debuterLecture()).
+ *
+ * En mode pool (voir ConfigurationConnexion), les connexions physiques sont
+ * gérées par un PoolConnexions et prêtées à chaque thread pour la durée d'une
+ * transaction.
+ *
+ * Chaque thread travaille dans sa propre Transaction (connexion et énoncés
+ * précompilés). En mode connexion unique, les transactions des différents
+ * threads sont exécutées l'une après l'autre.
+ *
+ * Si la configuration décrit des répliques en lecture, les transactions de
+ * consultation (debuterLecture()) sont dirigées vers la réplique la moins
+ * chargée ; toutes les autres transactions utilisent la BD principale.
+ *
+ * Un thread peut regrouper plusieurs transactions sous un seul commit
+ * (debuterGroupe(), terminerGroupe()) : le commit de chaque transaction ne
+ * fait alors que marquer sa fin et son rollback revient à un point de
+ * sauvegarde posé à son début, sans toucher aux autres transactions du
+ * groupe. Si le serveur a annulé toute la transaction physique (interblocage,
+ * perte de connexion), le groupe est perdu (isGroupePerdu()).
+ *
+ * La durée des commits, des rollbacks et des exécutions d'énoncés est
+ * enregistrée dans le registre de mesures de la configuration (voir
+ * getMetriques()), exposé par JMX si metriques.jmx est configuré. </pre>
  */
 public class Connexion {
 
+	private ConfigurationConnexion configuration;
+
 	private Connection conn;
 
+	private CacheEnonces cacheUnique;
+
+	private Transaction transactionUnique;
+
+	private final ReentrantLock verrouUnique = new ReentrantLock(true);
+
+	private PoolConnexions pool;
+
+	private final List<PoolConnexions> repliques = new ArrayList<>();
+
+	private final AtomicInteger prochaineReplique = new AtomicInteger();
+
+	private final ThreadLocal<Transaction> transactionCourante = new ThreadLocal<>();
+
+	private ExecuteurTransaction executeur;
+
+	/**
+	 * Groupe de transactions en cours d'un thread.
+	 */
+	private static final class Groupe {
+		private boolean perdu;
+	}
+
+	private final ThreadLocal<Groupe> groupeCourant = new ThreadLocal<>();
+
+	private long dureeOuverture;
+
+	private RegistreMetriques metriques;
+
+	private Metriques mbean;
+
 	/**
-	 * Ouverture d'une connexion en mode autocommit false et sérialisable (si
-	 * supporté)
+	 * Ouverture d'une connexion en mode autocommit false, au niveau
+	 * d'isolation par défaut de ConfigurationConnexion (si supporté)
 	 *
 	 * @param serveur
 	 *            serveur SQL de la BD
@@ -36,50 +113,141 @@ public class Connexion {
 	 */
 	public Connexion(String serveur, String bd, String user, String pass)
 			throws SQLException {
-		Driver d;
+		this(ConfigurationConnexion.pourServeur(serveur, bd, user, pass));
+	}
+
+	/**
+	 * Ouverture d'un pool de connexions. Chaque thread emprunte une connexion
+	 * au premier appel de getConnection() et la rend au pool au commit ou au
+	 * rollback : une connexion est donc prêtée pour la durée d'une
+	 * transaction.
+	 *
+	 * @param configuration
+	 *            taille et délais du pool, cache d'énoncés
+	 */
+	public Connexion(String serveur, String bd, String user, String pass,
+			ConfigurationConnexion configuration) throws SQLException {
+		this(pourPool(serveur, bd, user, pass, configuration));
+	}
+
+	/**
+	 * Ouverture d'une connexion unique ou d'un pool de connexions (si
+	 * configuration.isPool()) décrits par une configuration externe.
+	 */
+	public Connexion(final ConfigurationConnexion configuration)
+			throws SQLException {
+		if (configuration.getUrl() == null) {
+			throw new SQLException("Url de connexion non configurée");
+		}
+		long debut = System.nanoTime();
+		this.configuration = configuration;
+		this.metriques = creerRegistre(configuration.getMetriques());
+		this.executeur = new ExecuteurTransaction(this,
+				configuration.getNbMaxReprises(),
+				configuration.getDelaiBaseReprise(),
+				configuration.getDelaiMaxReprise());
+		if (configuration.isPool()) {
+			this.pool = new PoolConnexions(() -> ouvrir(configuration),
+					configuration, this.metriques);
+		} else {
+			this.conn = ouvrir(configuration);
+			this.cacheUnique = new CacheEnonces(this.conn, configuration,
+					this.metriques);
+			this.transactionUnique = new Transaction(this.conn,
+					this.cacheUnique, configuration.getIsolation(), null);
+		}
+		try {
+			for (final ConfigurationConnexion replique : configuration
+					.getRepliques()) {
+				this.repliques.add(new PoolConnexions(() -> ouvrir(replique),
+						replique, this.metriques));
+			}
+			if (configuration.isMetriquesJmx()) {
+				this.mbean = new Metriques(this);
+				this.mbean.inscrire();
+			}
+		} catch (JMException e) {
+			fermer();
+			throw new SQLException("Inscription JMX impossible", e);
+		} catch (SQLException e) {
+			fermer();
+			throw e;
+		}
+		this.dureeOuverture = (System.nanoTime() - debut) / 1000000;
+	}
+
+	/**
+	 * Creation du registre de mesures : memoire, aucun ou nom d'une classe
+	 * qui implémente RegistreMetriques.
+	 */
+	private static RegistreMetriques creerRegistre(String nom)
+			throws SQLException {
+		if (nom == null || nom.isEmpty() || nom.equals("memoire")) {
+			return new RegistreMemoire();
+		}
+		if (nom.equals("aucun")) {
+			return new RegistreNul();
+		}
+		try {
+			return Class.forName(nom).asSubclass(RegistreMetriques.class)
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new SQLException("Registre de métriques invalide : " + nom,
+					e);
+		}
+	}
+
+	private static ConfigurationConnexion pourPool(String serveur, String bd,
+			String user, String pass, ConfigurationConnexion configuration)
+			throws SQLException {
 		try {
-			if (serveur.equals("local")) {
-				d = (Driver) Class.forName("com.mysql.jdbc.Driver")
-						.newInstance();
-				DriverManager.registerDriver(d);
-				this.conn = DriverManager.getConnection(
-						"jdbc:mysql://localhost:3306/" + bd, user, pass);
-			} else if (serveur.equals("distant")) {
-				d = (Driver) Class.forName("oracle.jdbc.driver.OracleDriver")
-						.newInstance();
-				DriverManager.registerDriver(d);
-				this.conn = DriverManager.getConnection(
-						"jdbc:oracle:thin:@collegeahuntsic.info:1521:" + bd,
-						user, pass);
+			configuration.utiliserServeur(serveur, bd, user, pass);
+		} catch (IllegalArgumentException e) {
+			throw new SQLException(e.getMessage());
+		}
+		configuration.setPool(true);
+		return configuration;
+	}
+
+	/**
+	 * Ouverture d'une connexion physique en mode autocommit false, au niveau
+	 * d'isolation configuré (read committed par défaut, si supporté)
+	 */
+	private static Connection ouvrir(ConfigurationConnexion configuration)
+			throws SQLException {
+		Connection conn;
+		try {
+			if (configuration.getPilote() != null) {
+				Class.forName(configuration.getPilote());
 			}
+			conn = DriverManager.getConnection(configuration.getUrl(),
+					configuration.getProprietesConnexion());
 
 			// mettre en mode de commit manuel
-			this.conn.setAutoCommit(false);
-
-			// mettre en mode sérialisable si possible
-			// (plus haut niveau d'integrité l'accès concurrent aux données)
-			DatabaseMetaData dbmd = this.conn.getMetaData();
-			if (dbmd.supportsTransactionIsolationLevel(Connection.TRANSACTION_SERIALIZABLE)) {
-				this.conn
-						.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
-				System.out
-						.println("Ouverture de la connexion en mode sérialisable :\n"
-								+ "Estampille "
-								+ System.currentTimeMillis()
-								+ " " + this.conn);
+			conn.setAutoCommit(false);
+
+			// mettre au niveau d'isolation configuré si possible
+			// (l'intégrité des prêts est assurée par les verrous des services)
+			DatabaseMetaData dbmd = conn.getMetaData();
+			if (dbmd.supportsTransactionIsolationLevel(configuration
+					.getIsolation())) {
+				conn.setTransactionIsolation(configuration.getIsolation());
+				System.out.println("Ouverture de la connexion en mode "
+						+ ConfigurationConnexion.nomIsolation(configuration
+								.getIsolation()) + " :\n" + "Estampille "
+						+ System.currentTimeMillis() + " " + conn);
 			} else {
 				System.out
 						.println("Ouverture de la connexion en mode read committed (default) :\n"
 								+ "Heure "
 								+ System.currentTimeMillis()
 								+ " "
-								+ this.conn);
+								+ conn);
 			}
+			return conn;
 		}// try
 
-		catch (SQLException e) {
-			throw e;
-		} catch (Exception e) {
+		catch (ClassNotFoundException e) {
 			e.printStackTrace(System.out);
 			throw new SQLException("JDBC Driver non instancié");
 		}
@@ -89,30 +257,407 @@ public class Connexion {
 	 * fermeture d'une connexion
 	 */
 	public void fermer() throws SQLException {
+		this.groupeCourant.remove();
+		rollback();
+		if (this.mbean != null) {
+			this.mbean.desinscrire();
+		}
+		for (PoolConnexions replique : this.repliques) {
+			replique.fermer();
+		}
+		if (this.pool != null) {
+			this.pool.fermer();
+			System.out.println("Pool de connexions fermé");
+			return;
+		}
 		this.conn.rollback();
+		this.cacheUnique.fermer();
 		this.conn.close();
 		System.out.println("Connexion fermée" + " " + this.conn);
 	}
 
 	/**
-	 * commit
+	 * commit. Si le commit échoue, la transaction est annulée avant que la
+	 * connexion soit rendue.
 	 */
 	public void commit() throws SQLException {
-		this.conn.commit();
+		Transaction courante = this.transactionCourante.get();
+		if (courante == null) {
+			return;
+		}
+		if (this.groupeCourant.get() != null) {
+			courante.oublierPoint();
+			return;
+		}
+		long debut = System.nanoTime();
+		try {
+			courante.commit();
+		} catch (SQLException e) {
+			try {
+				courante.rollback();
+			} catch (SQLException e2) {
+				// l'échec du commit est relancé
+			}
+			throw e;
+		} finally {
+			terminer(courante);
+			this.metriques.enregistrer(RegistreMetriques.COMMIT,
+					System.nanoTime() - debut);
+		}
 	}
 
 	/**
 	 * rollback
 	 */
 	public void rollback() throws SQLException {
-		this.conn.rollback();
+		Transaction courante = this.transactionCourante.get();
+		if (courante == null) {
+			return;
+		}
+		Groupe groupe = this.groupeCourant.get();
+		if (groupe != null && !groupe.perdu) {
+			try {
+				courante.annulerJusquAuPoint();
+				return;
+			} catch (SQLException e) {
+				// la transaction physique n'existe plus : le groupe est perdu
+				groupe.perdu = true;
+			}
+		}
+		long debut = System.nanoTime();
+		try {
+			courante.rollback();
+		} finally {
+			terminer(courante);
+			this.metriques.enregistrer(RegistreMetriques.ROLLBACK,
+					System.nanoTime() - debut);
+		}
+	}
+
+	/**
+	 * Retourne la transaction du thread courant, débutée au besoin. La
+	 * transaction se termine au prochain commit ou rollback.
+	 */
+	public Transaction getTransaction() throws SQLException {
+		Transaction courante = this.transactionCourante.get();
+		if (courante == null) {
+			if (this.pool == null) {
+				this.verrouUnique.lock();
+				courante = this.transactionUnique;
+			} else {
+				Connection emprunt = this.pool.emprunter();
+				courante = new Transaction(emprunt,
+						this.pool.getCache(emprunt),
+						this.configuration.getIsolation(), this.pool);
+			}
+			this.transactionCourante.set(courante);
+		}
+		if (this.groupeCourant.get() != null) {
+			courante.marquer();
+		}
+		return courante;
+	}
+
+	/**
+	 * Exécution d'action après le commit de la transaction du thread courant
+	 * (du groupe, dans un groupe de transactions), s'il a lieu.
+	 */
+	public void apresCommit(Runnable action) throws SQLException {
+		getTransaction().apresCommit(action);
+	}
+
+	/**
+	 * Début d'un groupe de transactions pour le thread courant : les
+	 * transactions suivantes seront validées ensemble par terminerGroupe().
+	 */
+	public void debuterGroupe() {
+		if (this.groupeCourant.get() == null) {
+			this.groupeCourant.set(new Groupe());
+		}
+	}
+
+	/**
+	 * Commit des transactions du groupe du thread courant. Si le groupe est
+	 * perdu, il est annulé et une SQLException est levée.
+	 */
+	public void terminerGroupe() throws SQLException {
+		Groupe groupe = this.groupeCourant.get();
+		if (groupe == null) {
+			return;
+		}
+		if (groupe.perdu) {
+			annulerGroupe();
+			throw new SQLException("Groupe de transactions annulé par le serveur");
+		}
+		this.groupeCourant.remove();
+		commit();
 	}
 
 	/**
-	 * retourne la Connection jdbc
+	 * Rollback de toutes les transactions du groupe du thread courant.
 	 */
-	public Connection getConnection() {
-		return this.conn;
+	public void annulerGroupe() throws SQLException {
+		this.groupeCourant.remove();
+		rollback();
+	}
+
+	/**
+	 * Vérifie si le groupe du thread courant a été annulé par le serveur ;
+	 * ses transactions déjà terminées sont alors perdues.
+	 */
+	public boolean isGroupePerdu() {
+		Groupe groupe = this.groupeCourant.get();
+		return groupe != null && groupe.perdu;
+	}
+
+	/**
+	 * Débute la transaction du thread courant à un niveau d'isolation donné
+	 * (constante de java.sql.Connection), en lecture seule au besoin. Si une
+	 * transaction est déjà en cours, elle est retournée telle quelle.
+	 */
+	public Transaction debuter(int isolation, boolean lectureSeule)
+			throws SQLException {
+		if (this.groupeCourant.get() != null) {
+			// les réglages ne peuvent changer au milieu d'un groupe
+			return getTransaction();
+		}
+		boolean nouvelle = this.transactionCourante.get() == null;
+		Transaction courante = getTransaction();
+		if (nouvelle) {
+			regler(courante, isolation, lectureSeule);
+		}
+		return courante;
+	}
+
+	/**
+	 * Débute une transaction de consultation : lecture seule en read
+	 * committed, pour ne pas poser de verrous sur les lignes lues. La
+	 * transaction est dirigée vers une réplique s'il y en a.
+	 */
+	public Transaction debuterLecture() throws SQLException {
+		if (this.repliques.isEmpty()
+				|| this.transactionCourante.get() != null
+				|| this.groupeCourant.get() != null) {
+			return debuter(Connection.TRANSACTION_READ_COMMITTED, true);
+		}
+		PoolConnexions replique = choisirReplique();
+		Connection emprunt = replique.emprunter();
+		Transaction courante = new Transaction(emprunt,
+				replique.getCache(emprunt), replique.getConfiguration()
+						.getIsolation(), replique);
+		this.transactionCourante.set(courante);
+		regler(courante, Connection.TRANSACTION_READ_COMMITTED, true);
+		return courante;
+	}
+
+	private void regler(Transaction courante, int isolation,
+			boolean lectureSeule) throws SQLException {
+		try {
+			courante.regler(isolation, lectureSeule);
+		} catch (SQLException e) {
+			rollback();
+			throw e;
+		}
+	}
+
+	/**
+	 * Choix de la réplique ayant le moins de connexions empruntées ; à
+	 * égalité, les répliques sont choisies à tour de rôle.
+	 */
+	private PoolConnexions choisirReplique() {
+		int nb = this.repliques.size();
+		int debut = Math.floorMod(this.prochaineReplique.getAndIncrement(), nb);
+		PoolConnexions choix = null;
+		for (int i = 0; i < nb; i++) {
+			PoolConnexions replique = this.repliques.get((debut + i) % nb);
+			if (choix == null
+					|| replique.getNbEmpruntees() < choix.getNbEmpruntees()) {
+				choix = replique;
+			}
+		}
+		return choix;
+	}
+
+	/**
+	 * retourne la Connection jdbc de la transaction du thread courant. En mode
+	 * pool, la connexion est empruntée jusqu'au prochain commit ou rollback.
+	 */
+	public Connection getConnection() throws SQLException {
+		return getTransaction().getConnection();
+	}
+
+	/**
+	 * Retourne l'énoncé précompilé pour sql dans la transaction du thread
+	 * courant.
+	 */
+	public PreparedStatement preparer(String sql) throws SQLException {
+		return getTransaction().preparer(sql);
+	}
+
+	/**
+	 * Retourne l'appel de procédure stockée précompilé pour sql dans la
+	 * transaction du thread courant.
+	 */
+	public CallableStatement preparerAppel(String sql) throws SQLException {
+		return getTransaction().preparerAppel(sql);
+	}
+
+	/**
+	 * Enregistrement de la durée d'une exécution de stmt, débutée à debut
+	 * (System.nanoTime()), dans la transaction du thread courant (voir
+	 * CacheEnonces.mesurer()).
+	 */
+	public void mesurer(PreparedStatement stmt, long debut) {
+		Transaction courante = this.transactionCourante.get();
+		if (courante != null) {
+			courante.mesurer(stmt, debut);
+		}
+	}
+
+	/**
+	 * Préchauffage : précompilation des énoncés dans le cache de chaque
+	 * connexion ouverte, pour que les premières transactions n'aient pas à
+	 * les précompiler. En mode pool, les connexions sont préchauffées en
+	 * parallèle, un thread par connexion ; elles sont toutes empruntées en même
+	 * temps pour qu'aucune ne soit préchauffée deux fois. Sert aussi de
+	 * vérification de santé : une connexion ou un énoncé invalide lève une
+	 * SQLException.
+	 *
+	 * @return le nombre de connexions préchauffées
+	 */
+	public int prechauffer(final Collection<String> enonces)
+			throws SQLException {
+		try {
+			if (this.pool == null) {
+				prechauffer(enonces, null);
+				return 1;
+			}
+			final int nb = Math.max(1, this.pool.getNbOuvertes());
+			final CountDownLatch empruntees = new CountDownLatch(nb);
+			ExecutorService threads = Executors.newFixedThreadPool(nb);
+			try {
+				List<Future<Void>> resultats = new ArrayList<>();
+				for (int i = 0; i < nb; i++) {
+					resultats.add(threads.submit(new Callable<Void>() {
+						@Override
+						public Void call() throws Exception {
+							prechauffer(enonces, empruntees);
+							return null;
+						}
+					}));
+				}
+				for (Future<Void> resultat : resultats) {
+					resultat.get();
+				}
+				return nb;
+			} finally {
+				threads.shutdown();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Préchauffage interrompu");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			throw new SQLException("Échec du préchauffage", e.getCause());
+		}
+	}
+
+	/**
+	 * Préchauffage de la connexion du thread courant. Si empruntees n'est pas
+	 * null, attend que toutes les connexions à préchauffer soient empruntées.
+	 */
+	private void prechauffer(Collection<String> enonces,
+			CountDownLatch empruntees) throws SQLException,
+			InterruptedException {
+		try {
+			Transaction courante;
+			try {
+				courante = getTransaction();
+			} finally {
+				if (empruntees != null) {
+					empruntees.countDown();
+				}
+			}
+			if (empruntees != null) {
+				empruntees.await();
+			}
+			for (String sql : enonces) {
+				courante.preparer(sql);
+			}
+		} finally {
+			rollback();
+		}
+	}
+
+	/**
+	 * Durée (ms) de l'ouverture de la connexion ou du pool et des répliques.
+	 */
+	public long getDureeOuverture() {
+		return this.dureeOuverture;
+	}
+
+	/**
+	 * Nombre d'énoncés trouvés dans les caches d'énoncés des connexions.
+	 */
+	public long getNbSuccesCacheEnonces() {
+		return this.pool == null ? this.cacheUnique.getNbSucces() : this.pool
+				.getNbSuccesEnonces();
+	}
+
+	/**
+	 * Nombre d'énoncés précompilés faute d'être dans un cache d'énoncés.
+	 */
+	public long getNbEchecsCacheEnonces() {
+		return this.pool == null ? this.cacheUnique.getNbEchecs() : this.pool
+				.getNbEchecsEnonces();
+	}
+
+	/**
+	 * Retourne l'exécuteur des transactions, qui reprend les transactions en
+	 * conflit.
+	 */
+	public ExecuteurTransaction getExecuteur() {
+		return this.executeur;
+	}
+
+	/**
+	 * Retourne le registre des mesures.
+	 */
+	public RegistreMetriques getMetriques() {
+		return this.metriques;
+	}
+
+	/**
+	 * Retourne la configuration de la connexion.
+	 */
+	public ConfigurationConnexion getConfiguration() {
+		return this.configuration;
+	}
+
+	/**
+	 * Retourne les pools de connexions des répliques en lecture.
+	 */
+	public List<PoolConnexions> getRepliques() {
+		return Collections.unmodifiableList(this.repliques);
+	}
+
+	/**
+	 * Retourne le pool de connexions, ou null en mode connexion unique.
+	 */
+	public PoolConnexions getPool() {
+		return this.pool;
+	}
+
+	private void terminer(Transaction courante) {
+		this.transactionCourante.remove();
+		courante.restaurer();
+		if (courante.getPool() == null) {
+			this.verrouUnique.unlock();
+		} else {
+			courante.getPool().rendre(courante.getConnection());
+		}
 	}
 
 	/**
@@ -122,7 +667,7 @@ public class Connexion {
 	public static String serveursSupportes() {
 		return "local : MySQL installé localement\n"
 				+ "distant : Oracle installé au Département d'Informatique du Collège Ahuntsic\n"
-				+ "postgres : Postgres installé localement\n"
-				+ "access : Microsoft Access installé localement et inscrit dans ODBC";
+				+ "<fichier>.properties : configuration externe (voir ConfigurationConnexion),\n"
+				+ "    par exemple bibliotheque-embarque.properties (H2 en mémoire)";
 	}
 }// Classe Connexion
@@ -0,0 +1,193 @@
+package ca.qc.collegeahuntsic.bibliotheque.db;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exécution d'une unité de travail dans une transaction, avec reprise des
+ * conflits d'accès concurrents.
+ *
+ * <pre>
+ * L'unité de travail est exécutée puis validée (commit). En cas d'échec, la
+ * transaction est annulée (rollback). Si l'échec est un conflit
+ * récupérable (échec de sérialisation, interblocage, attente de verrou
+ * expirée), l'unité de travail est reprise au complet après une attente
+ * aléatoire croissante, au plus nbMaxReprises fois. Dans un groupe de
+ * transactions perdu (voir Connexion.debuterGroupe()), l'unité de travail
+ * n'est pas reprise : les transactions précédentes du groupe sont perdues
+ * elles aussi et c'est à l'appelant de les reprendre.
+ *
+ * Une unité de travail peut aussi se faire remplacer (Remplacement) : elle
+ * est annulée comme sur échec, puis l'unité qui la remplace est exécutée
+ * dans une nouvelle transaction, par exemple une vérification détaillée
+ * après une mise à jour conditionnelle refusée.
+ *
+ * Conflits reconnus :
+ *   SQLState 40001 (échec de sérialisation, interblocage MySQL)
+ *   SQLState 40P01 (interblocage)
+ *   MySQL 1213 (interblocage), 1205 (attente de verrou expirée)
+ *   Oracle ORA-08177 (sérialisation impossible), ORA-00060 (interblocage)
+ * </pre>
+ */
+public class ExecuteurTransaction {
+
+    /**
+     * Travail à exécuter dans une transaction.
+     */
+    public interface UniteTravail {
+        void executer() throws Exception;
+    }
+
+    /**
+     * Annulation de l'unité de travail en cours et exécution de remplacante à
+     * sa place, dans une nouvelle transaction.
+     */
+    public static final class Remplacement extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient UniteTravail remplacante;
+
+        public Remplacement(UniteTravail remplacante) {
+            super(null,
+                null,
+                false,
+                false);
+            this.remplacante = remplacante;
+        }
+
+        public UniteTravail getRemplacante() {
+            return this.remplacante;
+        }
+    }
+
+    private final Connexion cx;
+
+    private final int nbMaxReprises;
+
+    private final long delaiBase;
+
+    private final long delaiMax;
+
+    private final AtomicLong nbReprises = new AtomicLong();
+
+    private final AtomicLong nbAbandons = new AtomicLong();
+
+    /**
+     * Creation d'un exécuteur pour les transactions de cx.
+     */
+    public ExecuteurTransaction(Connexion cx,
+        int nbMaxReprises,
+        long delaiBase,
+        long delaiMax) {
+        this.cx = cx;
+        this.nbMaxReprises = nbMaxReprises;
+        this.delaiBase = delaiBase;
+        this.delaiMax = delaiMax;
+    }
+
+    /**
+     * Exécution de unite suivie d'un commit. L'exception de la dernière
+     * tentative est relancée après le rollback.
+     */
+    public void executer(UniteTravail unite) throws Exception {
+        UniteTravail courante = unite;
+        int reprise = 0;
+        while(true) {
+            try {
+                courante.executer();
+                this.cx.commit();
+                return;
+            } catch(Remplacement r) {
+                this.cx.rollback();
+                courante = r.getRemplacante();
+            } catch(Exception e) {
+                this.cx.rollback();
+                if(!estRecuperable(e)
+                    || this.cx.isGroupePerdu()) {
+                    throw e;
+                }
+                if(reprise >= this.nbMaxReprises) {
+                    this.nbAbandons.incrementAndGet();
+                    throw e;
+                }
+                reprise++;
+                this.nbReprises.incrementAndGet();
+                attendre(reprise,
+                    e);
+            }
+        }
+    }
+
+    /**
+     * Nombre de reprises effectuées.
+     */
+    public long getNbReprises() {
+        return this.nbReprises.get();
+    }
+
+    /**
+     * Nombre d'unités de travail abandonnées après nbMaxReprises reprises.
+     */
+    public long getNbAbandons() {
+        return this.nbAbandons.get();
+    }
+
+    /**
+     * Vérifie si e (ou une de ses causes) est un conflit d'accès concurrent
+     * qui peut être résolu en reprenant la transaction.
+     */
+    public static boolean estRecuperable(Throwable e) {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(cause instanceof SQLException) {
+                for(SQLException sqle = (SQLException) cause; sqle != null; sqle = sqle.getNextException()) {
+                    if(estConflit(sqle)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean estConflit(SQLException e) {
+        if(e instanceof SQLTransactionRollbackException) {
+            return true;
+        }
+        String etat = e.getSQLState();
+        if("40001".equals(etat)
+            || "40P01".equals(etat)) {
+            return true;
+        }
+        int code = e.getErrorCode();
+        if(e.getMessage() != null
+            && e.getMessage().startsWith("ORA-")) {
+            return code == 8177
+                || code == 60;
+        }
+        return code == 1213
+            || code == 1205;
+    }
+
+    /**
+     * Attente aléatoire (« full jitter ») d'au plus delaiBase * 2^(reprise-1)
+     * ms, bornée par delaiMax.
+     */
+    private void attendre(int reprise,
+        Exception cause) throws Exception {
+        long plafond = Math.min(this.delaiMax,
+            this.delaiBase << Math.min(reprise - 1,
+                20));
+        if(plafond <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(plafond + 1));
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package ca.qc.collegeahuntsic.bibliotheque.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import ca.qc.collegeahuntsic.bibliotheque.metrique.RegistreMetriques;
+
+/**
+ * Pool borné de connexions JDBC.
+ *
+ * <pre>
+ * Le pool conserve entre tailleMin et tailleMax connexions physiques.
+ * Une connexion est empruntée avec emprunter() et doit être rendue avec
+ * rendre(). Si aucune connexion n'est disponible et que la taille maximale
+ * est atteinte, l'emprunt attend au plus delaiAcquisition ms.
+ *
+ * Chaque connexion physique a son propre CacheEnonces, fermé avec elle.
+ *
+ * Une tâche de surveillance ferme les connexions inactives depuis plus de
+ * delaiInactivite ms (sans descendre sous tailleMin) et signale les
+ * connexions empruntées depuis plus de delaiFuite ms : elles sont comptées
+ * (mesure pool.fuites) et la pile de leur emprunt est écrite dans
+ * System.err, hors de l'affichage des transactions.
+ * </pre>
+ */
+public class PoolConnexions {
+
+    /**
+     * Ouvre une nouvelle connexion physique configurée (autocommit, isolation).
+     */
+    public interface FabriqueConnexion {
+        Connection ouvrir() throws SQLException;
+    }
+
+    /**
+     * Connexion disponible dans le pool.
+     */
+    private static final class Entree {
+        private final Connection conn;
+
+        private final long derniereUtilisation;
+
+        private Entree(Connection conn) {
+            this.conn = conn;
+            this.derniereUtilisation = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Emprunt en cours d'une connexion.
+     */
+    private static final class Bail {
+        private final long debut;
+
+        private final Exception origine;
+
+        private boolean signale;
+
+        private Bail(boolean tracer) {
+            this.debut = System.currentTimeMillis();
+            this.origine = tracer
+                ? new Exception("Connexion empruntée par "
+                    + Thread.currentThread().getName())
+                : null;
+        }
+    }
+
+    private final FabriqueConnexion fabrique;
+
+    private final ConfigurationConnexion configuration;
+
+    private final RegistreMetriques metriques;
+
+    private final LinkedBlockingDeque<Entree> disponibles = new LinkedBlockingDeque<>();
+
+    private final Map<Connection, Bail> bails = Collections.synchronizedMap(new IdentityHashMap<Connection, Bail>());
+
+    private final Semaphore permis;
+
+    private final Map<Connection, CacheEnonces> caches = Collections.synchronizedMap(new IdentityHashMap<Connection, CacheEnonces>());
+
+    private final AtomicLong nbSuccesRetires = new AtomicLong();
+
+    private final AtomicLong nbEchecsRetires = new AtomicLong();
+
+    private final AtomicInteger nbOuvertes = new AtomicInteger();
+
+    private final ScheduledExecutorService surveillant;
+
+    private volatile boolean ferme;
+
+    /**
+     * Création du pool et ouverture des tailleMin premières connexions.
+     */
+    public PoolConnexions(FabriqueConnexion fabrique,
+        ConfigurationConnexion configuration,
+        RegistreMetriques metriques) throws SQLException {
+        if(configuration.getTailleMax() < 1
+            || configuration.getTailleMin() < 0
+            || configuration.getTailleMin() > configuration.getTailleMax()) {
+            throw new SQLException("Taille de pool invalide : min "
+                + configuration.getTailleMin()
+                + " max "
+                + configuration.getTailleMax());
+        }
+        this.fabrique = fabrique;
+        this.configuration = configuration;
+        this.metriques = metriques;
+        this.permis = new Semaphore(configuration.getTailleMax(),
+            true);
+        for(int i = 0; i < configuration.getTailleMin(); i++) {
+            this.disponibles.offerFirst(new Entree(ouvrir()));
+        }
+
+        this.surveillant = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r,
+                "surveillant-pool");
+            t.setDaemon(true);
+            return t;
+        });
+        long periode = Math.max(1000,
+            Math.min(configuration.getDelaiInactivite(),
+                configuration.getDelaiFuite() > 0
+                    ? configuration.getDelaiFuite()
+                    : Long.MAX_VALUE) / 2);
+        this.surveillant.scheduleWithFixedDelay(this::surveiller,
+            periode,
+            periode,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Emprunt d'une connexion. Attend au plus delaiAcquisition ms.
+     */
+    public Connection emprunter() throws SQLException {
+        if(this.ferme) {
+            throw new SQLException("Pool de connexions fermé");
+        }
+        try {
+            if(!this.permis.tryAcquire(this.configuration.getDelaiAcquisition(),
+                TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Aucune connexion disponible après "
+                    + this.configuration.getDelaiAcquisition()
+                    + " ms (taille maximale "
+                    + this.configuration.getTailleMax()
+                    + ")");
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Attente d'une connexion interrompue");
+        }
+
+        try {
+            Connection conn = null;
+            Entree entree;
+            while(conn == null
+                && (entree = this.disponibles.pollFirst()) != null) {
+                if(valider(entree.conn)) {
+                    conn = entree.conn;
+                } else {
+                    detruire(entree.conn);
+                }
+            }
+            if(conn == null) {
+                conn = ouvrir();
+            }
+            this.bails.put(conn,
+                new Bail(this.configuration.getDelaiFuite() > 0));
+            return conn;
+        } catch(SQLException e) {
+            this.permis.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Remise d'une connexion dans le pool. La transaction doit avoir été
+     * terminée (commit ou rollback) par l'appelant.
+     */
+    public void rendre(Connection conn) {
+        if(this.bails.remove(conn) == null) {
+            return;
+        }
+        try {
+            if(this.ferme
+                || conn.isClosed()) {
+                detruire(conn);
+            } else {
+                this.disponibles.offerFirst(new Entree(conn));
+            }
+        } catch(SQLException e) {
+            detruire(conn);
+        } finally {
+            this.permis.release();
+        }
+    }
+
+    /**
+     * Fermeture du pool. Les connexions disponibles sont fermées
+     * immédiatement, les connexions empruntées le seront à leur remise.
+     */
+    public void fermer() {
+        this.ferme = true;
+        this.surveillant.shutdownNow();
+        Entree entree;
+        while((entree = this.disponibles.pollFirst()) != null) {
+            detruire(entree.conn);
+        }
+    }
+
+    /**
+     * Nombre de connexions physiques ouvertes.
+     */
+    public int getNbOuvertes() {
+        return this.nbOuvertes.get();
+    }
+
+    /**
+     * Nombre de connexions actuellement empruntées.
+     */
+    public int getNbEmpruntees() {
+        return this.bails.size();
+    }
+
+    /**
+     * Nombre de connexions en attente d'un emprunt.
+     */
+    public int getNbDisponibles() {
+        return this.disponibles.size();
+    }
+
+    /**
+     * Retourne le cache des énoncés de conn, une connexion de ce pool.
+     */
+    public CacheEnonces getCache(Connection conn) {
+        return this.caches.get(conn);
+    }
+
+    /**
+     * Nombre total d'énoncés trouvés dans les caches des connexions.
+     */
+    public long getNbSuccesEnonces() {
+        long nb = this.nbSuccesRetires.get();
+        synchronized(this.caches) {
+            for(CacheEnonces cache : this.caches.values()) {
+                nb += cache.getNbSucces();
+            }
+        }
+        return nb;
+    }
+
+    /**
+     * Nombre total d'énoncés précompilés par les connexions.
+     */
+    public long getNbEchecsEnonces() {
+        long nb = this.nbEchecsRetires.get();
+        synchronized(this.caches) {
+            for(CacheEnonces cache : this.caches.values()) {
+                nb += cache.getNbEchecs();
+            }
+        }
+        return nb;
+    }
+
+    public ConfigurationConnexion getConfiguration() {
+        return this.configuration;
+    }
+
+    private Connection ouvrir() throws SQLException {
+        Connection conn = this.fabrique.ouvrir();
+        this.caches.put(conn,
+            new CacheEnonces(conn,
+                this.configuration,
+                this.metriques));
+        this.nbOuvertes.incrementAndGet();
+        return conn;
+    }
+
+    private boolean valider(Connection conn) {
+        try {
+            if(conn.isClosed()) {
+                return false;
+            }
+            return !this.configuration.isValidationEmprunt()
+                || conn.isValid(this.configuration.getDelaiValidation());
+        } catch(SQLException e) {
+            return false;
+        }
+    }
+
+    private void detruire(Connection conn) {
+        this.nbOuvertes.decrementAndGet();
+        CacheEnonces cache = this.caches.remove(conn);
+        if(cache != null) {
+            cache.fermer();
+            this.nbSuccesRetires.addAndGet(cache.getNbSucces());
+            this.nbEchecsRetires.addAndGet(cache.getNbEchecs());
+        }
+        try {
+            conn.close();
+        } catch(SQLException e) {
+            // connexion déjà inutilisable
+        }
+    }
+
+    /**
+     * Éviction des connexions inactives et détection des fuites.
+     */
+    private void surveiller() {
+        long maintenant = System.currentTimeMillis();
+
+        // les entrées les plus anciennes sont en fin de file
+        Iterator<Entree> it = this.disponibles.descendingIterator();
+        while(it.hasNext()
+            && this.nbOuvertes.get() > this.configuration.getTailleMin()) {
+            Entree entree = it.next();
+            if(maintenant
+                - entree.derniereUtilisation < this.configuration.getDelaiInactivite()) {
+                break;
+            }
+            if(this.disponibles.removeLastOccurrence(entree)) {
+                detruire(entree.conn);
+            }
+        }
+
+        if(this.configuration.getDelaiFuite() > 0) {
+            List<Bail> fuites = new ArrayList<>();
+            synchronized(this.bails) {
+                for(Bail bail : this.bails.values()) {
+                    if(!bail.signale
+                        && maintenant
+                            - bail.debut > this.configuration.getDelaiFuite()) {
+                        bail.signale = true;
+                        fuites.add(bail);
+                    }
+                }
+            }
+            for(Bail bail : fuites) {
+                this.metriques.incrementer(RegistreMetriques.FUITES);
+                System.err.println("Fuite probable : connexion empruntée depuis "
+                    + (maintenant - bail.debut)
+                    + " ms");
+                bail.origine.printStackTrace(System.err);
+            }
+        }
+    }
+}
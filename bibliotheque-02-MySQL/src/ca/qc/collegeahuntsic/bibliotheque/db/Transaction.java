@@ -0,0 +1,196 @@
+package ca.qc.collegeahuntsic.bibliotheque.db;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contexte d'une transaction en cours.
+ *
+ * <pre>
+ * Une transaction est liée au thread qui l'a débutée (voir
+ * Connexion.getTransaction()). Elle conserve la connexion utilisée et donne
+ * accès au cache des énoncés précompilés sur cette connexion, de sorte que
+ * les mêmes instances de DAO et de services peuvent être utilisées par
+ * plusieurs threads à la fois, chacun avec sa propre connexion et ses propres
+ * énoncés.
+ *
+ * Une transaction peut être débutée à un niveau d'isolation autre que celui
+ * de la configuration, ou en lecture seule (voir Connexion.debuter()) ; la
+ * connexion retrouve ses réglages par défaut à la fin de la transaction.
+ *
+ * Dans un groupe de transactions (voir Connexion.debuterGroupe()), chaque
+ * unité de travail commence par un point de sauvegarde, auquel son rollback
+ * revient.
+ *
+ * Des actions peuvent être différées jusqu'au commit (apresCommit()), par
+ * exemple la mise en cache de ce qui a été lu ; elles sont oubliées si la
+ * transaction (ou l'unité de travail du groupe) est annulée.
+ * </pre>
+ */
+public class Transaction {
+
+    private final Connection conn;
+
+    private final CacheEnonces cache;
+
+    private final int isolationDefaut;
+
+    private final PoolConnexions pool;
+
+    private boolean reglee;
+
+    private Savepoint point;
+
+    private final List<Runnable> actionsApresCommit = new ArrayList<>();
+
+    private int nbActionsAuPoint;
+
+    Transaction(Connection conn,
+        CacheEnonces cache,
+        int isolationDefaut,
+        PoolConnexions pool) {
+        this.conn = conn;
+        this.cache = cache;
+        this.isolationDefaut = isolationDefaut;
+        this.pool = pool;
+    }
+
+    /**
+     * Retourne la connexion jdbc de la transaction.
+     */
+    public Connection getConnection() {
+        return this.conn;
+    }
+
+    /**
+     * Retourne le pool (principal ou réplique) d'où provient la connexion, ou
+     * null en mode connexion unique.
+     */
+    public PoolConnexions getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Retourne l'énoncé précompilé pour sql sur la connexion de la
+     * transaction. L'énoncé n'est précompilé que s'il n'est pas déjà dans le
+     * cache de la connexion.
+     */
+    public PreparedStatement preparer(String sql) throws SQLException {
+        return this.cache.preparer(sql);
+    }
+
+    /**
+     * Retourne l'appel de procédure précompilé pour sql sur la connexion de
+     * la transaction.
+     */
+    public CallableStatement preparerAppel(String sql) throws SQLException {
+        return this.cache.preparerAppel(sql);
+    }
+
+    /**
+     * Enregistrement de la durée d'une exécution de stmt, débutée à debut
+     * (System.nanoTime()).
+     */
+    public void mesurer(PreparedStatement stmt,
+        long debut) {
+        this.cache.mesurer(stmt,
+            debut);
+    }
+
+    /**
+     * Exécution d'action après le commit de la transaction, s'il a lieu.
+     */
+    public void apresCommit(Runnable action) {
+        this.actionsApresCommit.add(action);
+    }
+
+    /**
+     * Réglage du niveau d'isolation et du mode lecture seule, avant le
+     * premier énoncé de la transaction.
+     */
+    void regler(int isolation,
+        boolean lectureSeule) throws SQLException {
+        if(isolation != this.isolationDefaut) {
+            this.conn.setTransactionIsolation(isolation);
+            this.reglee = true;
+        }
+        if(lectureSeule) {
+            this.conn.setReadOnly(true);
+            this.reglee = true;
+        }
+    }
+
+    /**
+     * Remise de la connexion à ses réglages par défaut, après la fin de la
+     * transaction. Une connexion qui ne peut être remise est fermée.
+     */
+    void restaurer() {
+        if(!this.reglee) {
+            return;
+        }
+        this.reglee = false;
+        try {
+            this.conn.setReadOnly(false);
+            this.conn.setTransactionIsolation(this.isolationDefaut);
+        } catch(SQLException e) {
+            try {
+                this.conn.close();
+            } catch(SQLException e2) {
+                // la connexion sera retirée du pool
+            }
+        }
+    }
+
+    /**
+     * Pose d'un point de sauvegarde au début d'une unité de travail, s'il
+     * n'y en a pas déjà un.
+     */
+    void marquer() throws SQLException {
+        if(this.point == null) {
+            this.point = this.conn.setSavepoint();
+            this.nbActionsAuPoint = this.actionsApresCommit.size();
+        }
+    }
+
+    /**
+     * Annulation des modifications faites depuis le point de sauvegarde.
+     */
+    void annulerJusquAuPoint() throws SQLException {
+        Savepoint p = this.point;
+        this.point = null;
+        if(p != null) {
+            this.actionsApresCommit.subList(this.nbActionsAuPoint,
+                this.actionsApresCommit.size()).clear();
+            this.conn.rollback(p);
+        }
+    }
+
+    /**
+     * Fin d'une unité de travail réussie ; ses modifications seront validées
+     * avec le groupe. Le point de sauvegarde n'est pas libéré explicitement
+     * (releaseSavepoint n'est pas supporté par tous les pilotes), il le sera
+     * au commit.
+     */
+    void oublierPoint() {
+        this.point = null;
+    }
+
+    void commit() throws SQLException {
+        List<Runnable> actions = new ArrayList<>(this.actionsApresCommit);
+        this.actionsApresCommit.clear();
+        this.conn.commit();
+        for(Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    void rollback() throws SQLException {
+        this.actionsApresCommit.clear();
+        this.conn.rollback();
+    }
+}
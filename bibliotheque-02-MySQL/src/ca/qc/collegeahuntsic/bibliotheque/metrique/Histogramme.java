@@ -0,0 +1,128 @@
+package ca.qc.collegeahuntsic.bibliotheque.metrique;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de durées (ns).
+ *
+ * <pre>
+ * Les durées sont réparties en classes de puissances de 2 : la classe k
+ * contient les durées de 2^(k-1) à 2^k - 1 ns. Les centiles sont donc
+ * approximés à un facteur 2 près (borne supérieure de la classe), ce qui
+ * suffit pour repérer les opérations lentes sans conserver chaque mesure.
+ * </pre>
+ */
+public class Histogramme {
+
+    private static final int NB_CLASSES = 64;
+
+    private final AtomicLongArray classes = new AtomicLongArray(NB_CLASSES);
+
+    private final LongAdder nb = new LongAdder();
+
+    private final LongAdder total = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Enregistrement d'une durée.
+     */
+    public void enregistrer(long duree) {
+        if(duree < 0) {
+            duree = 0;
+        }
+        this.classes.incrementAndGet(NB_CLASSES
+            - Long.numberOfLeadingZeros(duree));
+        this.nb.increment();
+        this.total.add(duree);
+        long courant = this.max.get();
+        while(duree > courant
+            && !this.max.compareAndSet(courant,
+                duree)) {
+            courant = this.max.get();
+        }
+    }
+
+    /**
+     * Nombre de durées enregistrées.
+     */
+    public long getNb() {
+        return this.nb.sum();
+    }
+
+    /**
+     * Somme des durées (ns).
+     */
+    public long getTotal() {
+        return this.total.sum();
+    }
+
+    /**
+     * Durée moyenne (ns).
+     */
+    public long getMoyenne() {
+        long n = getNb();
+        return n == 0
+            ? 0
+            : getTotal()
+                / n;
+    }
+
+    /**
+     * Plus longue durée (ns).
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Durée (ns) sous laquelle se trouve la fraction centile (0 à 1) des
+     * durées enregistrées.
+     */
+    public long getCentile(double centile) {
+        long n = getNb();
+        if(n == 0) {
+            return 0;
+        }
+        long rang = Math.max(1,
+            (long) Math.ceil(centile
+                * n));
+        long cumul = 0;
+        for(int k = 0; k < NB_CLASSES; k++) {
+            cumul += this.classes.get(k);
+            if(cumul >= rang) {
+                long borne = k == 0
+                    ? 0
+                    : (1L << k) - 1;
+                return Math.min(borne,
+                    getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Résumé lisible : nombre, moyenne, médiane, 99e centile et maximum en
+     * microsecondes.
+     */
+    @Override
+    public String toString() {
+        return "nb="
+            + getNb()
+            + " moy="
+            + getMoyenne()
+                / 1000
+            + "us p50="
+            + getCentile(0.5)
+                / 1000
+            + "us p99="
+            + getCentile(0.99)
+                / 1000
+            + "us max="
+            + getMax()
+                / 1000
+            + "us";
+    }
+}
@@ -0,0 +1,186 @@
+package ca.qc.collegeahuntsic.bibliotheque.metrique;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
+import ca.qc.collegeahuntsic.bibliotheque.db.PoolConnexions;
+
+/**
+ * MBean des mesures d'une Connexion.
+ *
+ * <pre>
+ * Inscrit sous ca.qc.collegeahuntsic.bibliotheque:type=Metriques,id=n si la
+ * configuration le demande (metriques.jmx). Expose l'occupation du pool,
+ * le cache d'énoncés, les reprises de transactions et, si le registre est
+ * un RegistreMemoire, les histogrammes de durées et les compteurs.
+ * </pre>
+ */
+public class Metriques implements MetriquesMBean {
+
+    private static final AtomicInteger prochainId = new AtomicInteger();
+
+    private final Connexion cx;
+
+    private final RegistreMemoire registre;
+
+    private ObjectName nom;
+
+    /**
+     * Creation du MBean des mesures de cx.
+     */
+    public Metriques(Connexion cx) {
+        this.cx = cx;
+        this.registre = cx.getMetriques() instanceof RegistreMemoire
+            ? (RegistreMemoire) cx.getMetriques()
+            : new RegistreMemoire();
+    }
+
+    /**
+     * Inscription du MBean auprès du serveur de MBeans de la plateforme.
+     */
+    public void inscrire() throws JMException {
+        ObjectName objet = new ObjectName("ca.qc.collegeahuntsic.bibliotheque:type=Metriques,id="
+            + prochainId.incrementAndGet());
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+            objet);
+        this.nom = objet;
+    }
+
+    /**
+     * Retrait du MBean, s'il a été inscrit.
+     */
+    public void desinscrire() {
+        if(this.nom == null) {
+            return;
+        }
+        MBeanServer serveur = ManagementFactory.getPlatformMBeanServer();
+        try {
+            serveur.unregisterMBean(this.nom);
+        } catch(JMException e) {
+            // déjà retiré
+        }
+        this.nom = null;
+    }
+
+    @Override
+    public long getNbCommits() {
+        return nb(RegistreMetriques.COMMIT);
+    }
+
+    @Override
+    public long getNbRollbacks() {
+        return nb(RegistreMetriques.ROLLBACK);
+    }
+
+    @Override
+    public long getNbRollbacksBiblioException() {
+        return this.registre.getCompteur(RegistreMetriques.ROLLBACKS_BIBLIO);
+    }
+
+    @Override
+    public long getNbReprises() {
+        return this.cx.getExecuteur().getNbReprises();
+    }
+
+    @Override
+    public long getNbAbandons() {
+        return this.cx.getExecuteur().getNbAbandons();
+    }
+
+    @Override
+    public int getNbConnexionsOuvertes() {
+        PoolConnexions pool = this.cx.getPool();
+        return pool == null
+            ? 1
+            : pool.getNbOuvertes();
+    }
+
+    @Override
+    public int getNbConnexionsEmpruntees() {
+        PoolConnexions pool = this.cx.getPool();
+        return pool == null
+            ? 0
+            : pool.getNbEmpruntees();
+    }
+
+    @Override
+    public int getNbConnexionsDisponibles() {
+        PoolConnexions pool = this.cx.getPool();
+        return pool == null
+            ? 0
+            : pool.getNbDisponibles();
+    }
+
+    @Override
+    public long getNbSuccesCacheEnonces() {
+        return this.cx.getNbSuccesCacheEnonces();
+    }
+
+    @Override
+    public long getNbEchecsCacheEnonces() {
+        return this.cx.getNbEchecsCacheEnonces();
+    }
+
+    @Override
+    public long getDureeDemarrage() {
+        return dureeMs(RegistreMetriques.DEMARRAGE);
+    }
+
+    @Override
+    public long getDureePrechauffage() {
+        return dureeMs(RegistreMetriques.PRECHAUFFAGE);
+    }
+
+    @Override
+    public String[] getOperations() {
+        return lignes(false);
+    }
+
+    @Override
+    public String[] getEnonces() {
+        return lignes(true);
+    }
+
+    @Override
+    public String[] getCompteurs() {
+        List<String> lignes = new ArrayList<>();
+        for(Map.Entry<String, Long> compteur : this.registre.getCompteurs().entrySet()) {
+            lignes.add(compteur.getKey()
+                + " "
+                + compteur.getValue());
+        }
+        return lignes.toArray(new String[lignes.size()]);
+    }
+
+    private long nb(String nom) {
+        Histogramme histogramme = this.registre.getHistogramme(nom);
+        return histogramme == null
+            ? 0
+            : histogramme.getNb();
+    }
+
+    private long dureeMs(String nom) {
+        Histogramme histogramme = this.registre.getHistogramme(nom);
+        return histogramme == null
+            ? 0
+            : histogramme.getTotal() / 1000000;
+    }
+
+    private String[] lignes(boolean enonces) {
+        List<String> lignes = new ArrayList<>();
+        for(Map.Entry<String, Histogramme> mesure : this.registre.getHistogrammes().entrySet()) {
+            if(mesure.getKey().startsWith(RegistreMetriques.PREFIXE_SQL) == enonces) {
+                lignes.add(mesure.getKey()
+                    + " "
+                    + mesure.getValue());
+            }
+        }
+        return lignes.toArray(new String[lignes.size()]);
+    }
+}
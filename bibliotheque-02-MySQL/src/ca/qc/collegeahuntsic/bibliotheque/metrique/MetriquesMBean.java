@@ -0,0 +1,54 @@
+package ca.qc.collegeahuntsic.bibliotheque.metrique;
+
+/**
+ * Interface JMX des mesures d'une Connexion (voir Metriques).
+ */
+public interface MetriquesMBean {
+
+    long getNbCommits();
+
+    long getNbRollbacks();
+
+    long getNbRollbacksBiblioException();
+
+    long getNbReprises();
+
+    long getNbAbandons();
+
+    int getNbConnexionsOuvertes();
+
+    int getNbConnexionsEmpruntees();
+
+    int getNbConnexionsDisponibles();
+
+    long getNbSuccesCacheEnonces();
+
+    long getNbEchecsCacheEnonces();
+
+    /**
+     * Durée (ms) du démarrage (voir BibliothequeCreateur.getDureeDemarrage()),
+     * 0 tant qu'il n'est pas terminé.
+     */
+    long getDureeDemarrage();
+
+    /**
+     * Durée (ms) totale des préchauffages des connexions.
+     */
+    long getDureePrechauffage();
+
+    /**
+     * Durées des opérations des services, des interrogations, des commits et
+     * des rollbacks, une ligne par mesure.
+     */
+    String[] getOperations();
+
+    /**
+     * Durées d'exécution de chaque énoncé SQL, une ligne par énoncé.
+     */
+    String[] getEnonces();
+
+    /**
+     * Compteurs d'événements, une ligne par compteur.
+     */
+    String[] getCompteurs();
+}
@@ -0,0 +1,76 @@
+package ca.qc.collegeahuntsic.bibliotheque.metrique;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registre qui conserve en mémoire un histogramme par mesure de durée et un
+ * compteur par événement.
+ */
+public class RegistreMemoire implements RegistreMetriques {
+
+    private final ConcurrentHashMap<String, Histogramme> histogrammes = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, LongAdder> compteurs = new ConcurrentHashMap<>();
+
+    @Override
+    public void enregistrer(String nom,
+        long duree) {
+        Histogramme histogramme = this.histogrammes.get(nom);
+        if(histogramme == null) {
+            histogramme = this.histogrammes.computeIfAbsent(nom,
+                n -> new Histogramme());
+        }
+        histogramme.enregistrer(duree);
+    }
+
+    @Override
+    public void incrementer(String nom) {
+        LongAdder compteur = this.compteurs.get(nom);
+        if(compteur == null) {
+            compteur = this.compteurs.computeIfAbsent(nom,
+                n -> new LongAdder());
+        }
+        compteur.increment();
+    }
+
+    /**
+     * Retourne l'histogramme de la mesure nom, ou null si aucune durée n'a
+     * été enregistrée.
+     */
+    public Histogramme getHistogramme(String nom) {
+        return this.histogrammes.get(nom);
+    }
+
+    /**
+     * Retourne la valeur du compteur nom.
+     */
+    public long getCompteur(String nom) {
+        LongAdder compteur = this.compteurs.get(nom);
+        return compteur == null
+            ? 0
+            : compteur.sum();
+    }
+
+    /**
+     * Retourne les histogrammes, triés par nom.
+     */
+    public SortedMap<String, Histogramme> getHistogrammes() {
+        return new TreeMap<>(this.histogrammes);
+    }
+
+    /**
+     * Retourne les valeurs des compteurs, triées par nom.
+     */
+    public SortedMap<String, Long> getCompteurs() {
+        SortedMap<String, Long> valeurs = new TreeMap<>();
+        for(Map.Entry<String, LongAdder> compteur : this.compteurs.entrySet()) {
+            valeurs.put(compteur.getKey(),
+                compteur.getValue().sum());
+        }
+        return valeurs;
+    }
+}
@@ -0,0 +1,50 @@
+package ca.qc.collegeahuntsic.bibliotheque.metrique;
+
+/**
+ * Registre des mesures de l'application.
+ *
+ * <pre>
+ * Les durées sont enregistrées en nanosecondes sous un nom de mesure :
+ *   Service.methode         : opération d'un service ou d'une interrogation
+ *   transaction.commit      : commit d'une transaction
+ *   transaction.rollback    : rollback d'une transaction
+ *   sql:texte               : exécution d'un énoncé précompilé
+ * et les événements sont comptés :
+ *   Service.methode.echecs  : opération terminée par une exception
+ *   rollbacks.BiblioException : opération refusée par une règle de gestion
+ *
+ * Le registre est choisi par la configuration (voir ConfigurationConnexion) :
+ * RegistreMemoire par défaut, RegistreNul pour ne rien mesurer ou toute
+ * autre implémentation ayant un constructeur sans paramètre. Il est appelé
+ * par plusieurs threads à la fois.
+ * </pre>
+ */
+public interface RegistreMetriques {
+
+    String COMMIT = "transaction.commit";
+
+    String ROLLBACK = "transaction.rollback";
+
+    String PREFIXE_SQL = "sql:";
+
+    String SUFFIXE_ECHECS = ".echecs";
+
+    String ROLLBACKS_BIBLIO = "rollbacks.BiblioException";
+
+    String FUITES = "pool.fuites";
+
+    String DEMARRAGE = "demarrage";
+
+    String PRECHAUFFAGE = "demarrage.prechauffage";
+
+    /**
+     * Enregistrement d'une durée (ns) pour la mesure nom.
+     */
+    void enregistrer(String nom,
+        long duree);
+
+    /**
+     * Comptage d'un événement.
+     */
+    void incrementer(String nom);
+}
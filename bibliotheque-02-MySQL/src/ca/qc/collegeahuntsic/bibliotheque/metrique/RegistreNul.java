@@ -0,0 +1,18 @@
+package ca.qc.collegeahuntsic.bibliotheque.metrique;
+
+/**
+ * Registre qui ne conserve aucune mesure.
+ */
+public class RegistreNul implements RegistreMetriques {
+
+    @Override
+    public void enregistrer(String nom,
+        long duree) {
+        // aucune mesure
+    }
+
+    @Override
+    public void incrementer(String nom) {
+        // aucune mesure
+    }
+}
@@ -0,0 +1,12 @@
+// Fichier package-info.java
+// Auteur : Franz Nkezimana
+// Date de création : 2015-09-18
+/**
+ * Mesures de l'activité de la bibliothèque : durée des opérations des
+ * services, des commits et rollbacks et de chaque énoncé SQL, exposées par
+ * JMX.
+ *
+ * @author Franz Nkezimana
+ */
+
+package ca.qc.collegeahuntsic.bibliotheque.metrique;
\ No newline at end of file
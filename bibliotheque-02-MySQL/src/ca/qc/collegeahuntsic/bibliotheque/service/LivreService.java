@@ -2,9 +2,9 @@
 package ca.qc.collegeahuntsic.bibliotheque.service;
 
 import java.sql.SQLException;
+import java.util.List;
 import ca.qc.collegeahuntsic.bibliotheque.dao.LivreDAO;
 import ca.qc.collegeahuntsic.bibliotheque.dao.ReservationDAO;
-import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
 import ca.qc.collegeahuntsic.bibliotheque.dto.LivreDTO;
 import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
 
@@ -23,20 +23,20 @@ import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
  *   transaction
  * </pre>
  */
-public class LivreService {
+public class LivreService extends Service {
+
+    private static final long serialVersionUID = 1L;
 
     private LivreDAO livre;
 
     private ReservationDAO reservation;
 
-    private Connexion cx;
-
     /**
      * Creation d'une instance
      */
     public LivreService(LivreDAO livre,
         ReservationDAO reservation) {
-        this.cx = livre.getConnexion();
+        super(livre.getConnexion());
         this.livre = livre;
         this.reservation = reservation;
     }
@@ -51,24 +51,51 @@ public class LivreService {
         String dateAcquisition) throws SQLException,
         BiblioException,
         Exception {
-        try {
-            /* Vérifie si le livre existe déja */
-            if(this.livre.existe(idLivre)) {
-                throw new BiblioException("Livre existe deja: "
-                    + idLivre);
-            }
+        executer("acquerir",
+            () -> {
+                /* Ajout du livre dans la table des livres ; refusé par la clé s'il existe déja */
+                if(!this.livre.acquerir(idLivre,
+                    titre,
+                    auteur,
+                    dateAcquisition)) {
+                    throw new BiblioException("Livre existe deja: "
+                        + idLivre);
+                }
+            });
+    }
 
-            /* Ajout du livre dans la table des livres */
-            this.livre.acquerir(idLivre,
-                titre,
-                auteur,
-                dateAcquisition);
-            this.cx.commit();
-        } catch(Exception e) {
-            //        System.out.println(e);
-            this.cx.rollback();
-            throw e;
-        }
+    /**
+     * Ajout de plusieurs livres, par lots de tailleLot livres (un
+     * executeBatch et un commit par lot). Un livre refusé (déjà existant,
+     * donnée invalide) n'empêche pas l'ajout des autres.
+     *
+     * @return une erreur par livre refusé
+     */
+    public List<BiblioException> acquerirLot(List<LivreDTO> livres) throws Exception {
+        return executerParLots("acquerirLot",
+            livres,
+            tranche -> this.livre.acquerirLot(tranche),
+            tupleLivre -> {
+                if(tupleLivre.dateAcquisition == null) {
+                    throw new BiblioException("Livre "
+                        + tupleLivre.idLivre
+                        + " refusé: date d'acquisition absente");
+                }
+                try {
+                    acquerir(tupleLivre.idLivre,
+                        tupleLivre.titre,
+                        tupleLivre.auteur,
+                        tupleLivre.dateAcquisition.toString());
+                } catch(SQLException e) {
+                    if(!estViolationContrainte(e)) {
+                        throw e;
+                    }
+                    throw new BiblioException("Livre "
+                        + tupleLivre.idLivre
+                        + " refusé: "
+                        + e.getMessage());
+                }
+            });
     }
 
     /**
@@ -77,35 +104,32 @@ public class LivreService {
     public void vendre(int idLivre) throws SQLException,
     BiblioException,
     Exception {
-        try {
-            LivreDTO tupleLivre = this.livre.getLivre(idLivre);
-            if(tupleLivre == null) {
-                throw new BiblioException("Livre inexistant: "
-                    + idLivre);
-            }
-            if(tupleLivre.idMembre != 0) {
-                throw new BiblioException("Livre "
-                    + idLivre
-                    + " prete a "
-                    + tupleLivre.idMembre);
-            }
-            if(this.reservation.getReservationLivre(idLivre) != null) {
-                throw new BiblioException("Livre "
-                    + idLivre
-                    + " réservé ");
-            }
+        executer("vendre",
+            () -> {
+                LivreDTO tupleLivre = this.livre.getLivrePourMaj(idLivre);
+                if(tupleLivre == null) {
+                    throw new BiblioException("Livre inexistant: "
+                        + idLivre);
+                }
+                if(tupleLivre.idMembre != 0) {
+                    throw new BiblioException("Livre "
+                        + idLivre
+                        + " prete a "
+                        + tupleLivre.idMembre);
+                }
+                if(this.reservation.getReservationLivre(idLivre) != null) {
+                    throw new BiblioException("Livre "
+                        + idLivre
+                        + " réservé ");
+                }
 
-            /* Suppression du livre. */
-            int nb = this.livre.vendre(idLivre);
-            if(nb == 0) {
-                throw new BiblioException("Livre "
-                    + idLivre
-                    + " inexistant");
-            }
-            this.cx.commit();
-        } catch(Exception e) {
-            this.cx.rollback();
-            throw e;
-        }
+                /* Suppression du livre. */
+                int nb = this.livre.vendre(idLivre);
+                if(nb == 0) {
+                    throw new BiblioException("Livre "
+                        + idLivre
+                        + " inexistant");
+                }
+            });
     }
 }
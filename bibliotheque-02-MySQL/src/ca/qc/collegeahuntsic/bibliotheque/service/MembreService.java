@@ -2,9 +2,9 @@
 package ca.qc.collegeahuntsic.bibliotheque.service;
 
 import java.sql.SQLException;
+import java.util.List;
 import ca.qc.collegeahuntsic.bibliotheque.dao.MembreDAO;
 import ca.qc.collegeahuntsic.bibliotheque.dao.ReservationDAO;
-import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
 import ca.qc.collegeahuntsic.bibliotheque.dto.MembreDTO;
 import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
 
@@ -24,9 +24,9 @@ import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
  * </pre>
  */
 
-public class MembreService {
+public class MembreService extends Service {
 
-    private Connexion cx;
+    private static final long serialVersionUID = 1L;
 
     private MembreDAO membre;
 
@@ -38,7 +38,7 @@ public class MembreService {
     public MembreService(MembreDAO membre,
         ReservationDAO reservation) {
 
-        this.cx = membre.getConnexion();
+        super(membre.getConnexion());
         this.membre = membre;
         this.reservation = reservation;
     }
@@ -53,23 +53,46 @@ public class MembreService {
         int limitePret) throws SQLException,
         BiblioException,
         Exception {
-        try {
-            /* Vérifie si le membre existe déja */
-            if(this.membre.existe(idMembre)) {
-                throw new BiblioException("Membre existe deja: "
-                    + idMembre);
-            }
+        executer("inscrire",
+            () -> {
+                /* Ajout du membre ; refusé par la clé s'il existe déja */
+                if(!this.membre.inscrire(idMembre,
+                    nom,
+                    telephone,
+                    limitePret)) {
+                    throw new BiblioException("Membre existe deja: "
+                        + idMembre);
+                }
+            });
+    }
 
-            /* Ajout du membre. */
-            this.membre.inscrire(idMembre,
-                nom,
-                telephone,
-                limitePret);
-            this.cx.commit();
-        } catch(Exception e) {
-            this.cx.rollback();
-            throw e;
-        }
+    /**
+     * Ajout de plusieurs membres, par lots de tailleLot membres (un
+     * executeBatch et un commit par lot). Un membre refusé (déjà existant,
+     * donnée invalide) n'empêche pas l'ajout des autres.
+     *
+     * @return une erreur par membre refusé
+     */
+    public List<BiblioException> inscrireLot(List<MembreDTO> membres) throws Exception {
+        return executerParLots("inscrireLot",
+            membres,
+            tranche -> this.membre.inscrireLot(tranche),
+            tupleMembre -> {
+                try {
+                    inscrire(tupleMembre.idMembre,
+                        tupleMembre.nom,
+                        tupleMembre.telephone,
+                        tupleMembre.limitePret);
+                } catch(SQLException e) {
+                    if(!estViolationContrainte(e)) {
+                        throw e;
+                    }
+                    throw new BiblioException("Membre "
+                        + tupleMembre.idMembre
+                        + " refusé: "
+                        + e.getMessage());
+                }
+            });
     }
 
     /**
@@ -78,35 +101,32 @@ public class MembreService {
     public void desinscrire(int idMembre) throws SQLException,
     BiblioException,
     Exception {
-        try {
-            /* Vérifie si le membre existe et son nombre de pret en cours */
-            MembreDTO tupleMembre = this.membre.getMembre(idMembre);
-            if(tupleMembre == null) {
-                throw new BiblioException("Membre inexistant: "
-                    + idMembre);
-            }
-            if(tupleMembre.nbPret > 0) {
-                throw new BiblioException("Le membre "
-                    + idMembre
-                    + " a encore des prets.");
-            }
-            if(this.reservation.getReservationMembre(idMembre) != null) {
-                throw new BiblioException("Membre "
-                    + idMembre
-                    + " a des réservations");
-            }
+        executer("desinscrire",
+            () -> {
+                /* Vérifie si le membre existe et son nombre de pret en cours */
+                MembreDTO tupleMembre = this.membre.getMembrePourMaj(idMembre);
+                if(tupleMembre == null) {
+                    throw new BiblioException("Membre inexistant: "
+                        + idMembre);
+                }
+                if(tupleMembre.nbPret > 0) {
+                    throw new BiblioException("Le membre "
+                        + idMembre
+                        + " a encore des prets.");
+                }
+                if(this.reservation.getReservationMembre(idMembre) != null) {
+                    throw new BiblioException("Membre "
+                        + idMembre
+                        + " a des réservations");
+                }
 
-            /* Suppression du membre */
-            int nb = this.membre.desinscrire(idMembre);
-            if(nb == 0) {
-                throw new BiblioException("Membre "
-                    + idMembre
-                    + " inexistant");
-            }
-            this.cx.commit();
-        } catch(Exception e) {
-            this.cx.rollback();
-            throw e;
-        }
+                /* Suppression du membre */
+                int nb = this.membre.desinscrire(idMembre);
+                if(nb == 0) {
+                    throw new BiblioException("Membre "
+                        + idMembre
+                        + " inexistant");
+                }
+            });
     }
 }//class
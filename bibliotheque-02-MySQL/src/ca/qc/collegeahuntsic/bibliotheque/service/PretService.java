@@ -5,8 +5,9 @@ import java.sql.Date;
 import java.sql.SQLException;
 import ca.qc.collegeahuntsic.bibliotheque.dao.LivreDAO;
 import ca.qc.collegeahuntsic.bibliotheque.dao.MembreDAO;
+import ca.qc.collegeahuntsic.bibliotheque.dao.ProceduresDAO;
 import ca.qc.collegeahuntsic.bibliotheque.dao.ReservationDAO;
-import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
+import ca.qc.collegeahuntsic.bibliotheque.db.ExecuteurTransaction.Remplacement;
 import ca.qc.collegeahuntsic.bibliotheque.dto.LivreDTO;
 import ca.qc.collegeahuntsic.bibliotheque.dto.MembreDTO;
 import ca.qc.collegeahuntsic.bibliotheque.dto.ReservationDTO;
@@ -19,6 +20,17 @@ import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
  * Ce programme permet de gérer les transactions préter,
  * renouveler et retourner.
  *
+ * Dans le cas normal, un pret ou un renouvellement ne fait que des mises
+ * à jour conditionnelles, sans lecture préalable. Si une condition n'est
+ * pas remplie, la transaction est refaite avec lecture et verrouillage des
+ * tuples, ce qui donne la raison du refus. Le retour lit le livre avant de
+ * le modifier, car l'emprunteur doit être connu (et verrouillé) avant la
+ * mise à jour de son nombre de prets.
+ *
+ * Avec une instance de ProceduresDAO, chaque transaction est plutôt faite
+ * par un seul appel de procédure stockée, dont le code de refus est traduit
+ * dans le même message.
+ *
  * Pré-condition
  *   la base de données de la bibliothèque doit exister
  *
@@ -28,7 +40,9 @@ import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
  * </pre>
  */
 
-public class PretService {
+public class PretService extends Service {
+
+    private static final long serialVersionUID = 1L;
 
     private LivreDAO livre;
 
@@ -36,7 +50,7 @@ public class PretService {
 
     private ReservationDAO reservation;
 
-    private Connexion cx;
+    private ProceduresDAO procedures;
 
     /**
      * Creation d'une instance.
@@ -46,14 +60,31 @@ public class PretService {
     public PretService(LivreDAO livre,
         MembreDAO membre,
         ReservationDAO reservation) throws BiblioException {
+        this(livre,
+            membre,
+            reservation,
+            null);
+    }
+
+    /**
+     * Creation d'une instance dont les transactions appellent les procédures
+     * stockées de procedures, si procedures n'est pas null.
+     */
+    public PretService(LivreDAO livre,
+        MembreDAO membre,
+        ReservationDAO reservation,
+        ProceduresDAO procedures) throws BiblioException {
+        super(livre.getConnexion());
         if(livre.getConnexion() != membre.getConnexion()
-            || reservation.getConnexion() != membre.getConnexion()) {
+            || reservation.getConnexion() != membre.getConnexion()
+            || procedures != null
+                && procedures.getConnexion() != membre.getConnexion()) {
             throw new BiblioException("Les instances de livre, de membre et de reservation n'utilisent pas la même connexion au serveur");
         }
-        this.cx = livre.getConnexion();
         this.livre = livre;
         this.membre = membre;
         this.reservation = reservation;
+        this.procedures = procedures;
     }
 
     /**
@@ -66,57 +97,33 @@ public class PretService {
         String datePret) throws SQLException,
         BiblioException,
         Exception {
-        try {
-            /* Verfier si le livre est disponible */
-            LivreDTO tupleLivre = this.livre.getLivre(idLivre);
-            if(tupleLivre == null) {
-                throw new BiblioException("Livre inexistant: "
-                    + idLivre);
-            }
-            if(tupleLivre.idMembre != 0) {
-                throw new BiblioException("Livre "
-                    + idLivre
-                    + " deja prete a "
-                    + tupleLivre.idMembre);
-            }
+        executer("preter",
+            () -> {
+                if(this.procedures != null) {
+                    verifierPret(this.procedures.preter(idLivre,
+                        idMembre,
+                        datePret));
+                    return;
+                }
 
-            /* Vérifie si le membre existe et sa limite de pret */
-            MembreDTO tupleMembre = this.membre.getMembre(idMembre);
-            if(tupleMembre == null) {
-                throw new BiblioException("Membre inexistant: "
-                    + idMembre);
-            }
-            if(tupleMembre.nbPret >= tupleMembre.limitePret) {
-                throw new BiblioException("Limite de pret du membre "
-                    + idMembre
-                    + " atteinte");
-            }
+                /* Pret conditionnel : une mise à jour par table dans le cas normal */
+                if(this.livre.preterSiDisponible(idLivre,
+                    idMembre,
+                    datePret) == 1) {
+                    if(this.membre.preterSiSousLimite(idMembre) == 1) {
+                        return;
+                    }
+                    /* Le pret du livre est annulé avant la vérification */
+                    throw new Remplacement(() -> preterVerifie(idLivre,
+                        idMembre,
+                        datePret));
+                }
 
-            /* Vérifie s'il existe une réservation pour le livre */
-            ReservationDTO tupleReservation = this.reservation.getReservationLivre(idLivre);
-            if(tupleReservation != null) {
-                throw new BiblioException("Livre réservé par : "
-                    + tupleReservation.idMembre
-                    + " idReservation : "
-                    + tupleReservation.idReservation);
-            }
-
-            /* Enregistrement du pret. */
-            int nb1 = this.livre.preter(idLivre,
-                idMembre,
-                datePret);
-            if(nb1 == 0) {
-                throw new BiblioException("Livre supprimé par une autre transaction");
-            }
-            int nb2 = this.membre.preter(idMembre);
-            if(nb2 == 0) {
-                throw new BiblioException("Membre supprimé par une autre transaction");
-            }
-            this.cx.commit();
-        } catch(Exception e) {
-            this.cx.rollback();
-            throw e;
-        }
+                /* Pret refusé : la vérification détaillée donne la raison */
+                preterVerifie(idLivre,
+                    idMembre,
+                    datePret);
+            });
     }
 
     /**
@@ -128,45 +135,24 @@ public class PretService {
         String datePret) throws SQLException,
         BiblioException,
         Exception {
-        try {
-            /* Verifier si le livre est prêté */
-            LivreDTO tupleLivre = this.livre.getLivre(idLivre);
-            if(tupleLivre == null) {
-                throw new BiblioException("Livre inexistant: "
-                    + idLivre);
-            }
-            if(tupleLivre.idMembre == 0) {
-                throw new BiblioException("Livre "
-                    + idLivre
-                    + " n'est pas prete");
-            }
+        executer("renouveler",
+            () -> {
+                if(this.procedures != null) {
+                    verifierRenouvellement(this.procedures.renouveler(idLivre,
+                        datePret));
+                    return;
+                }
 
-            /* Verifier si date renouvellement >= datePret */
-            if(Date.valueOf(datePret).before(tupleLivre.datePret)) {
-                throw new BiblioException("Date de renouvellement inferieure à la date de pret");
-            }
+                /* Renouvellement conditionnel, en une seule mise à jour */
+                if(this.livre.renouvelerSiPrete(idLivre,
+                    datePret) == 1) {
+                    return;
+                }
 
-            /* Vérifie s'il existe une réservation pour le livre */
-            ReservationDTO tupleReservation = this.reservation.getReservationLivre(idLivre);
-            if(tupleReservation != null) {
-                throw new BiblioException("Livre réservé par : "
-                    + tupleReservation.idMembre
-                    + " idReservation : "
-                    + tupleReservation.idReservation);
-            }
-
-            /* Enregistrement du pret. */
-            int nb1 = this.livre.preter(idLivre,
-                tupleLivre.idMembre,
-                datePret);
-            if(nb1 == 0) {
-                throw new BiblioException("Livre supprime par une autre transaction");
-            }
-            this.cx.commit();
-        } catch(Exception e) {
-            this.cx.rollback();
-            throw e;
-        }
+                /* Renouvellement refusé : la vérification détaillée donne la raison */
+                renouvelerVerifie(idLivre,
+                    datePret);
+            });
     }
 
     /**
@@ -177,38 +163,220 @@ public class PretService {
         String dateRetour) throws SQLException,
         BiblioException,
         Exception {
-        try {
-            /* Verifier si le livre est prêté */
-            LivreDTO tupleLivre = this.livre.getLivre(idLivre);
-            if(tupleLivre == null) {
+        executer("retourner",
+            () -> {
+                if(this.procedures != null) {
+                    verifierRetour(this.procedures.retourner(idLivre,
+                        dateRetour));
+                    return;
+                }
+
+                /* Verifier si le livre est prêté */
+                LivreDTO tupleLivre = this.livre.getLivrePourMaj(idLivre);
+                if(tupleLivre == null) {
+                    throw new BiblioException("Livre inexistant: "
+                        + idLivre);
+                }
+                if(tupleLivre.idMembre == 0) {
+                    throw new BiblioException("Livre "
+                        + idLivre
+                        + " n'est pas prêté ");
+                }
+
+                /* Verifier si date retour >= datePret */
+                if(Date.valueOf(dateRetour).before(tupleLivre.datePret)) {
+                    throw new BiblioException("Date de retour inferieure à la date de pret");
+                }
+
+                /* Retour du pret. */
+                int nb1 = this.livre.retourner(idLivre);
+                if(nb1 == 0) {
+                    throw new BiblioException("Livre supprimé par une autre transaction");
+                }
+
+                int nb2 = this.membre.retourner(tupleLivre.idMembre);
+                if(nb2 == 0) {
+                    throw new BiblioException("Livre supprimé par une autre transaction");
+                }
+            });
+    }
+
+    /**
+     * Pret avec lecture et verrouillage du livre et du membre, pour
+     * expliquer le refus d'un pret conditionnel.
+     */
+    private void preterVerifie(int idLivre,
+        int idMembre,
+        String datePret) throws SQLException,
+        BiblioException {
+        /* Verfier si le livre est disponible */
+        LivreDTO tupleLivre = this.livre.getLivrePourMaj(idLivre);
+        if(tupleLivre == null) {
+            throw new BiblioException("Livre inexistant: "
+                + idLivre);
+        }
+        if(tupleLivre.idMembre != 0) {
+            throw new BiblioException("Livre "
+                + idLivre
+                + " deja prete a "
+                + tupleLivre.idMembre);
+        }
+
+        /* Vérifie si le membre existe et sa limite de pret */
+        MembreDTO tupleMembre = this.membre.getMembrePourMaj(idMembre);
+        if(tupleMembre == null) {
+            throw new BiblioException("Membre inexistant: "
+                + idMembre);
+        }
+        if(tupleMembre.nbPret >= tupleMembre.limitePret) {
+            throw new BiblioException("Limite de pret du membre "
+                + idMembre
+                + " atteinte");
+        }
+
+        /* Vérifie s'il existe une réservation pour le livre */
+        ReservationDTO tupleReservation = this.reservation.getReservationLivre(idLivre);
+        if(tupleReservation != null) {
+            throw new BiblioException("Livre réservé par : "
+                + tupleReservation.idMembre
+                + " idReservation : "
+                + tupleReservation.idReservation);
+        }
+
+        /* Enregistrement du pret. */
+        int nb1 = this.livre.preter(idLivre,
+            idMembre,
+            datePret);
+        if(nb1 == 0) {
+            throw new BiblioException("Livre supprimé par une autre transaction");
+        }
+        int nb2 = this.membre.preter(idMembre);
+        if(nb2 == 0) {
+            throw new BiblioException("Membre supprimé par une autre transaction");
+        }
+    }
+
+    /**
+     * Renouvellement avec lecture et verrouillage du livre, pour expliquer
+     * le refus d'un renouvellement conditionnel.
+     */
+    private void renouvelerVerifie(int idLivre,
+        String datePret) throws SQLException,
+        BiblioException {
+        /* Verifier si le livre est prêté */
+        LivreDTO tupleLivre = this.livre.getLivrePourMaj(idLivre);
+        if(tupleLivre == null) {
+            throw new BiblioException("Livre inexistant: "
+                + idLivre);
+        }
+        if(tupleLivre.idMembre == 0) {
+            throw new BiblioException("Livre "
+                + idLivre
+                + " n'est pas prete");
+        }
+
+        /* Verifier si date renouvellement >= datePret */
+        if(Date.valueOf(datePret).before(tupleLivre.datePret)) {
+            throw new BiblioException("Date de renouvellement inferieure à la date de pret");
+        }
+
+        /* Vérifie s'il existe une réservation pour le livre */
+        ReservationDTO tupleReservation = this.reservation.getReservationLivre(idLivre);
+        if(tupleReservation != null) {
+            throw new BiblioException("Livre réservé par : "
+                + tupleReservation.idMembre
+                + " idReservation : "
+                + tupleReservation.idReservation);
+        }
+
+        /* Enregistrement du pret. */
+        int nb1 = this.livre.preter(idLivre,
+            tupleLivre.idMembre,
+            datePret);
+        if(nb1 == 0) {
+            throw new BiblioException("Livre supprime par une autre transaction");
+        }
+    }
+
+    /**
+     * Traduction du code de biblio_preter.
+     */
+    private static void verifierPret(ProceduresDAO.Resultat resultat) throws BiblioException {
+        switch(resultat.code) {
+            case ProceduresDAO.OK:
+                return;
+            case ProceduresDAO.LIVRE_INEXISTANT:
                 throw new BiblioException("Livre inexistant: "
-                    + idLivre);
-            }
-            if(tupleLivre.idMembre == 0) {
+                    + resultat.info1);
+            case ProceduresDAO.LIVRE_PRETE:
                 throw new BiblioException("Livre "
-                    + idLivre
-                    + " n'est pas prêté ");
-            }
+                    + resultat.info1
+                    + " deja prete a "
+                    + resultat.info2);
+            case ProceduresDAO.MEMBRE_INEXISTANT:
+                throw new BiblioException("Membre inexistant: "
+                    + resultat.info1);
+            case ProceduresDAO.LIMITE_ATTEINTE:
+                throw new BiblioException("Limite de pret du membre "
+                    + resultat.info1
+                    + " atteinte");
+            case ProceduresDAO.LIVRE_RESERVE:
+                throw new BiblioException("Livre réservé par : "
+                    + resultat.info1
+                    + " idReservation : "
+                    + resultat.info2);
+            default:
+                throw refusInattendu("biblio_preter",
+                    resultat);
+        }
+    }
 
-            /* Verifier si date retour >= datePret */
-            if(Date.valueOf(dateRetour).before(tupleLivre.datePret)) {
+    /**
+     * Traduction du code de biblio_renouveler.
+     */
+    private static void verifierRenouvellement(ProceduresDAO.Resultat resultat) throws BiblioException {
+        switch(resultat.code) {
+            case ProceduresDAO.OK:
+                return;
+            case ProceduresDAO.LIVRE_INEXISTANT:
+                throw new BiblioException("Livre inexistant: "
+                    + resultat.info1);
+            case ProceduresDAO.LIVRE_NON_PRETE:
+                throw new BiblioException("Livre "
+                    + resultat.info1
+                    + " n'est pas prete");
+            case ProceduresDAO.DATE_INFERIEURE:
+                throw new BiblioException("Date de renouvellement inferieure à la date de pret");
+            case ProceduresDAO.LIVRE_RESERVE:
+                throw new BiblioException("Livre réservé par : "
+                    + resultat.info1
+                    + " idReservation : "
+                    + resultat.info2);
+            default:
+                throw refusInattendu("biblio_renouveler",
+                    resultat);
+        }
+    }
+
+    /**
+     * Traduction du code de biblio_retourner.
+     */
+    private static void verifierRetour(ProceduresDAO.Resultat resultat) throws BiblioException {
+        switch(resultat.code) {
+            case ProceduresDAO.OK:
+                return;
+            case ProceduresDAO.LIVRE_INEXISTANT:
+                throw new BiblioException("Livre inexistant: "
+                    + resultat.info1);
+            case ProceduresDAO.LIVRE_NON_PRETE:
+                throw new BiblioException("Livre "
+                    + resultat.info1
+                    + " n'est pas prêté ");
+            case ProceduresDAO.DATE_INFERIEURE:
                 throw new BiblioException("Date de retour inferieure à la date de pret");
-            }
-
-            /* Retour du pret. */
-            int nb1 = this.livre.retourner(idLivre);
-            if(nb1 == 0) {
-                throw new BiblioException("Livre supprimé par une autre transaction");
-            }
-
-            int nb2 = this.membre.retourner(tupleLivre.idMembre);
-            if(nb2 == 0) {
-                throw new BiblioException("Livre supprimé par une autre transaction");
-            }
-            this.cx.commit();
-        } catch(Exception e) {
-            this.cx.rollback();
-            throw e;
+            default:
+                throw refusInattendu("biblio_retourner",
+                    resultat);
         }
     }
 }
@@ -5,8 +5,9 @@ import java.sql.Date;
 import java.sql.SQLException;
 import ca.qc.collegeahuntsic.bibliotheque.dao.LivreDAO;
 import ca.qc.collegeahuntsic.bibliotheque.dao.MembreDAO;
+import ca.qc.collegeahuntsic.bibliotheque.dao.ProceduresDAO;
 import ca.qc.collegeahuntsic.bibliotheque.dao.ReservationDAO;
-import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
+import ca.qc.collegeahuntsic.bibliotheque.db.ExecuteurTransaction.Remplacement;
 import ca.qc.collegeahuntsic.bibliotheque.dto.LivreDTO;
 import ca.qc.collegeahuntsic.bibliotheque.dto.MembreDTO;
 import ca.qc.collegeahuntsic.bibliotheque.dto.ReservationDTO;
@@ -19,6 +20,11 @@ import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
  * Ce programme permet de gérer les transactions réserver,
  * prendre et annuler.
  *
+ * La prise d'une réservation se fait d'abord par mises à jour
+ * conditionnelles, comme les prêts (voir PretService). Avec une instance
+ * de ProceduresDAO, chaque transaction est plutôt un seul appel de
+ * procédure stockée.
+ *
  * Pré-condition
  *   la base de données de la bibliothèque doit exister
  *
@@ -28,7 +34,9 @@ import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
  * </pre>
  */
 
-public class ReservationService {
+public class ReservationService extends Service {
+
+    private static final long serialVersionUID = 1L;
 
     private LivreDAO livre;
 
@@ -36,7 +44,7 @@ public class ReservationService {
 
     private ReservationDAO reservation;
 
-    private Connexion cx;
+    private ProceduresDAO procedures;
 
     /**
      * Creation d'une instance.
@@ -46,14 +54,31 @@ public class ReservationService {
     public ReservationService(LivreDAO livre,
         MembreDAO membre,
         ReservationDAO reservation) throws BiblioException {
+        this(livre,
+            membre,
+            reservation,
+            null);
+    }
+
+    /**
+     * Creation d'une instance dont les transactions appellent les procédures
+     * stockées de procedures, si procedures n'est pas null.
+     */
+    public ReservationService(LivreDAO livre,
+        MembreDAO membre,
+        ReservationDAO reservation,
+        ProceduresDAO procedures) throws BiblioException {
+        super(livre.getConnexion());
         if(livre.getConnexion() != membre.getConnexion()
-            || reservation.getConnexion() != membre.getConnexion()) {
+            || reservation.getConnexion() != membre.getConnexion()
+            || procedures != null
+                && procedures.getConnexion() != membre.getConnexion()) {
             throw new BiblioException("Les instances de livre, de membre et de reservation n'utilisent pas la même connexion au serveur");
         }
-        this.cx = livre.getConnexion();
         this.livre = livre;
         this.membre = membre;
         this.reservation = reservation;
+        this.procedures = procedures;
     }
 
     /**
@@ -66,53 +91,62 @@ public class ReservationService {
         String dateReservation) throws SQLException,
         BiblioException,
         Exception {
-        try {
-            /* Verifier que le livre est preté */
-            LivreDTO tupleLivre = this.livre.getLivre(idLivre);
-            if(tupleLivre == null) {
-                throw new BiblioException("Livre inexistant: "
-                    + idLivre);
-            }
-            if(tupleLivre.idMembre == 0) {
-                throw new BiblioException("Livre "
-                    + idLivre
-                    + " n'est pas prete");
-            }
-            if(tupleLivre.idMembre == idMembre) {
-                throw new BiblioException("Livre "
-                    + idLivre
-                    + " deja prete a ce membre");
-            }
+        executer("reserver",
+            () -> {
+                if(this.procedures != null) {
+                    verifierReservation(this.procedures.reserver(idReservation,
+                        idLivre,
+                        idMembre,
+                        dateReservation),
+                        idReservation);
+                    return;
+                }
 
-            /* Vérifier que le membre existe */
-            MembreDTO tupleMembre = this.membre.getMembre(idMembre);
-            if(tupleMembre == null) {
-                throw new BiblioException("Membre inexistant: "
-                    + idMembre);
-            }
+                /* Verifier que le livre est preté */
+                LivreDTO tupleLivre = this.livre.getLivrePourMaj(idLivre);
+                if(tupleLivre == null) {
+                    throw new BiblioException("Livre inexistant: "
+                        + idLivre);
+                }
+                if(tupleLivre.idMembre == 0) {
+                    throw new BiblioException("Livre "
+                        + idLivre
+                        + " n'est pas prete");
+                }
+                if(tupleLivre.idMembre == idMembre) {
+                    throw new BiblioException("Livre "
+                        + idLivre
+                        + " deja prete a ce membre");
+                }
 
-            /* Verifier si date reservation >= datePret */
-            if(Date.valueOf(dateReservation).before(tupleLivre.datePret)) {
-                throw new BiblioException("Date de reservation inferieure à la date de pret");
-            }
+                /* Vérifier que le membre existe */
+                MembreDTO tupleMembre = this.membre.getMembre(idMembre);
+                if(tupleMembre == null) {
+                    throw new BiblioException("Membre inexistant: "
+                        + idMembre);
+                }
 
-            /* Vérifier que la réservation n'existe pas */
-            if(this.reservation.existe(idReservation)) {
-                throw new BiblioException("Réservation "
-                    + idReservation
-                    + " existe deja");
-            }
-
-            /* Creation de la reservation */
-            this.reservation.reserver(idReservation,
-                idLivre,
-                idMembre,
-                dateReservation);
-            this.cx.commit();
-        } catch(Exception e) {
-            this.cx.rollback();
-            throw e;
-        }
+                /* Verifier si date reservation >= datePret */
+                if(Date.valueOf(dateReservation).before(tupleLivre.datePret)) {
+                    throw new BiblioException("Date de reservation inferieure à la date de pret");
+                }
+
+                /* Creation de la reservation ; refusée par les clés si elle existe déja */
+                if(!this.reservation.reserver(idReservation,
+                    idLivre,
+                    idMembre,
+                    dateReservation)) {
+                    if(this.reservation.existe(idReservation)) {
+                        throw new BiblioException("Réservation "
+                            + idReservation
+                            + " existe deja");
+                    }
+                    throw new BiblioException("Livre "
+                        + idLivre
+                        + " deja reserve par le membre "
+                        + idMembre);
+                }
+            });
     }
 
     /**
@@ -125,90 +159,232 @@ public class ReservationService {
         String datePret) throws SQLException,
         BiblioException,
         Exception {
-        try {
-            /* Vérifie s'il existe une réservation pour le livre */
-            ReservationDTO tupleReservation = this.reservation.getReservation(idReservation);
-            if(tupleReservation == null) {
+        executer("prendreRes",
+            () -> {
+                if(this.procedures != null) {
+                    verifierPriseRes(this.procedures.prendreRes(idReservation,
+                        datePret),
+                        idReservation);
+                    return;
+                }
+
+                /* Vérifie s'il existe une réservation pour le livre */
+                ReservationDTO tupleReservation = this.reservation.getReservation(idReservation);
+                if(tupleReservation == null) {
+                    throw new BiblioException("Réservation inexistante : "
+                        + idReservation);
+                }
+
+                /* Pret conditionnel ; la réservation doit être la première pour le livre */
+                if(!Date.valueOf(datePret).before(tupleReservation.dateReservation)
+                    && this.livre.preterSiPremiereRes(tupleReservation.idLivre,
+                        tupleReservation.idMembre,
+                        datePret,
+                        idReservation,
+                        tupleReservation.dateReservation) == 1) {
+                    if(this.membre.preterSiSousLimite(tupleReservation.idMembre) == 1
+                        && this.reservation.annulerRes(idReservation,
+                            tupleReservation.idLivre) == 1) {
+                        return;
+                    }
+                    /* Le pret du livre est annulé avant la vérification */
+                    throw new Remplacement(() -> prendreResVerifie(idReservation,
+                        datePret));
+                }
+
+                /* Pret refusé : la vérification détaillée donne la raison */
+                prendreResVerifie(idReservation,
+                    datePret);
+            });
+    }
+
+    /**
+     * Annulation d'une réservation.
+     * La réservation doit exister.
+     */
+    public void annulerRes(int idReservation) throws SQLException,
+        BiblioException,
+        Exception {
+        executer("annulerRes",
+            () -> {
+                if(this.procedures != null) {
+                    verifierAnnulation(this.procedures.annulerRes(idReservation),
+                        idReservation);
+                    return;
+                }
+
+                /* Vérifier que la réservation existe */
+                if(this.reservation.annulerRes(idReservation) == 0) {
+                    throw new BiblioException("Réservation "
+                        + idReservation
+                        + " n'existe pas");
+                }
+
+            });
+    }
+
+    /**
+     * Prise d'une réservation avec lecture et verrouillage du livre et du
+     * membre, pour expliquer le refus d'une prise conditionnelle.
+     */
+    private void prendreResVerifie(int idReservation,
+        String datePret) throws SQLException,
+        BiblioException {
+        /* Vérifie s'il existe une réservation pour le livre */
+        ReservationDTO tupleReservation = this.reservation.getReservation(idReservation);
+        if(tupleReservation == null) {
+            throw new BiblioException("Réservation inexistante : "
+                + idReservation);
+        }
+
+        /* Verrouille le livre, ce qui ordonne les réservations et prêts concurrents */
+        LivreDTO tupleLivre = this.livre.getLivrePourMaj(tupleReservation.idLivre);
+
+        /* Vérifie que c'est la première réservation pour le livre */
+        ReservationDTO tupleReservationPremiere = this.reservation.getReservationLivre(tupleReservation.idLivre);
+        if(tupleReservation.idReservation != tupleReservationPremiere.idReservation) {
+            throw new BiblioException("La réservation n'est pas la première de la liste "
+                + "pour ce livre; la premiere est "
+                + tupleReservationPremiere.idReservation);
+        }
+
+        /* Verifier si le livre est disponible */
+        if(tupleLivre == null) {
+            throw new BiblioException("Livre inexistant: "
+                + tupleReservation.idLivre);
+        }
+        if(tupleLivre.idMembre != 0) {
+            throw new BiblioException("Livre "
+                + tupleLivre.idLivre
+                + " deja prété à "
+                + tupleLivre.idMembre);
+        }
+
+        /* Vérifie si le membre existe et sa limite de pret */
+        MembreDTO tupleMembre = this.membre.getMembrePourMaj(tupleReservation.idMembre);
+        if(tupleMembre == null) {
+            throw new BiblioException("Membre inexistant: "
+                + tupleReservation.idMembre);
+        }
+        if(tupleMembre.nbPret >= tupleMembre.limitePret) {
+            throw new BiblioException("Limite de prèt du membre "
+                + tupleReservation.idMembre
+                + " atteinte");
+        }
+
+        /* Verifier si datePret >= tupleReservation.dateReservation */
+        if(Date.valueOf(datePret).before(tupleReservation.dateReservation)) {
+            throw new BiblioException("Date de prêt inférieure à la date de réservation");
+        }
+
+        /* Enregistrement du pret. */
+        if(this.livre.preter(tupleReservation.idLivre,
+            tupleReservation.idMembre,
+            datePret) == 0) {
+            throw new BiblioException("Livre supprimé par une autre transaction");
+        }
+        if(this.membre.preter(tupleReservation.idMembre) == 0) {
+            throw new BiblioException("Membre supprimé par une autre transaction");
+        }
+        /* Eliminer la réservation */
+        if(this.reservation.annulerRes(idReservation,
+            tupleReservation.idLivre) == 0) {
+            throw new BiblioException("Réservation annulée par une autre transaction");
+        }
+    }
+
+    /**
+     * Traduction du code de biblio_reserver.
+     */
+    private static void verifierReservation(ProceduresDAO.Resultat resultat,
+        int idReservation) throws BiblioException {
+        switch(resultat.code) {
+            case ProceduresDAO.OK:
+                return;
+            case ProceduresDAO.LIVRE_INEXISTANT:
+                throw new BiblioException("Livre inexistant: "
+                    + resultat.info1);
+            case ProceduresDAO.LIVRE_NON_PRETE:
+                throw new BiblioException("Livre "
+                    + resultat.info1
+                    + " n'est pas prete");
+            case ProceduresDAO.LIVRE_PRETE_AU_MEMBRE:
+                throw new BiblioException("Livre "
+                    + resultat.info1
+                    + " deja prete a ce membre");
+            case ProceduresDAO.MEMBRE_INEXISTANT:
+                throw new BiblioException("Membre inexistant: "
+                    + resultat.info1);
+            case ProceduresDAO.DATE_INFERIEURE:
+                throw new BiblioException("Date de reservation inferieure à la date de pret");
+            case ProceduresDAO.RESERVATION_EXISTANTE:
+                throw new BiblioException("Réservation "
+                    + idReservation
+                    + " existe deja");
+            case ProceduresDAO.LIVRE_RESERVE_PAR_MEMBRE:
+                throw new BiblioException("Livre "
+                    + resultat.info1
+                    + " deja reserve par le membre "
+                    + resultat.info2);
+            default:
+                throw refusInattendu("biblio_reserver",
+                    resultat);
+        }
+    }
+
+    /**
+     * Traduction du code de biblio_prendreRes.
+     */
+    private static void verifierPriseRes(ProceduresDAO.Resultat resultat,
+        int idReservation) throws BiblioException {
+        switch(resultat.code) {
+            case ProceduresDAO.OK:
+                return;
+            case ProceduresDAO.RESERVATION_INEXISTANTE:
                 throw new BiblioException("Réservation inexistante : "
                     + idReservation);
-            }
-
-            /* Vérifie que c'est la première réservation pour le livre */
-            ReservationDTO tupleReservationPremiere = this.reservation.getReservationLivre(tupleReservation.idLivre);
-            if(tupleReservation.idReservation != tupleReservationPremiere.idReservation) {
+            case ProceduresDAO.RESERVATION_PAS_PREMIERE:
                 throw new BiblioException("La réservation n'est pas la première de la liste "
                     + "pour ce livre; la premiere est "
-                    + tupleReservationPremiere.idReservation);
-            }
-
-            /* Verifier si le livre est disponible */
-            LivreDTO tupleLivre = this.livre.getLivre(tupleReservation.idLivre);
-            if(tupleLivre == null) {
+                    + resultat.info1);
+            case ProceduresDAO.LIVRE_INEXISTANT:
                 throw new BiblioException("Livre inexistant: "
-                    + tupleReservation.idLivre);
-            }
-            if(tupleLivre.idMembre != 0) {
+                    + resultat.info1);
+            case ProceduresDAO.LIVRE_PRETE:
                 throw new BiblioException("Livre "
-                    + tupleLivre.idLivre
+                    + resultat.info1
                     + " deja prété à "
-                    + tupleLivre.idMembre);
-            }
-
-            /* Vérifie si le membre existe et sa limite de pret */
-            MembreDTO tupleMembre = this.membre.getMembre(tupleReservation.idMembre);
-            if(tupleMembre == null) {
+                    + resultat.info2);
+            case ProceduresDAO.MEMBRE_INEXISTANT:
                 throw new BiblioException("Membre inexistant: "
-                    + tupleReservation.idMembre);
-            }
-            if(tupleMembre.nbPret >= tupleMembre.limitePret) {
+                    + resultat.info1);
+            case ProceduresDAO.LIMITE_ATTEINTE:
                 throw new BiblioException("Limite de prèt du membre "
-                    + tupleReservation.idMembre
+                    + resultat.info1
                     + " atteinte");
-            }
-
-            /* Verifier si datePret >= tupleReservation.dateReservation */
-            if(Date.valueOf(datePret).before(tupleReservation.dateReservation)) {
+            case ProceduresDAO.DATE_INFERIEURE:
                 throw new BiblioException("Date de prêt inférieure à la date de réservation");
-            }
-
-            /* Enregistrement du pret. */
-            if(this.livre.preter(tupleReservation.idLivre,
-                tupleReservation.idMembre,
-                datePret) == 0) {
-                throw new BiblioException("Livre supprimé par une autre transaction");
-            }
-            if(this.membre.preter(tupleReservation.idMembre) == 0) {
-                throw new BiblioException("Membre supprimé par une autre transaction");
-            }
-            /* Eliminer la réservation */
-            this.reservation.annulerRes(idReservation);
-            this.cx.commit();
-        } catch(Exception e) {
-            this.cx.rollback();
-            throw e;
+            default:
+                throw refusInattendu("biblio_prendreRes",
+                    resultat);
         }
     }
 
     /**
-     * Annulation d'une réservation.
-     * La réservation doit exister.
+     * Traduction du code de biblio_annulerRes.
      */
-    public void annulerRes(int idReservation) throws SQLException,
-        BiblioException,
-        Exception {
-        try {
-
-            /* Vérifier que la réservation existe */
-            if(this.reservation.annulerRes(idReservation) == 0) {
+    private static void verifierAnnulation(ProceduresDAO.Resultat resultat,
+        int idReservation) throws BiblioException {
+        switch(resultat.code) {
+            case ProceduresDAO.OK:
+                return;
+            case ProceduresDAO.RESERVATION_INEXISTANTE:
                 throw new BiblioException("Réservation "
                     + idReservation
                     + " n'existe pas");
-            }
-
-            this.cx.commit();
-        } catch(Exception e) {
-            this.cx.rollback();
-            throw e;
+            default:
+                throw refusInattendu("biblio_annulerRes",
+                    resultat);
         }
     }
 }
@@ -5,9 +5,34 @@
 package ca.qc.collegeahuntsic.bibliotheque.service;
 
 import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import ca.qc.collegeahuntsic.bibliotheque.dao.ProceduresDAO;
+import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
+import ca.qc.collegeahuntsic.bibliotheque.db.ExecuteurTransaction.UniteTravail;
+import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
+import ca.qc.collegeahuntsic.bibliotheque.metrique.RegistreMetriques;
 
 /**
- * TODO Auto-generated class javadoc
+ * Classe de base des services.
+ *
+ * Chaque opération d'un service est une unité de travail exécutée par
+ * l'exécuteur de la connexion : validée si elle réussit, annulée sinon, et
+ * reprise si elle échoue sur un conflit d'accès concurrent. Sa durée est
+ * enregistrée sous le nom Service.operation dans le registre de mesures de
+ * la connexion, et ses échecs sont comptés.
+ *
+ * Les opérations en lot (executerParLots()) sont découpées en tranches de
+ * tailleLot éléments (voir setTailleLot()), une transaction par tranche. Si
+ * une tranche viole une contrainte, elle est annulée puis rejouée élément
+ * par élément, pour rapporter l'erreur de chaque élément refusé sans perdre
+ * les autres.
+ *
+ * Les services de prêt et de réservation peuvent déléguer leurs
+ * transactions aux procédures stockées (voir ProceduresDAO) ; chacun
+ * traduit alors le code de refus retourné en BiblioException, avec le
+ * message de sa propre vérification.
  *
  * @author Franz Nkezimana
  */
@@ -18,4 +43,138 @@ public class Service implements Serializable {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Opération sur une tranche d'un lot, dans une seule transaction.
+     */
+    protected interface OperationLot<T> {
+        void executer(List<T> tranche) throws Exception;
+    }
+
+    /**
+     * Opération sur un seul élément d'un lot, dans sa propre transaction.
+     */
+    protected interface OperationElement<T> {
+        void executer(T element) throws Exception;
+    }
+
+    private final Connexion cx;
+
+    private int tailleLot = 500;
+
+    /**
+     * Creation d'un service sur la connexion cx.
+     */
+    protected Service(Connexion cx) {
+        this.cx = cx;
+    }
+
+    /**
+     * Nombre d'éléments par transaction des opérations en lot.
+     */
+    public void setTailleLot(int tailleLot) {
+        this.tailleLot = tailleLot;
+    }
+
+    /**
+     * Retourne la connexion du service.
+     */
+    protected Connexion getConnexion() {
+        return this.cx;
+    }
+
+    /**
+     * Exécution de l'opération nom du service dans sa propre transaction.
+     */
+    protected void executer(String nom,
+        UniteTravail operation) throws Exception {
+        RegistreMetriques metriques = this.cx.getMetriques();
+        String mesure = getClass().getSimpleName()
+            + "."
+            + nom;
+        long debut = System.nanoTime();
+        try {
+            this.cx.getExecuteur().executer(operation);
+        } catch(Exception e) {
+            metriques.incrementer(mesure
+                + RegistreMetriques.SUFFIXE_ECHECS);
+            if(e instanceof BiblioException) {
+                metriques.incrementer(RegistreMetriques.ROLLBACKS_BIBLIO);
+            }
+            throw e;
+        } finally {
+            metriques.enregistrer(mesure,
+                System.nanoTime()
+                    - debut);
+        }
+    }
+
+    /**
+     * Exécution de l'opération nom sur elements, par tranches.
+     *
+     * @return les erreurs des éléments refusés, dans l'ordre des éléments
+     */
+    protected <T> List<BiblioException> executerParLots(String nom,
+        List<T> elements,
+        OperationLot<T> lot,
+        OperationElement<T> element) throws Exception {
+        List<BiblioException> erreurs = new ArrayList<>();
+        int taille = Math.max(1,
+            this.tailleLot);
+        for(int debut = 0; debut < elements.size(); debut += taille) {
+            List<T> tranche = elements.subList(debut,
+                Math.min(elements.size(),
+                    debut
+                        + taille));
+            try {
+                executer(nom,
+                    () -> lot.executer(tranche));
+            } catch(SQLException e) {
+                if(!estViolationContrainte(e)) {
+                    throw e;
+                }
+                for(T unElement : tranche) {
+                    try {
+                        element.executer(unElement);
+                    } catch(BiblioException be) {
+                        erreurs.add(be);
+                    }
+                }
+            }
+        }
+        return erreurs;
+    }
+
+    /**
+     * Vérifie si e (ou une exception chaînée) est une violation de contrainte
+     * ou une donnée invalide (SQLState 23 ou 22), que la reprise de la
+     * transaction ne peut résoudre.
+     */
+    protected static boolean estViolationContrainte(SQLException e) {
+        for(SQLException sqle = e; sqle != null; sqle = sqle.getNextException()) {
+            String etat = sqle.getSQLState();
+            if(etat != null
+                && (etat.startsWith("23")
+                    || etat.startsWith("22"))) {
+                return true;
+            }
+            if(sqle.getCause() instanceof SQLException
+                && sqle.getCause() != sqle.getNextException()
+                && estViolationContrainte((SQLException) sqle.getCause())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Refus d'une procédure stockée dont le code n'est pas prévu par
+     * l'opération.
+     */
+    protected static BiblioException refusInattendu(String procedure,
+        ProceduresDAO.Resultat resultat) {
+        return new BiblioException("Code de refus inattendu de "
+            + procedure
+            + " : "
+            + resultat.code);
+    }
 }
@@ -0,0 +1,50 @@
+package ca.qc.collegeahuntsic.bibliotheque.sortie;
+
+import java.io.IOException;
+
+/**
+ * Destination de l'affichage des transactions.
+ *
+ * <pre>
+ * Biblio y écrit l'écho des lignes et les messages d'erreur,
+ * GestionInterrogation les listes de livres. Les fins de ligne sont celles
+ * du système (System.lineSeparator()), comme avec println.
+ *
+ * La sortie est choisie par la configuration (voir ConfigurationConnexion) :
+ * SortieConsole par défaut, qui écrit directement dans System.out, ou
+ * SortieAsynchrone (sortie.asynchrone), qui accumule le texte dans un
+ * tampon vidé par un thread dédié. Le texte écrit n'est garanti affiché
+ * qu'après vider() ou fermer().
+ * </pre>
+ */
+public interface Sortie {
+
+    /**
+     * Écriture de texte, sans fin de ligne.
+     */
+    void ecrire(CharSequence texte);
+
+    /**
+     * Écriture des caractères debut à fin - 1 de tampon, qui peut être
+     * réutilisé dès le retour.
+     */
+    void ecrire(char[] tampon,
+        int debut,
+        int fin);
+
+    /**
+     * Écriture de texte, suivi d'une fin de ligne.
+     */
+    void ecrireLigne(CharSequence texte);
+
+    /**
+     * Attente de l'affichage de tout le texte écrit jusqu'ici.
+     */
+    void vider() throws IOException;
+
+    /**
+     * Vidage, puis libération des ressources de la sortie. Le flux de
+     * destination n'est pas fermé.
+     */
+    void fermer() throws IOException;
+}
@@ -0,0 +1,476 @@
+package ca.qc.collegeahuntsic.bibliotheque.sortie;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Sortie tamponnée, vidée en arrière-plan par un thread dédié.
+ *
+ * <pre>
+ * Le texte est copié dans un tampon circulaire de caractères ; le thread
+ * appelant ne fait que cette copie et n'attend que si le tampon est plein.
+ * Le thread de vidage encode le texte (jeu de caractères par défaut, comme
+ * System.out) et l'écrit dans le flux de destination par blocs d'au plus
+ * 64 K caractères, coupés après une fin de ligne ; il vide (flush) le flux
+ * quand le tampon est vide ou qu'on attend dans vider(). La destination
+ * n'est donc plus appelée à chaque ligne, et une ligne écrite par un autre
+ * moyen dans le même PrintStream (System.out) ne coupe pas une ligne de la
+ * sortie, pourvu que celle-ci ait été écrite d'un seul appel.
+ *
+ * fermer() attend l'écriture de tout le texte. Elle est aussi appelée à
+ * l'arrêt de la JVM (System.exit(), interruption), si elle ne l'a pas été.
+ * Le texte écrit après la fermeture, ou après une erreur d'écriture, est
+ * ignoré ; l'erreur est relancée par vider() et fermer().
+ *
+ * Les écritures peuvent venir de plusieurs threads ; le texte d'un appel
+ * n'est pas entrecoupé par celui d'un autre.
+ * </pre>
+ */
+public class SortieAsynchrone implements Sortie {
+
+    /**
+     * Capacité par défaut du tampon, en caractères.
+     */
+    public static final int CAPACITE = 1024 * 1024;
+
+    private static final String FIN_LIGNE = System.lineSeparator();
+
+    private static final int TAILLE_BLOC = 64 * 1024;
+
+    private final OutputStream destination;
+
+    private final CharsetEncoder encodeur = Charset.defaultCharset().newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /* Bloc en cours d'écriture et son encodage (thread de vidage) */
+    private final char[] bloc = new char[TAILLE_BLOC];
+
+    private final ByteBuffer octets = ByteBuffer.allocate((int) Math.ceil(TAILLE_BLOC
+        * (double) this.encodeur.maxBytesPerChar()));
+
+    private final char[] anneau;
+
+    private final Thread vidage;
+
+    private final Thread arret;
+
+    /*
+     * Verrou des écritures, gardé pendant l'attente de place dans l'anneau
+     * (wait() ne libère que this) : le texte d'un appel reste contigu.
+     */
+    private final Object producteurs = new Object();
+
+    /*
+     * Positions dans le texte écrit depuis la création : fin du texte copié
+     * dans l'anneau, fin du texte passé à la destination et fin du texte
+     * vidé (flush). L'anneau contient le texte de lus à ecrits.
+     */
+    private long ecrits;
+
+    private long lus;
+
+    private long affiches;
+
+    /* Position jusqu'à laquelle vider() attend un flush */
+    private long demande;
+
+    private boolean vidageEnAttente;
+
+    /* Un appel d'écriture attend de la place au milieu de son texte */
+    private boolean ajoutSuspendu;
+
+    private boolean ferme;
+
+    private IOException erreur;
+
+    /**
+     * Creation d'une sortie sur destination, avec un tampon de capacite
+     * caractères, et démarrage de son thread de vidage.
+     */
+    public SortieAsynchrone(OutputStream destination,
+        int capacite) {
+        this.destination = destination;
+        this.anneau = new char[Math.max(1024,
+            capacite)];
+        this.vidage = new Thread(this::vidanger,
+            "sortie-asynchrone");
+        this.vidage.setDaemon(true);
+        this.vidage.start();
+        this.arret = new Thread(() -> {
+            try {
+                fermer();
+            } catch(IOException e) {
+                // plus rien à afficher
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(this.arret);
+    }
+
+    @Override
+    public void ecrire(CharSequence texte) {
+        synchronized(this.producteurs) {
+            synchronized(this) {
+                ajouter(texte);
+                terminerAjout();
+            }
+        }
+    }
+
+    @Override
+    public void ecrire(char[] tampon,
+        int debut,
+        int fin) {
+        ecrire(new Tranche(tampon,
+            debut,
+            fin));
+    }
+
+    @Override
+    public void ecrireLigne(CharSequence texte) {
+        synchronized(this.producteurs) {
+            synchronized(this) {
+                ajouter(texte);
+                ajouter(FIN_LIGNE);
+                terminerAjout();
+            }
+        }
+    }
+
+    /**
+     * Copie de texte dans l'anneau, en attendant de la place au besoin.
+     * L'appelant détient les verrous producteurs et this.
+     */
+    private void ajouter(CharSequence texte) {
+        int longueur = texte.length();
+        int i = 0;
+        boolean interrompu = false;
+        while(i < longueur) {
+            while(this.ecrits
+                - this.lus == this.anneau.length
+                && !this.ferme
+                && this.erreur == null) {
+                this.ajoutSuspendu = true;
+                interrompu |= attendre();
+            }
+            if(this.ferme
+                || this.erreur != null) {
+                break;
+            }
+            int position = (int) (this.ecrits
+                % this.anneau.length);
+            int n = (int) Math.min(longueur
+                - i,
+                Math.min(this.anneau.length
+                    - (this.ecrits
+                        - this.lus),
+                    this.anneau.length
+                        - position));
+            copier(texte,
+                i,
+                i
+                    + n,
+                position);
+            i += n;
+            this.ecrits += n;
+            if(this.vidageEnAttente) {
+                notifyAll();
+            }
+        }
+        if(interrompu) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized void vider() throws IOException {
+        long cible = this.ecrits;
+        this.demande = Math.max(this.demande,
+            cible);
+        notifyAll();
+        boolean interrompu = false;
+        while(this.affiches < cible
+            && this.erreur == null) {
+            interrompu |= attendre();
+        }
+        if(interrompu) {
+            Thread.currentThread().interrupt();
+        }
+        verifier();
+    }
+
+    @Override
+    public void fermer() throws IOException {
+        synchronized(this) {
+            this.ferme = true;
+            notifyAll();
+        }
+        boolean interrompu = false;
+        while(this.vidage.isAlive()) {
+            try {
+                this.vidage.join();
+            } catch(InterruptedException e) {
+                interrompu = true;
+            }
+        }
+        if(interrompu) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(this.arret);
+        } catch(IllegalStateException e) {
+            // arrêt de la JVM en cours : fermer() est appelée par this.arret
+        }
+        synchronized(this) {
+            verifier();
+        }
+    }
+
+    private void terminerAjout() {
+        if(this.ajoutSuspendu) {
+            this.ajoutSuspendu = false;
+            if(this.vidageEnAttente) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Boucle du thread de vidage : écriture du texte de l'anneau dans la
+     * destination, par blocs, jusqu'à la fermeture.
+     */
+    private void vidanger() {
+        while(true) {
+            int n;
+            synchronized(this) {
+                while(this.lus == this.ecrits
+                    && !this.ferme) {
+                    this.vidageEnAttente = true;
+                    attendre();
+                }
+                this.vidageEnAttente = false;
+                if(this.lus == this.ecrits) {
+                    return;
+                }
+                n = (int) Math.min(this.ecrits
+                    - this.lus,
+                    TAILLE_BLOC);
+            }
+            /* Le texte de lus à ecrits n'est pas réécrit avant l'avance de lus */
+            copierBloc(n);
+            int coupe = finDerniereLigne(n);
+            if(coupe == 0) {
+                if(n < Math.min(TAILLE_BLOC,
+                    this.anneau.length)
+                    && attendreFinLigne(n)) {
+                    continue;
+                }
+                /* Ligne plus longue que le bloc, ou texte sans fin de ligne */
+                coupe = n > 1
+                    && Character.isHighSurrogate(this.bloc[n
+                        - 1])
+                            ? n
+                                - 1
+                            : n;
+            }
+            n = coupe;
+            try {
+                this.octets.clear();
+                this.encodeur.reset();
+                this.encodeur.encode(CharBuffer.wrap(this.bloc,
+                    0,
+                    n),
+                    this.octets,
+                    true);
+                this.encodeur.flush(this.octets);
+                this.destination.write(this.octets.array(),
+                    0,
+                    this.octets.position());
+                long vu;
+                synchronized(this) {
+                    this.lus += n;
+                    notifyAll();
+                    vu = this.lus == this.ecrits
+                        || (this.demande > this.affiches
+                            && this.lus >= this.demande)
+                                ? this.lus
+                                : -1;
+                }
+                if(vu >= 0) {
+                    this.destination.flush();
+                    synchronized(this) {
+                        this.affiches = vu;
+                        notifyAll();
+                    }
+                }
+            } catch(IOException e) {
+                synchronized(this) {
+                    this.erreur = e;
+                    this.lus = this.ecrits;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copie des n premiers caractères de l'anneau (à partir de lus) dans
+     * bloc.
+     */
+    private void copierBloc(int n) {
+        int debut = (int) (this.lus
+            % this.anneau.length);
+        int avantFin = Math.min(n,
+            this.anneau.length
+                - debut);
+        System.arraycopy(this.anneau,
+            debut,
+            this.bloc,
+            0,
+            avantFin);
+        System.arraycopy(this.anneau,
+            0,
+            this.bloc,
+            avantFin,
+            n
+                - avantFin);
+    }
+
+    /**
+     * Longueur du bloc de n caractères jusqu'à sa dernière fin de ligne
+     * incluse, ou 0 s'il n'en a pas.
+     */
+    private int finDerniereLigne(int n) {
+        for(int i = n
+            - 1; i >= 0; i--) {
+            if(this.bloc[i] == '\n') {
+                return i
+                    + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Attente de la suite de la ligne incomplète de l'anneau (n caractères)
+     * si son écriture a été suspendue faute de place ; retourne false si
+     * elle ne l'est pas.
+     */
+    private synchronized boolean attendreFinLigne(int n) {
+        if(!this.ajoutSuspendu) {
+            return false;
+        }
+        if(this.ecrits
+            - this.lus == n) {
+            this.vidageEnAttente = true;
+            attendre();
+            this.vidageEnAttente = false;
+        }
+        return true;
+    }
+
+    private void copier(CharSequence texte,
+        int debut,
+        int fin,
+        int position) {
+        if(texte instanceof String) {
+            ((String) texte).getChars(debut,
+                fin,
+                this.anneau,
+                position);
+        } else if(texte instanceof StringBuilder) {
+            ((StringBuilder) texte).getChars(debut,
+                fin,
+                this.anneau,
+                position);
+        } else if(texte instanceof Tranche) {
+            Tranche tranche = (Tranche) texte;
+            System.arraycopy(tranche.tampon,
+                tranche.debut
+                    + debut,
+                this.anneau,
+                position,
+                fin
+                    - debut);
+        } else {
+            for(int i = debut; i < fin; i++) {
+                this.anneau[position++] = texte.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Attente d'une notification ; retourne true si le thread a été
+     * interrompu (l'interruption est remise par l'appelant).
+     */
+    private boolean attendre() {
+        try {
+            wait();
+            return false;
+        } catch(InterruptedException e) {
+            return true;
+        }
+    }
+
+    private void verifier() throws IOException {
+        if(this.erreur != null) {
+            throw new IOException("Échec de l'affichage : "
+                + this.erreur.getMessage(),
+                this.erreur);
+        }
+    }
+
+    /**
+     * Caractères debut à fin - 1 d'un tampon, vus comme une CharSequence.
+     */
+    private static final class Tranche implements CharSequence {
+        private final char[] tampon;
+
+        private final int debut;
+
+        private final int fin;
+
+        private Tranche(char[] tampon,
+            int debut,
+            int fin) {
+            this.tampon = tampon;
+            this.debut = debut;
+            this.fin = fin;
+        }
+
+        @Override
+        public int length() {
+            return this.fin
+                - this.debut;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return this.tampon[this.debut
+                + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int debutSequence,
+            int finSequence) {
+            return new Tranche(this.tampon,
+                this.debut
+                    + debutSequence,
+                this.debut
+                    + finSequence);
+        }
+
+        @Override
+        public String toString() {
+            return new String(this.tampon,
+                this.debut,
+                length());
+        }
+    }
+}
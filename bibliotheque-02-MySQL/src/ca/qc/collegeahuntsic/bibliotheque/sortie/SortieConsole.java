@@ -0,0 +1,57 @@
+package ca.qc.collegeahuntsic.bibliotheque.sortie;
+
+import java.io.PrintStream;
+import java.nio.CharBuffer;
+
+/**
+ * Sortie qui écrit directement dans un PrintStream (System.out par défaut),
+ * dans le thread appelant.
+ */
+public class SortieConsole implements Sortie {
+
+    private final PrintStream flux;
+
+    /**
+     * Creation d'une sortie sur System.out.
+     */
+    public SortieConsole() {
+        this(System.out);
+    }
+
+    /**
+     * Creation d'une sortie sur flux.
+     */
+    public SortieConsole(PrintStream flux) {
+        this.flux = flux;
+    }
+
+    @Override
+    public void ecrire(CharSequence texte) {
+        this.flux.append(texte);
+    }
+
+    @Override
+    public void ecrire(char[] tampon,
+        int debut,
+        int fin) {
+        this.flux.append(CharBuffer.wrap(tampon,
+            debut,
+            fin
+                - debut));
+    }
+
+    @Override
+    public void ecrireLigne(CharSequence texte) {
+        this.flux.println(texte);
+    }
+
+    @Override
+    public void vider() {
+        this.flux.flush();
+    }
+
+    @Override
+    public void fermer() {
+        this.flux.flush();
+    }
+}
@@ -0,0 +1,66 @@
+package ca.qc.collegeahuntsic.bibliotheque.sortie;
+
+/**
+ * Sortie gardée en mémoire, puis écrite d'un seul appel dans une autre
+ * sortie (transferer()) ou abandonnée (effacer()).
+ *
+ * <pre>
+ * Biblio y garde l'affichage d'un groupe de transactions jusqu'à son commit :
+ * si le groupe est annulé puis repris, l'affichage de la première exécution
+ * est abandonné. Une SortieTampon n'est utilisée que par un thread.
+ * </pre>
+ */
+public class SortieTampon implements Sortie {
+
+    private static final String FIN_LIGNE = System.lineSeparator();
+
+    private final StringBuilder texte = new StringBuilder();
+
+    @Override
+    public void ecrire(CharSequence suite) {
+        this.texte.append(suite);
+    }
+
+    @Override
+    public void ecrire(char[] tampon,
+        int debut,
+        int fin) {
+        this.texte.append(tampon,
+            debut,
+            fin
+                - debut);
+    }
+
+    @Override
+    public void ecrireLigne(CharSequence suite) {
+        this.texte.append(suite);
+        this.texte.append(FIN_LIGNE);
+    }
+
+    /**
+     * Écriture du texte gardé dans destination, puis oubli de ce texte.
+     */
+    public void transferer(Sortie destination) {
+        if(this.texte.length() > 0) {
+            destination.ecrire(this.texte);
+            this.texte.setLength(0);
+        }
+    }
+
+    /**
+     * Abandon du texte gardé.
+     */
+    public void effacer() {
+        this.texte.setLength(0);
+    }
+
+    @Override
+    public void vider() {
+        // rien à vider : le texte est gardé jusqu'à transferer()
+    }
+
+    @Override
+    public void fermer() {
+        // rien à fermer
+    }
+}
@@ -0,0 +1,11 @@
+// Fichier package-info.java
+// Auteur : Franz Nkezimana
+// Date de création : 2015-09-18
+/**
+ * Affichage des transactions (écho, erreurs, listes) : console, directe ou
+ * par un tampon vidé en arrière-plan.
+ *
+ * @author Franz Nkezimana
+ */
+
+package ca.qc.collegeahuntsic.bibliotheque.sortie;
\ No newline at end of file
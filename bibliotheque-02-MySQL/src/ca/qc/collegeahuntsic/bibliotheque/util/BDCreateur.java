@@ -3,6 +3,7 @@ package ca.qc.collegeahuntsic.bibliotheque.util;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.sql.Statement;
+import ca.qc.collegeahuntsic.bibliotheque.db.ConfigurationConnexion;
 import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
 
 /**
@@ -14,20 +15,35 @@ import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
  *            1- bd nom de la BD
  *            2- user id pour �tablir une connexion avec le serveur SQL
  *            3- mot de passe pour le user id
+ *
+ * ou        0- fichier de configuration .properties
  * </pre>
  */
 class BDCreateur {
 	public static void main(String args[]) throws Exception, SQLException,
 	IOException {
 
-		if (args.length < 3) {
+		Connexion cx;
+		if (args.length == 1 && args[0].endsWith(".properties")) {
+			cx = new Connexion(ConfigurationConnexion.charger(args[0]));
+		} else if (args.length < 3) {
 			System.out
 			.println("Usage: java CreerBD <serveur> <bd> <user> <password>");
+			System.out
+			.println("       java CreerBD <configuration.properties>");
 			return;
+		} else {
+			cx = new Connexion(args[0], args[1], args[2], args[3]);
 		}
 
-		Connexion cx = new Connexion(args[0], args[1], args[2], args[3]);
+		creerTables(cx);
+		cx.fermer();
+	}
 
+	/**
+	 * Création (ou recréation) des tables de la bibliothèque.
+	 */
+	static void creerTables(Connexion cx) throws SQLException {
 		Statement stmt = cx.getConnection().createStatement();
 
 		stmt.executeUpdate("DROP TABLE IF EXISTS reservation CASCADE");
@@ -67,6 +83,6 @@ class BDCreateur {
 				+ "  ON DELETE CASCADE " + ")");
 
 		stmt.close();
-		cx.fermer();
+		cx.commit();
 	}
 }
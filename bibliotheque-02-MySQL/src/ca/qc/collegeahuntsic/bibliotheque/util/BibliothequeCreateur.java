@@ -1,17 +1,26 @@
 
 package ca.qc.collegeahuntsic.bibliotheque.util;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import ca.qc.collegeahuntsic.bibliotheque.GestionInterrogation;
 import ca.qc.collegeahuntsic.bibliotheque.dao.LivreDAO;
 import ca.qc.collegeahuntsic.bibliotheque.dao.MembreDAO;
+import ca.qc.collegeahuntsic.bibliotheque.dao.ProceduresDAO;
 import ca.qc.collegeahuntsic.bibliotheque.dao.ReservationDAO;
+import ca.qc.collegeahuntsic.bibliotheque.db.ConfigurationConnexion;
 import ca.qc.collegeahuntsic.bibliotheque.db.Connexion;
 import ca.qc.collegeahuntsic.bibliotheque.exception.BiblioException;
+import ca.qc.collegeahuntsic.bibliotheque.metrique.RegistreMetriques;
 import ca.qc.collegeahuntsic.bibliotheque.service.LivreService;
 import ca.qc.collegeahuntsic.bibliotheque.service.MembreService;
 import ca.qc.collegeahuntsic.bibliotheque.service.PretService;
 import ca.qc.collegeahuntsic.bibliotheque.service.ReservationService;
+import ca.qc.collegeahuntsic.bibliotheque.sortie.Sortie;
+import ca.qc.collegeahuntsic.bibliotheque.sortie.SortieAsynchrone;
+import ca.qc.collegeahuntsic.bibliotheque.sortie.SortieConsole;
 
 /**
  * Système de gestion d'une bibliothèque
@@ -28,17 +37,41 @@ import ca.qc.collegeahuntsic.bibliotheque.service.ReservationService;
  * Post-condition
  *   le programme effectue les maj associées à chaque
  *   transaction
+ *
+ * Les énoncés SQL sont précompilés à leur première utilisation. Si la
+ * configuration le demande (prechauffage), ils sont précompilés dès le
+ * démarrage sur toutes les connexions ouvertes, en parallèle ; prechauffer()
+ * peut aussi être appelée plus tard, comme vérification de santé.
+ * getDureeDemarrage() donne le coût du démarrage à froid ; il est aussi
+ * enregistré dans les mesures de la connexion (demarrage,
+ * demarrage.prechauffage), hors de l'affichage des transactions.
+ *
+ * Si la configuration le demande (procedures), les services de prêt et de
+ * réservation appellent les procédures stockées plutôt que de faire leurs
+ * vérifications et mises à jour énoncé par énoncé.
+ *
+ * Les paramètres de l'application (lots, caches, affichage, voir
+ * ConfigurationBibliotheque) sont dans configuration ; ceux de la connexion
+ * restent dans la ConfigurationConnexion de cx.
+ *
+ * L'affichage des transactions passe par sortie : la console, ou un tampon
+ * vidé en arrière-plan si la configuration le demande (sortie.asynchrone).
+ * fermer() vide la sortie avant de fermer la connexion.
  * </pre>
  */
 public class BibliothequeCreateur {
     public Connexion cx;
 
+    public ConfigurationBibliotheque configuration;
+
     public LivreDAO livre;
 
     public MembreDAO membre;
 
     public ReservationDAO reservation;
 
+    public ProceduresDAO procedures;
+
     public LivreService gestionLivre;
 
     public MembreService gestionMembre;
@@ -49,6 +82,12 @@ public class BibliothequeCreateur {
 
     public GestionInterrogation gestionInterrogation;
 
+    public Sortie sortie;
+
+    private long dureeDemarrage;
+
+    private long dureePrechauffage;
+
     /**
      * Ouvre une connexion avec la BD relationnelle et
      * alloue les gestionnaires de transactions et de tables.
@@ -65,29 +104,177 @@ public class BibliothequeCreateur {
         String user,
         String password) throws BiblioException,
         SQLException {
-        // allocation des objets pour le traitement des transactions
-        this.cx = new Connexion(serveur,
+        this(new Connexion(serveur,
             bd,
             user,
-            password);
-        this.livre = new LivreDAO(this.cx);
-        this.membre = new MembreDAO(this.cx);
-        this.reservation = new ReservationDAO(this.cx);
+            password));
+    }
+
+    /**
+     * Ouvre un pool de connexions avec la BD relationnelle et
+     * alloue les gestionnaires de transactions et de tables.
+     * Les gestionnaires peuvent alors être utilisés par plusieurs
+     * threads à la fois, chaque transaction empruntant sa connexion.
+     * <pre>
+     *
+     * @param serveur SQL
+     * @param bd nom de la bade de données
+     * @param user user id pour établir une connexion avec le serveur SQL
+     * @param password mot de passe pour le user id
+     * @param configuration paramètres du pool de connexions
+     *</pre>
+     */
+    public BibliothequeCreateur(String serveur,
+        String bd,
+        String user,
+        String password,
+        ConfigurationConnexion configuration) throws BiblioException,
+        SQLException {
+        this(new Connexion(serveur,
+            bd,
+            user,
+            password,
+            configuration));
+    }
+
+    /**
+     * Ouvre la connexion (ou le pool de connexions) décrite par une
+     * configuration externe et alloue les gestionnaires de transactions
+     * et de tables. Les tables sont créées si la configuration le demande
+     * (BD embarquée en mémoire, par exemple).
+     */
+    public BibliothequeCreateur(ConfigurationConnexion configuration) throws BiblioException,
+        SQLException {
+        this(configuration,
+            new ConfigurationBibliotheque());
+    }
+
+    /**
+     * Ouvre la connexion (ou le pool de connexions) décrite par
+     * configurationConnexion et alloue les gestionnaires de transactions et
+     * de tables, réglés par configuration. Les tables sont créées si la
+     * configuration de la connexion le demande.
+     */
+    public BibliothequeCreateur(ConfigurationConnexion configurationConnexion,
+        ConfigurationBibliotheque configuration) throws BiblioException,
+        SQLException {
+        this(new Connexion(configurationConnexion),
+            configuration);
+        long debut = System.nanoTime();
+        if(configurationConnexion.isCreerTables()) {
+            BDCreateur.creerTables(this.cx);
+        }
+        if(configurationConnexion.isPrechauffage()) {
+            prechauffer();
+        }
+        this.dureeDemarrage += (System.nanoTime() - debut) / 1000000;
+        this.cx.getMetriques().enregistrer(RegistreMetriques.DEMARRAGE,
+            this.dureeDemarrage * 1000000);
+    }
+
+    /**
+     * Alloue les gestionnaires de transactions et de tables
+     * sur une connexion déjà ouverte.
+     */
+    public BibliothequeCreateur(Connexion cx) throws BiblioException {
+        this(cx,
+            new ConfigurationBibliotheque());
+    }
+
+    /**
+     * Alloue les gestionnaires de transactions et de tables, réglés par
+     * configuration, sur une connexion déjà ouverte.
+     */
+    public BibliothequeCreateur(Connexion cx,
+        ConfigurationBibliotheque configuration) throws BiblioException {
+        // allocation des objets pour le traitement des transactions
+        long debut = System.nanoTime();
+        this.cx = cx;
+        this.configuration = configuration;
+        this.sortie = configuration.isSortieAsynchrone()
+            ? new SortieAsynchrone(System.out,
+                configuration.getTailleSortie())
+            : new SortieConsole();
+        this.livre = new LivreDAO(this.cx,
+            configuration);
+        this.membre = new MembreDAO(this.cx,
+            configuration);
+        this.reservation = new ReservationDAO(this.cx,
+            configuration);
+        if(cx.getConfiguration().isProcedures()) {
+            this.procedures = new ProceduresDAO(this.cx,
+                this.livre,
+                this.membre,
+                this.reservation);
+        }
         this.gestionLivre = new LivreService(this.livre,
             this.reservation);
+        this.gestionLivre.setTailleLot(configuration.getTailleLot());
         this.gestionMembre = new MembreService(this.membre,
             this.reservation);
+        this.gestionMembre.setTailleLot(configuration.getTailleLot());
         this.gestionPret = new PretService(this.livre,
             this.membre,
-            this.reservation);
+            this.reservation,
+            this.procedures);
         this.gestionReservation = new ReservationService(this.livre,
             this.membre,
-            this.reservation);
-        this.gestionInterrogation = new GestionInterrogation(this.cx);
+            this.reservation,
+            this.procedures);
+        this.gestionInterrogation = new GestionInterrogation(this.cx,
+            this.livre.getInstantane(),
+            this.sortie);
+        this.dureeDemarrage = cx.getDureeOuverture()
+            + (System.nanoTime() - debut) / 1000000;
+    }
+
+    /**
+     * Précompilation des énoncés des DAO et des interrogations sur toutes les
+     * connexions ouvertes (voir Connexion.prechauffer()).
+     *
+     * @return la durée du préchauffage en ms
+     */
+    public long prechauffer() throws SQLException {
+        long debut = System.nanoTime();
+        List<String> enonces = new ArrayList<>();
+        enonces.addAll(this.livre.getEnonces());
+        enonces.addAll(this.membre.getEnonces());
+        enonces.addAll(this.reservation.getEnonces());
+        if(this.procedures != null) {
+            enonces.addAll(this.procedures.getEnonces());
+        }
+        enonces.addAll(this.gestionInterrogation.getEnonces());
+        this.cx.prechauffer(enonces);
+        long duree = System.nanoTime()
+            - debut;
+        this.cx.getMetriques().enregistrer(RegistreMetriques.PRECHAUFFAGE,
+            duree);
+        this.dureePrechauffage = duree / 1000000;
+        return this.dureePrechauffage;
+    }
+
+    /**
+     * Durée (ms) du démarrage : ouverture des connexions, allocation des
+     * gestionnaires, création des tables et préchauffage.
+     */
+    public long getDureeDemarrage() {
+        return this.dureeDemarrage;
+    }
+
+    /**
+     * Durée (ms) du dernier préchauffage, 0 s'il n'y en a pas eu.
+     */
+    public long getDureePrechauffage() {
+        return this.dureePrechauffage;
     }
 
-    public void fermer() throws SQLException {
-        // fermeture de la connexion
-        this.cx.fermer();
+    public void fermer() throws SQLException,
+        IOException {
+        // affichage du texte en attente, puis fermeture de la connexion
+        try {
+            this.sortie.fermer();
+        } finally {
+            this.cx.fermer();
+        }
     }
 }
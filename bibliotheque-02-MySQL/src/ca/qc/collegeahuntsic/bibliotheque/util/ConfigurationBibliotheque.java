@@ -0,0 +1,273 @@
+
+package ca.qc.collegeahuntsic.bibliotheque.util;
+
+import java.io.IOException;
+import java.util.Properties;
+import ca.qc.collegeahuntsic.bibliotheque.db.ConfigurationConnexion;
+
+/**
+ * Paramètres de Biblio, des services et des DAO, hors connexion à la BD.
+ *
+ * <pre>
+ * Ils sont lus du même fichier de propriétés que ConfigurationConnexion
+ * (voir charger()) ; une propriété absente garde sa valeur par défaut.
+ *
+ *   tailleLot : nombre d'éléments par transaction (et par executeBatch)
+ *     des opérations en lot (acquerirLot, inscrireLot)
+ *   chargementParLots : Biblio regroupe en lots les acquerir et les
+ *     inscrire consécutifs du fichier de transactions
+ *   groupe.taille, groupe.delai : Biblio valide ensemble (un seul commit)
+ *     jusqu'à groupe.taille transactions consécutives, ou celles d'une
+ *     fenêtre de groupe.delai ms (0 : pas de limite de temps) ; un groupe
+ *     de taille 1 ou moins désactive le regroupement
+ *   rejeu.fils, rejeu.fenetre : Biblio rejoue le fichier de transactions
+ *     avec rejeu.fils threads, par fenêtres de rejeu.fenetre lignes (voir
+ *     RejeuParallele) ; 1 ou moins : traitement séquentiel. Ignorés avec
+ *     chargementParLots ou groupe.taille.
+ *   sortie.asynchrone, sortie.tampon : l'affichage des transactions passe
+ *     par un tampon de sortie.tampon caractères, vidé par un thread dédié
+ *     (voir SortieAsynchrone), plutôt que d'être écrit directement
+ *   sortie.silencieuse : Biblio n'affiche pas l'écho des transactions lues
+ *   pipeline.actif, pipeline.file : Biblio lit et valide le fichier de
+ *     transactions en avance, dans d'autres threads, par files de
+ *     pipeline.file lignes (voir PipelineTransactions). Ignorés pour
+ *     l'entrée standard et avec rejeu.fils.
+ *
+ * Le cache des livres et des membres lus (préfixe cacheEntites., voir
+ * CacheEntites), réservé à une BD modifiée par ce seul programme :
+ *   - taille : nombre de tuples conservés par table (0 : pas de cache)
+ *   - duree : durée (ms) de conservation d'un tuple (0 : sans échéance)
+ *
+ * instantaneLivres : les listes de livres (GestionInterrogation) sont faites
+ * sur un instantané du catalogue en mémoire (voir InstantaneLivres), lui
+ * aussi réservé à une BD modifiée par ce seul programme.
+ * </pre>
+ */
+public class ConfigurationBibliotheque {
+
+    private int tailleLot = 500;
+
+    private boolean chargementParLots;
+
+    private int tailleGroupe;
+
+    private long delaiGroupe;
+
+    private int filsRejeu;
+
+    private int fenetreRejeu = 10000;
+
+    private boolean sortieAsynchrone;
+
+    private int tailleSortie = 1024 * 1024;
+
+    private boolean sortieSilencieuse;
+
+    private boolean pipeline;
+
+    private int filePipeline = 1024;
+
+    private int tailleCacheEntites;
+
+    private long dureeCacheEntites = 60000;
+
+    private boolean instantaneLivres;
+
+    /**
+     * Lecture de la configuration d'un fichier de propriétés : un chemin,
+     * sinon une ressource du classpath.
+     */
+    public static ConfigurationBibliotheque charger(String fichier) throws IOException {
+        return depuisProprietes(ConfigurationConnexion.lireProprietes(fichier));
+    }
+
+    /**
+     * Construction d'une configuration à partir de propriétés. Les propriétés
+     * absentes gardent leur valeur par défaut.
+     */
+    public static ConfigurationBibliotheque depuisProprietes(Properties p) {
+        ConfigurationBibliotheque c = new ConfigurationBibliotheque();
+        c.tailleLot = entier(p,
+            "tailleLot",
+            c.tailleLot);
+        c.chargementParLots = booleen(p,
+            "chargementParLots",
+            c.chargementParLots);
+        c.tailleGroupe = entier(p,
+            "groupe.taille",
+            c.tailleGroupe);
+        c.delaiGroupe = entierLong(p,
+            "groupe.delai",
+            c.delaiGroupe);
+        c.filsRejeu = entier(p,
+            "rejeu.fils",
+            c.filsRejeu);
+        c.fenetreRejeu = entier(p,
+            "rejeu.fenetre",
+            c.fenetreRejeu);
+        c.sortieAsynchrone = booleen(p,
+            "sortie.asynchrone",
+            c.sortieAsynchrone);
+        c.tailleSortie = entier(p,
+            "sortie.tampon",
+            c.tailleSortie);
+        c.sortieSilencieuse = booleen(p,
+            "sortie.silencieuse",
+            c.sortieSilencieuse);
+        c.pipeline = booleen(p,
+            "pipeline.actif",
+            c.pipeline);
+        c.filePipeline = entier(p,
+            "pipeline.file",
+            c.filePipeline);
+        c.tailleCacheEntites = entier(p,
+            "cacheEntites.taille",
+            c.tailleCacheEntites);
+        c.dureeCacheEntites = entierLong(p,
+            "cacheEntites.duree",
+            c.dureeCacheEntites);
+        c.instantaneLivres = booleen(p,
+            "instantaneLivres",
+            c.instantaneLivres);
+        return c;
+    }
+
+    private static int entier(Properties p,
+        String cle,
+        int defaut) {
+        String valeur = p.getProperty(cle);
+        return valeur == null
+            ? defaut
+            : Integer.parseInt(valeur.trim());
+    }
+
+    private static long entierLong(Properties p,
+        String cle,
+        long defaut) {
+        String valeur = p.getProperty(cle);
+        return valeur == null
+            ? defaut
+            : Long.parseLong(valeur.trim());
+    }
+
+    private static boolean booleen(Properties p,
+        String cle,
+        boolean defaut) {
+        String valeur = p.getProperty(cle);
+        return valeur == null
+            ? defaut
+            : Boolean.parseBoolean(valeur.trim());
+    }
+
+    public int getTailleLot() {
+        return this.tailleLot;
+    }
+
+    public void setTailleLot(int tailleLot) {
+        this.tailleLot = tailleLot;
+    }
+
+    public boolean isChargementParLots() {
+        return this.chargementParLots;
+    }
+
+    public void setChargementParLots(boolean chargementParLots) {
+        this.chargementParLots = chargementParLots;
+    }
+
+    public int getTailleGroupe() {
+        return this.tailleGroupe;
+    }
+
+    public void setTailleGroupe(int tailleGroupe) {
+        this.tailleGroupe = tailleGroupe;
+    }
+
+    public long getDelaiGroupe() {
+        return this.delaiGroupe;
+    }
+
+    public void setDelaiGroupe(long delaiGroupe) {
+        this.delaiGroupe = delaiGroupe;
+    }
+
+    public int getFilsRejeu() {
+        return this.filsRejeu;
+    }
+
+    public void setFilsRejeu(int filsRejeu) {
+        this.filsRejeu = filsRejeu;
+    }
+
+    public int getFenetreRejeu() {
+        return this.fenetreRejeu;
+    }
+
+    public void setFenetreRejeu(int fenetreRejeu) {
+        this.fenetreRejeu = fenetreRejeu;
+    }
+
+    public boolean isSortieAsynchrone() {
+        return this.sortieAsynchrone;
+    }
+
+    public void setSortieAsynchrone(boolean sortieAsynchrone) {
+        this.sortieAsynchrone = sortieAsynchrone;
+    }
+
+    public int getTailleSortie() {
+        return this.tailleSortie;
+    }
+
+    public void setTailleSortie(int tailleSortie) {
+        this.tailleSortie = tailleSortie;
+    }
+
+    public boolean isSortieSilencieuse() {
+        return this.sortieSilencieuse;
+    }
+
+    public void setSortieSilencieuse(boolean sortieSilencieuse) {
+        this.sortieSilencieuse = sortieSilencieuse;
+    }
+
+    public boolean isPipeline() {
+        return this.pipeline;
+    }
+
+    public void setPipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public int getFilePipeline() {
+        return this.filePipeline;
+    }
+
+    public void setFilePipeline(int filePipeline) {
+        this.filePipeline = filePipeline;
+    }
+
+    public int getTailleCacheEntites() {
+        return this.tailleCacheEntites;
+    }
+
+    public void setTailleCacheEntites(int tailleCacheEntites) {
+        this.tailleCacheEntites = tailleCacheEntites;
+    }
+
+    public long getDureeCacheEntites() {
+        return this.dureeCacheEntites;
+    }
+
+    public void setDureeCacheEntites(long dureeCacheEntites) {
+        this.dureeCacheEntites = dureeCacheEntites;
+    }
+
+    public boolean isInstantaneLivres() {
+        return this.instantaneLivres;
+    }
+
+    public void setInstantaneLivres(boolean instantaneLivres) {
+        this.instantaneLivres = instantaneLivres;
+    }
+}
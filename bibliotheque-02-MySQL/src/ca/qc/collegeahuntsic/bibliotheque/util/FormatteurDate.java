@@ -7,7 +7,7 @@ import java.util.Date;
 
 /**
  * Permet de valider le format d'une date en YYYY-MM-DD et de la convertir en un
- * objet Date.
+ * objet Date. Le format est partagé : ses utilisations sont synchronisées.
  *
  */
 public class FormatteurDate {
@@ -20,11 +20,11 @@ public class FormatteurDate {
     /**
      * Convertit une String du format YYYY-MM-DD en un objet de la classe Date.
      */
-    public static Date convertirDate(String dateString) throws ParseException {
+    public static synchronized Date convertirDate(String dateString) throws ParseException {
         return formatAMJ.parse(dateString);
     }
 
-    public static String toString(Date date) {
+    public static synchronized String toString(Date date) {
         return formatAMJ.format(date);
     }
 }
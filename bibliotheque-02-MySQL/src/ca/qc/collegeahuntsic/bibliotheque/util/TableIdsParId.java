@@ -0,0 +1,185 @@
+
+package ca.qc.collegeahuntsic.bibliotheque.util;
+
+import java.util.Arrays;
+
+/**
+ * Table associant à chaque identifiant int une liste d'identifiants int
+ * (par exemple, à un livre les numéros de ses réservations).
+ *
+ * <pre>
+ * Les listes sont des int[] rangés dans une TableParId ; la case 0 de
+ * chacune donne son nombre de valeurs. Aucun Integer n'est créé. Les
+ * valeurs d'une clé restent dans leur ordre d'ajout et une clé sans valeur
+ * est retirée. La table n'est pas synchronisée.
+ * </pre>
+ */
+public class TableIdsParId {
+
+    private static final int[] AUCUNE = new int[0];
+
+    private final TableParId<int[]> listes;
+
+    private int nbValeurs;
+
+    /**
+     * Creation d'une table vide.
+     */
+    public TableIdsParId() {
+        this.listes = new TableParId<>();
+    }
+
+    /**
+     * Creation d'une table vide pour environ nbCles clés.
+     */
+    public TableIdsParId(int nbCles) {
+        this.listes = new TableParId<>(nbCles);
+    }
+
+    /**
+     * Ajout de valeur à la fin de la liste de cle.
+     */
+    public void ajouter(int cle,
+        int valeur) {
+        int[] liste = this.listes.lire(cle);
+        if(liste == null) {
+            liste = new int[4];
+            this.listes.mettre(cle,
+                liste);
+        } else if(liste[0] == liste.length - 1) {
+            liste = Arrays.copyOf(liste,
+                2 * liste.length);
+            this.listes.mettre(cle,
+                liste);
+        }
+        liste[0]++;
+        liste[liste[0]] = valeur;
+        this.nbValeurs++;
+    }
+
+    /**
+     * Retourne une copie des valeurs de cle, dans leur ordre d'ajout.
+     */
+    public int[] lire(int cle) {
+        int[] liste = this.listes.lire(cle);
+        return liste == null
+            ? AUCUNE
+            : Arrays.copyOfRange(liste,
+                1,
+                liste[0] + 1);
+    }
+
+    /**
+     * Retourne la première valeur de cle, ou defaut si cle n'en a pas.
+     */
+    public int lirePremiere(int cle,
+        int defaut) {
+        int[] liste = this.listes.lire(cle);
+        return liste == null
+            ? defaut
+            : liste[1];
+    }
+
+    /**
+     * Nombre de valeurs de cle.
+     */
+    public int getNbValeurs(int cle) {
+        int[] liste = this.listes.lire(cle);
+        return liste == null
+            ? 0
+            : liste[0];
+    }
+
+    /**
+     * Vérifie si valeur est dans la liste de cle.
+     */
+    public boolean contient(int cle,
+        int valeur) {
+        return indice(this.listes.lire(cle),
+            valeur) > 0;
+    }
+
+    /**
+     * Retrait de la première occurrence de valeur dans la liste de cle.
+     *
+     * @return false si valeur n'y était pas
+     */
+    public boolean retirer(int cle,
+        int valeur) {
+        int[] liste = this.listes.lire(cle);
+        int i = indice(liste,
+            valeur);
+        if(i == 0) {
+            return false;
+        }
+        System.arraycopy(liste,
+            i + 1,
+            liste,
+            i,
+            liste[0] - i);
+        liste[0]--;
+        this.nbValeurs--;
+        if(liste[0] == 0) {
+            this.listes.retirer(cle);
+        }
+        return true;
+    }
+
+    /**
+     * Retrait de cle et de toutes ses valeurs.
+     *
+     * @return le nombre de valeurs retirées
+     */
+    public int retirer(int cle) {
+        int[] liste = this.listes.retirer(cle);
+        if(liste == null) {
+            return 0;
+        }
+        this.nbValeurs -= liste[0];
+        return liste[0];
+    }
+
+    /**
+     * Nombre de clés ayant au moins une valeur.
+     */
+    public int getNbCles() {
+        return this.listes.getTaille();
+    }
+
+    /**
+     * Nombre total de valeurs.
+     */
+    public int getNbValeurs() {
+        return this.nbValeurs;
+    }
+
+    /**
+     * Retourne les clés, dans un ordre quelconque.
+     */
+    public int[] getCles() {
+        return this.listes.getCles();
+    }
+
+    /**
+     * Retrait de toutes les clés.
+     */
+    public void vider() {
+        this.listes.vider();
+        this.nbValeurs = 0;
+    }
+
+    /**
+     * Indice de valeur dans liste (à partir de 1), ou 0.
+     */
+    private static int indice(int[] liste,
+        int valeur) {
+        if(liste != null) {
+            for(int i = 1; i <= liste[0]; i++) {
+                if(liste[i] == valeur) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,238 @@
+
+package ca.qc.collegeahuntsic.bibliotheque.util;
+
+import java.util.Arrays;
+
+/**
+ * Table associative dont les clés sont des identifiants int.
+ *
+ * <pre>
+ * Contrairement à un HashMap&lt;Integer, V&gt;, les clés ne sont pas converties
+ * en Integer et aucun objet n'est créé par association : les clés et les
+ * valeurs sont rangées dans deux tableaux parallèles (adressage ouvert,
+ * sondage linéaire). La capacité est une puissance de 2 et la table est
+ * agrandie quand elle est à moitié pleine. Un retrait recule les clés
+ * suivantes de la même grappe, sans laisser de marque de suppression.
+ *
+ * Les valeurs null ne sont pas permises : une case vide a une valeur null.
+ * La table n'est pas synchronisée.
+ * </pre>
+ */
+public class TableParId<V> {
+
+    /**
+     * Traitement d'une association de la table.
+     */
+    public interface Visiteur<V> {
+        void visiter(int cle,
+            V valeur);
+    }
+
+    private int[] cles;
+
+    private Object[] valeurs;
+
+    private int masque;
+
+    private int taille;
+
+    /**
+     * Creation d'une table vide.
+     */
+    public TableParId() {
+        this(8);
+    }
+
+    /**
+     * Creation d'une table vide pouvant recevoir nb associations sans être
+     * agrandie.
+     */
+    public TableParId(int nb) {
+        allouer(capacitePour(nb));
+    }
+
+    /**
+     * Nombre d'associations.
+     */
+    public int getTaille() {
+        return this.taille;
+    }
+
+    /**
+     * Vérifie si la table est vide.
+     */
+    public boolean estVide() {
+        return this.taille == 0;
+    }
+
+    /**
+     * Retourne la valeur associée à cle, ou null.
+     */
+    @SuppressWarnings("unchecked")
+    public V lire(int cle) {
+        for(int i = position(cle); this.valeurs[i] != null; i = (i + 1) & this.masque) {
+            if(this.cles[i] == cle) {
+                return (V) this.valeurs[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Vérifie si cle a une valeur associée.
+     */
+    public boolean contient(int cle) {
+        return lire(cle) != null;
+    }
+
+    /**
+     * Association de valeur à cle.
+     *
+     * @return la valeur remplacée, ou null
+     */
+    @SuppressWarnings("unchecked")
+    public V mettre(int cle,
+        V valeur) {
+        if(valeur == null) {
+            throw new NullPointerException("valeur null pour la clé "
+                + cle);
+        }
+        int i = position(cle);
+        for(; this.valeurs[i] != null; i = (i + 1) & this.masque) {
+            if(this.cles[i] == cle) {
+                V ancienne = (V) this.valeurs[i];
+                this.valeurs[i] = valeur;
+                return ancienne;
+            }
+        }
+        this.cles[i] = cle;
+        this.valeurs[i] = valeur;
+        this.taille++;
+        if(2 * this.taille > this.cles.length) {
+            agrandir();
+        }
+        return null;
+    }
+
+    /**
+     * Retrait de l'association de cle.
+     *
+     * @return la valeur retirée, ou null
+     */
+    @SuppressWarnings("unchecked")
+    public V retirer(int cle) {
+        int i = position(cle);
+        for(; this.valeurs[i] != null; i = (i + 1) & this.masque) {
+            if(this.cles[i] == cle) {
+                V ancienne = (V) this.valeurs[i];
+                reculer(i);
+                this.taille--;
+                return ancienne;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retrait de toutes les associations.
+     */
+    public void vider() {
+        Arrays.fill(this.valeurs,
+            null);
+        this.taille = 0;
+    }
+
+    /**
+     * Traitement de chaque association, dans un ordre quelconque. La table
+     * ne doit pas être modifiée pendant le parcours.
+     */
+    @SuppressWarnings("unchecked")
+    public void parcourir(Visiteur<? super V> visiteur) {
+        for(int i = 0; i < this.valeurs.length; i++) {
+            if(this.valeurs[i] != null) {
+                visiteur.visiter(this.cles[i],
+                    (V) this.valeurs[i]);
+            }
+        }
+    }
+
+    /**
+     * Retourne les clés, dans un ordre quelconque.
+     */
+    public int[] getCles() {
+        int[] resultat = new int[this.taille];
+        int nb = 0;
+        for(int i = 0; i < this.valeurs.length; i++) {
+            if(this.valeurs[i] != null) {
+                resultat[nb++] = this.cles[i];
+            }
+        }
+        return resultat;
+    }
+
+    /**
+     * Case de départ du sondage de cle (hachage de Fibonacci).
+     */
+    private int position(int cle) {
+        int h = cle
+            * 0x9E3779B9;
+        return (h ^ (h >>> 16))
+            & this.masque;
+    }
+
+    /**
+     * Vidage de la case i : les clés suivantes de la grappe qui ne sont pas
+     * à leur place sont reculées d'autant.
+     */
+    private void reculer(int i) {
+        int vide = i;
+        for(int j = (i + 1) & this.masque; this.valeurs[j] != null; j = (j + 1) & this.masque) {
+            int depart = position(this.cles[j]);
+            /* La clé de j peut occuper la case vide si son départ n'est pas dans (vide, j] */
+            boolean entre = vide <= j
+                ? vide < depart
+                    && depart <= j
+                : vide < depart
+                    || depart <= j;
+            if(!entre) {
+                this.cles[vide] = this.cles[j];
+                this.valeurs[vide] = this.valeurs[j];
+                vide = j;
+            }
+        }
+        this.valeurs[vide] = null;
+    }
+
+    private void agrandir() {
+        int[] anciennesCles = this.cles;
+        Object[] anciennesValeurs = this.valeurs;
+        allouer(anciennesCles.length * 2);
+        for(int i = 0; i < anciennesCles.length; i++) {
+            if(anciennesValeurs[i] != null) {
+                int j = position(anciennesCles[i]);
+                while(this.valeurs[j] != null) {
+                    j = (j + 1) & this.masque;
+                }
+                this.cles[j] = anciennesCles[i];
+                this.valeurs[j] = anciennesValeurs[i];
+            }
+        }
+    }
+
+    private void allouer(int capacite) {
+        this.cles = new int[capacite];
+        this.valeurs = new Object[capacite];
+        this.masque = capacite - 1;
+    }
+
+    /**
+     * Plus petite puissance de 2 d'au moins 2 * nb cases.
+     */
+    private static int capacitePour(int nb) {
+        int capacite = 8;
+        while(capacite < 2L * nb) {
+            capacite <<= 1;
+        }
+        return capacite;
+    }
+}